@@ -1,11 +1,29 @@
 import { apiClient } from "@/shared/api/client";
 import type { Order, OrderStatus } from "@/entities/Order";
 import type { User } from "@/entities/User";
+import type {
+	SalesGranularity,
+	SalesPeriod,
+	SalesRange,
+	SalesTotals,
+} from "../types";
+
+const salesQuery = (range: SalesRange, granularity?: SalesGranularity) => {
+	const params = new URLSearchParams();
+	if (granularity) params.append("granularity", granularity);
+	if (range.from) params.append("from", range.from);
+	if (range.to) params.append("to", range.to);
+	if (range.restaurantId !== undefined)
+		params.append("restaurantId", range.restaurantId.toString());
+	const queryString = params.toString();
+	return queryString ? `?${queryString}` : "";
+};
 
 /**
  * API: Get all orders (admin only)
  * GET /admin/orders
  * Optional filters: status, userId
+ * All pages are loaded by following X-Next-Cursor
  */
 export const getAllOrders = async (
 	status?: OrderStatus,
@@ -18,7 +36,7 @@ export const getAllOrders = async (
 	const queryString = params.toString();
 	const endpoint = `/admin/orders${queryString ? `?${queryString}` : ""}`;
 
-	return apiClient.get<Order[]>(endpoint);
+	return apiClient.getAllPages<Order>(endpoint);
 };
 
 /**
@@ -37,9 +55,10 @@ export const updateOrderStatus = async (
 /**
  * API: Get all users (admin only)
  * GET /admin/users
+ * All pages are loaded by following X-Next-Cursor
  */
 export const getAllUsers = async (): Promise<User[]> => {
-	return apiClient.get<User[]>("/admin/users");
+	return apiClient.getAllPages<User>("/admin/users");
 };
 
 /**
@@ -49,3 +68,41 @@ export const getAllUsers = async (): Promise<User[]> => {
 export const deleteUser = async (userId: number): Promise<void> => {
 	await apiClient.delete<void>(`/admin/users/${userId}`);
 };
+
+/**
+ * API: Sales by hour or day (admin only)
+ * GET /admin/stats
+ * Totals or a single restaurant (range.restaurantId)
+ */
+export const getSalesTimeline = async (
+	granularity: SalesGranularity,
+	range: SalesRange = {},
+): Promise<SalesPeriod[]> => {
+	return apiClient.get<SalesPeriod[]>(
+		`/admin/stats${salesQuery(range, granularity)}`,
+	);
+};
+
+/**
+ * API: Sales per restaurant, highest revenue first (admin only)
+ * GET /admin/stats/restaurants
+ */
+export const getRestaurantSales = async (
+	range: SalesRange = {},
+): Promise<SalesTotals[]> => {
+	return apiClient.get<SalesTotals[]>(
+		`/admin/stats/restaurants${salesQuery(range)}`,
+	);
+};
+
+/**
+ * API: Sales per dish, highest revenue first (admin only)
+ * GET /admin/stats/dishes
+ */
+export const getDishSales = async (
+	range: SalesRange = {},
+): Promise<SalesTotals[]> => {
+	return apiClient.get<SalesTotals[]>(
+		`/admin/stats/dishes${salesQuery(range)}`,
+	);
+};
@@ -1 +1,7 @@
+export type {
+	SalesGranularity,
+	SalesPeriod,
+	SalesRange,
+	SalesTotals,
+} from "./types";
 export * as adminApi from "./api/adminApi";
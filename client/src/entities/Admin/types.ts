@@ -0,0 +1,33 @@
+/**
+ * Sales analytics types
+ * Based on SalesPeriodDTO and SalesTotalsDTO from backend
+ */
+
+export type SalesGranularity = "hour" | "day";
+
+// Sales for one hour or day; cancelled orders are excluded from orders, quantity and revenue
+export interface SalesPeriod {
+	periodStart: string; // ISO 8601 date-time string
+	orders: number;
+	quantity: number;
+	revenue: number;
+	cancelled: number;
+}
+
+// Sales of a restaurant or dish over a period; name is null once it is deleted from the catalog
+export interface SalesTotals {
+	id: number;
+	name: string | null;
+	restaurantId: number;
+	orders: number;
+	quantity: number;
+	revenue: number;
+	cancelled: number;
+}
+
+// Period bounds as YYYY-MM-DD, both inclusive; defaults to the last 7 days
+export interface SalesRange {
+	from?: string;
+	to?: string;
+	restaurantId?: number;
+}
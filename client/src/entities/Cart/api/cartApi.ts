@@ -1,6 +1,10 @@
 import { apiClient } from "@/shared/api/client";
-import type { Cart } from "../types";
-import type { Order } from "@/entities/Order";
+import { ApiException } from "@/shared/api/types";
+import type { Cart, CartOperation, CheckoutTicket } from "../types";
+import { type Order, orderApi } from "@/entities/Order";
+
+// How often the state of an asynchronous checkout is polled
+const CHECKOUT_POLL_INTERVAL_MS = 500;
 
 /**
  * API: Get current user's cart
@@ -37,6 +41,17 @@ export const removeFromCart = async (
 	);
 };
 
+/**
+ * API: Apply several cart operations in one request
+ * PATCH /cart
+ * All operations succeed or none is applied
+ */
+export const updateCart = async (
+	operations: CartOperation[],
+): Promise<Cart> => {
+	return apiClient.patch<Cart>("/cart", operations);
+};
+
 /**
  * API: Clear entire cart
  * DELETE /cart/clear
@@ -48,8 +63,39 @@ export const clearCart = async (): Promise<void> => {
 /**
  * API: Checkout - convert cart to order and clear cart
  * POST /cart/checkout
- * Creates an order from cart items, then clears the cart
+ * Creates an order from cart items, then clears the cart.
+ * Retrying with the same idempotency key returns the already created order.
+ * When the backend checks out asynchronously (202 with a ticket), polls the ticket until the order is written
+ */
+export const checkout = async (idempotencyKey: string): Promise<Order> => {
+	const result = await apiClient.post<Order | CheckoutTicket>(
+		"/cart/checkout",
+		undefined,
+		{ headers: { "Idempotency-Key": idempotencyKey } },
+	);
+	if (!("ticketId" in result)) {
+		return result;
+	}
+
+	let ticket = result;
+	while (ticket.state === "QUEUED") {
+		await new Promise((resolve) =>
+			setTimeout(resolve, CHECKOUT_POLL_INTERVAL_MS),
+		);
+		ticket = await getCheckoutStatus(ticket.ticketId);
+	}
+	if (ticket.state === "FAILED" || ticket.orderId === null) {
+		throw new ApiException(ticket.error ?? "Checkout failed");
+	}
+	return orderApi.getOrderById(ticket.orderId);
+};
+
+/**
+ * API: State of an asynchronous checkout
+ * GET /cart/checkout/{ticketId}
  */
-export const checkout = async (): Promise<Order> => {
-	return apiClient.post<Order>("/cart/checkout");
+export const getCheckoutStatus = async (
+	ticketId: string,
+): Promise<CheckoutTicket> => {
+	return apiClient.get<CheckoutTicket>(`/cart/checkout/${ticketId}`);
 };
@@ -1,3 +1,3 @@
-export type { Cart, CartItem } from "./types";
+export type { Cart, CartItem, CartOperation, CheckoutTicket } from "./types";
 export * as cartApi from "./api/cartApi";
 export { useCartStore } from "./model/cartStore";
@@ -19,6 +19,10 @@ interface CartStore {
 	getTotal: () => number;
 }
 
+// Key of the checkout in progress: kept across failed attempts so a retry
+// cannot create a second order, reset once the order is created
+let checkoutKey: string | null = null;
+
 export const useCartStore = create<CartStore>((set, get) => ({
 	cart: null,
 	isLoading: false,
@@ -75,7 +79,9 @@ export const useCartStore = create<CartStore>((set, get) => ({
 	checkout: async () => {
 		set({ isLoading: true });
 		try {
-			const order = await cartApi.checkout();
+			checkoutKey ??= crypto.randomUUID();
+			const order = await cartApi.checkout(checkoutKey);
+			checkoutKey = null;
 			// Cart is cleared on backend after checkout
 			set({ cart: null, isLoading: false });
 			return order;
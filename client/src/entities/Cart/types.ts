@@ -15,8 +15,30 @@ export interface CartItem {
 }
 
 export interface Cart {
-	cartId: number;
+	cartId: number | null;
 	userId: number;
 	cartItems: CartItem[];
 	total: number;
 }
+
+/**
+ * One operation of PATCH /cart.
+ * remove and set address an item by cartItemId or dishId; set with quantity 0 deletes the item
+ */
+export interface CartOperation {
+	op: "add" | "remove" | "set";
+	dishId?: number;
+	cartItemId?: number;
+	quantity: number;
+}
+
+/**
+ * Asynchronous checkout (202 Accepted): the order is written in the background,
+ * its state is polled at GET /cart/checkout/{ticketId}
+ */
+export interface CheckoutTicket {
+	ticketId: string;
+	state: "QUEUED" | "COMPLETED" | "FAILED";
+	orderId: number | null;
+	error: string | null;
+}
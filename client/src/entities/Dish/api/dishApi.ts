@@ -40,6 +40,27 @@ export const getDishById = async (
 	}
 };
 
+/**
+ * API: Most ordered dishes across all restaurants (last 24 hours)
+ * GET /restaurants/popular?limit={limit}
+ */
+export const getPopularDishes = async (limit = 10): Promise<Dish[]> => {
+	return apiClient.get<Dish[]>(`/restaurants/popular?limit=${limit}`);
+};
+
+/**
+ * API: Dishes of a restaurant, most ordered first
+ * GET /restaurants/{restaurantId}/dishes?sort=popular
+ */
+export const getPopularDishesByRestaurant = async (
+	restaurantId: number,
+	limit = 50,
+): Promise<Dish[]> => {
+	return apiClient.get<Dish[]>(
+		`/restaurants/${restaurantId}/dishes?sort=popular&limit=${limit}`,
+	);
+};
+
 /**
  * API: Search dishes by name (across all restaurants)
  * GET /restaurants/searchDish?dishName={dishName}
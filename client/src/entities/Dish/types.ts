@@ -13,4 +13,8 @@ export interface Dish {
 	// Optional fields for search results
 	restaurantId?: number;
 	restaurantName?: string;
+	// Resized copies of the image (absent until processed)
+	thumbnailUrl?: string;
+	previewUrl?: string;
+	placeholder?: string;
 }
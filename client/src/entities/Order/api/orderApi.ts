@@ -6,9 +6,10 @@ import type { Order, OrderStatus } from "../types";
  * GET /orders
  * User is identified from JWT cookie automatically
  * Returns orders sorted by orderTime (newest first)
+ * The list is paginated - all pages are loaded by following X-Next-Cursor
  */
 export const getAllOrders = async (): Promise<Order[]> => {
-	return apiClient.get<Order[]>("/orders");
+	return apiClient.getAllPages<Order>("/orders");
 };
 
 /**
@@ -24,11 +25,12 @@ export const getOrderById = async (orderId: number): Promise<Order> => {
  * API: Get orders by status
  * GET /orders/status/{status}
  * Filter user's orders by status (PENDING, COMPLETED, CANCELLED)
+ * All pages are loaded by following X-Next-Cursor
  */
 export const getOrdersByStatus = async (
 	status: OrderStatus,
 ): Promise<Order[]> => {
-	return apiClient.get<Order[]>(`/orders/status/${status}`);
+	return apiClient.getAllPages<Order>(`/orders/status/${status}`);
 };
 
 /**
@@ -43,10 +45,32 @@ export const cancelOrder = async (orderId: number): Promise<Order> => {
 /**
  * API: Get order history
  * GET /orders/history
- * Returns all orders sorted by orderTime (newest first)
+ * Returns all orders sorted by orderTime (newest first), page by page via X-Next-Cursor
  */
 export const getOrderHistory = async (): Promise<Order[]> => {
-	return apiClient.get<Order[]>("/orders/history");
+	return apiClient.getAllPages<Order>("/orders/history");
+};
+
+/**
+ * API: Subscribe to order changes (Server-Sent Events)
+ * GET /orders/stream (or /admin/orders/stream for all orders)
+ * EventSource reconnects by itself and resumes from Last-Event-ID;
+ * "reset" means missed changes are lost - reload the orders
+ * Returns a function that closes the subscription
+ */
+export const subscribeToOrders = (
+	onOrder: (order: Order) => void,
+	onReset: () => void,
+	endpoint: string = "/orders/stream",
+): (() => void) => {
+	const source = new EventSource(`http://localhost:8080${endpoint}`, {
+		withCredentials: true,
+	});
+	source.addEventListener("order", (event) => {
+		onOrder(JSON.parse((event as MessageEvent<string>).data) as Order);
+	});
+	source.addEventListener("reset", onReset);
+	return () => source.close();
 };
 
 /**
@@ -7,8 +7,9 @@ export type OrderStatus = "PENDING" | "COMPLETED" | "CANCELLED";
 
 export interface OrderItem {
 	id: number;
-	dishId: number;
-	dishName: string;
+	dishId: number | null; // null when the dish was removed from the catalog
+	dishName: string; // snapshot taken at checkout
+	dishUrl: string | null;
 	quantity: number;
 	priceAtOrder: number;
 	itemTotal: number;
@@ -10,4 +10,8 @@ export interface Restaurant {
 	phone: string;
 	description: string;
 	url: string;
+	// Resized copies of the image (absent until processed)
+	thumbnailUrl?: string;
+	previewUrl?: string;
+	placeholder?: string;
 }
@@ -1,6 +1,6 @@
 import { useCallback, useEffect, useState } from "react";
 import { adminApi } from "@/entities/Admin";
-import type { Order, OrderStatus } from "@/entities/Order";
+import { orderApi, type Order, type OrderStatus } from "@/entities/Order";
 import { useNotificationStore } from "@/shared/model";
 import { UIContainer } from "@/shared/ui/UIContainer";
 import { UITable } from "@/shared/ui/UITable";
@@ -57,6 +57,21 @@ export const AdminOrdersPage = () => {
 		fetchOrders();
 	}, [fetchOrders]);
 
+	// Orders changed elsewhere (cancelled by a customer, updated by another admin)
+	useEffect(() => {
+		return orderApi.subscribeToOrders(
+			(changed) => {
+				setOrders((prevOrders) =>
+					prevOrders.map((order) =>
+						order.orderId === changed.orderId ? changed : order,
+					),
+				);
+			},
+			fetchOrders,
+			"/admin/orders/stream",
+		);
+	}, [fetchOrders]);
+
 	const handleStatusChange = (orderId: number, newStatus: string) => {
 		setStatusChanges((prev) => ({
 			...prev,
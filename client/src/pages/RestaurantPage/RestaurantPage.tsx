@@ -127,7 +127,7 @@ export const RestaurantPage = () => {
 			<div className={styles["restaurant-page__hero"]}>
 				<div
 					className={styles["restaurant-page__hero-image"]}
-					style={{ backgroundImage: `url(${buildImageUrl(restaurant.url)})` }}
+					style={{ backgroundImage: `url(${buildImageUrl(restaurant.previewUrl ?? restaurant.url)})` }}
 					role="img"
 					aria-label={`${restaurant.name} banner`}
 				/>
@@ -4,6 +4,11 @@ export interface RequestConfig extends RequestInit {
 	baseURL?: string;
 }
 
+// Keyset-paginated lists return the next page cursor in this header
+const NEXT_CURSOR_HEADER = "X-Next-Cursor";
+// Largest page the backend serves (KeysetPage.MAX_LIMIT)
+const MAX_PAGE_SIZE = 200;
+
 /**
  * Base API client for making HTTP requests
  * Configured to connect to backend at http://localhost:8080
@@ -19,6 +24,13 @@ class ApiClient {
 		endpoint: string,
 		config: RequestConfig = {},
 	): Promise<T> {
+		return (await this.send<T>(endpoint, config)).data;
+	}
+
+	private async send<T>(
+		endpoint: string,
+		config: RequestConfig = {},
+	): Promise<{ data: T; headers: Headers }> {
 		const url = `${config.baseURL || this.baseURL}${endpoint}`;
 
 		// Don't set Content-Type for FormData - browser will set it with boundary
@@ -50,16 +62,16 @@ class ApiClient {
 
 			// Handle 204 No Content responses (e.g., DELETE operations)
 			if (response.status === 204) {
-				return undefined as T;
+				return { data: undefined as T, headers: response.headers };
 			}
 
 			// Check if response has content before parsing JSON
 			const contentType = response.headers.get("content-type");
 			if (contentType && contentType.includes("application/json")) {
-				return await response.json();
+				return { data: await response.json(), headers: response.headers };
 			}
 
-			return undefined as T;
+			return { data: undefined as T, headers: response.headers };
 		} catch (error) {
 			if (error instanceof ApiException) {
 				throw error;
@@ -74,6 +86,31 @@ class ApiClient {
 		return this.request<T>(endpoint, { ...config, method: "GET" });
 	}
 
+	/**
+	 * GET for keyset-paginated lists (orders, users)
+	 * Follows X-Next-Cursor page by page and returns the whole list
+	 */
+	async getAllPages<T>(
+		endpoint: string,
+		config?: RequestConfig,
+	): Promise<T[]> {
+		const items: T[] = [];
+		const separator = endpoint.includes("?") ? "&" : "?";
+		let cursor: string | null = null;
+		do {
+			const page = `${endpoint}${separator}limit=${MAX_PAGE_SIZE}${
+				cursor ? `&cursor=${encodeURIComponent(cursor)}` : ""
+			}`;
+			const { data, headers } = await this.send<T[]>(page, {
+				...config,
+				method: "GET",
+			});
+			items.push(...(data ?? []));
+			cursor = headers.get(NEXT_CURSOR_HEADER);
+		} while (cursor);
+		return items;
+	}
+
 	async post<T>(
 		endpoint: string,
 		data?: unknown,
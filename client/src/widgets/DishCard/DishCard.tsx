@@ -37,7 +37,7 @@ export const DishCard = ({
 			<div className={styles["dish-card__wrapper"]}>
 				<div className={styles["dish-card__image-wrapper"]}>
 					<img
-						src={buildImageUrl(dish.url)}
+						src={buildImageUrl(dish.thumbnailUrl ?? dish.url)}
 						alt={dish.name}
 						className={styles["dish-card__image"]}
 					/>
@@ -37,6 +37,16 @@ export const OrderHistory = () => {
 		};
 
 		fetchOrders();
+		if (!user) return;
+
+		// Status changes arrive from the server as they happen
+		return orderApi.subscribeToOrders((changed) => {
+			setOrders((prevOrders) =>
+				prevOrders.map((order) =>
+					order.orderId === changed.orderId ? changed : order,
+				),
+			);
+		}, fetchOrders);
 	}, [user]);
 
 	const formatDate = (dateString: string): string => {
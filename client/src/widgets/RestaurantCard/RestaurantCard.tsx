@@ -16,7 +16,7 @@ export const RestaurantCard = ({ restaurant }: RestaurantCardProps) => {
 		>
 			<UICard className={styles["restaurant-card"]}>
 				<img
-					src={buildImageUrl(restaurant.url)}
+					src={buildImageUrl(restaurant.thumbnailUrl ?? restaurant.url)}
 					alt={restaurant.name}
 					className={styles["restaurant-card__image"]}
 				/>
@@ -0,0 +1,82 @@
+package course_project.course_project.config;
+
+import course_project.course_project.service.CatalogBodies;
+import course_project.course_project.service.CatalogService;
+import course_project.course_project.service.DishPopularityService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Условные GET-запросы к каталогу (/restaurants/**).
+ * ETag зависит только от версии каталога, поэтому совпавший If-None-Match получает 304
+ * ещё до вызова контроллера - без обращения к снимку и без сериализации.
+ * Выдачи по популярности меняются и без изменения каталога - в их ETag входит ещё версия рейтинга.
+ */
+@Component
+public class CatalogCacheInterceptor implements HandlerInterceptor {
+
+    private static final Pattern MENU = Pattern.compile("/restaurants/(\\d{1,18})/dishes");
+
+    @Autowired
+    private CatalogService catalogService;
+
+    @Autowired
+    private DishPopularityService dishPopularityService;
+
+    // Сколько секунд браузер может не перепроверять каталог (0 - перепроверять каждый раз)
+    @Value("${catalog.cache.max-age:0}")
+    private long maxAgeSeconds;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return true;
+        }
+
+        CacheControl cacheControl = maxAgeSeconds > 0
+                ? CacheControl.maxAge(Duration.ofSeconds(maxAgeSeconds)).cachePublic()
+                : CacheControl.noCache().cachePublic();
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+        String etag = catalogService.etag();
+        if (request.getRequestURI().endsWith("/popular")
+                || CatalogService.SORT_POPULAR.equals(request.getParameter("sort"))) {
+            etag = etag.substring(0, etag.length() - 1) + "-p" + dishPopularityService.ranking().version() + "\"";
+        }
+        // Сжатый и несжатый ответ - разные представления, у каждого свой строгий ETag
+        if (servesPrecompressed(request)
+                && CatalogBodies.acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+            etag = etag.substring(0, etag.length() - 1) + "-gzip\"";
+        }
+
+        // Выставляет ETag и, если он совпал с If-None-Match, статус 304
+        return !new ServletWebRequest(request, response).checkNotModified(etag);
+    }
+
+    // Сжатое тело отдаётся только без параметров выдачи: все рестораны и готовое меню (CatalogController.prepared)
+    private boolean servesPrecompressed(HttpServletRequest request) {
+        if (request.getParameter("sort") != null || request.getParameter("cursor") != null
+                || request.getParameter("limit") != null) {
+            return false;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if ("/restaurants".equals(path)) {
+            return true;
+        }
+        Matcher menu = MENU.matcher(path);
+        return menu.matches() && catalogService.bodies().getMenu(Long.valueOf(menu.group(1))) != null;
+    }
+}
@@ -1,14 +1,31 @@
 package course_project.course_project.config;
 
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
+
+    @Autowired
+    private CatalogCacheInterceptor catalogCacheInterceptor;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
     @Override
-    public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        registry.addResourceHandler("/uploads/**")
-                .addResourceLocations("file:uploads/");
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(catalogCacheInterceptor)
+                .addPathPatterns("/restaurants", "/restaurants/**");
+
+        // Open-in-view для всех запросов, кроме потоков SSE: они открыты минутами,
+        // и каждый держал бы соединение с БД из пула
+        OpenEntityManagerInViewInterceptor openInView = new OpenEntityManagerInViewInterceptor();
+        openInView.setEntityManagerFactory(entityManagerFactory);
+        registry.addWebRequestInterceptor(openInView)
+                .excludePathPatterns("/orders/stream", "/admin/orders/stream");
     }
 }
@@ -1,27 +1,45 @@
 package course_project.course_project.controller;
 
 import course_project.course_project.dto.*;
+import course_project.course_project.dto.response.CheckoutQueueStatsDTO;
+import course_project.course_project.dto.response.ImportResultDTO;
+import course_project.course_project.dto.response.SalesPeriodDTO;
+import course_project.course_project.dto.response.SalesTotalsDTO;
 import course_project.course_project.model.*;
 import course_project.course_project.repository.DishRepository;
+import course_project.course_project.repository.ImageVariantsRepository;
 import course_project.course_project.repository.OrderRepository;
 import course_project.course_project.repository.RestaurantRepository;
 import course_project.course_project.repository.UserRepository;
+import course_project.course_project.service.CartService;
+import course_project.course_project.service.CatalogService;
+import course_project.course_project.service.CheckoutPipeline;
+import course_project.course_project.service.ImageStorageService;
+import course_project.course_project.service.ImageVariantService;
+import course_project.course_project.service.KeysetQueryService;
+import course_project.course_project.service.MenuImportService;
+import course_project.course_project.service.OrderEventService;
+import course_project.course_project.service.OrderMapper;
+import course_project.course_project.service.SalesAnalyticsService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.HashSet;
 import java.util.List;
-import java.util.UUID;
+import java.util.Optional;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/admin")
@@ -40,9 +58,38 @@ public class AdminController {
     @Autowired
     private UserRepository userRepository;
 
-    // Путь к папке где будут сохраняться загруженные файлы
-    @Value("${file.upload-dir:uploads}")
-    private String uploadDir;
+    @Autowired
+    private CatalogService catalogService;
+
+    @Autowired
+    private KeysetQueryService keysetQueryService;
+
+    @Autowired
+    private MenuImportService menuImportService;
+
+    @Autowired
+    private ImageStorageService imageStorageService;
+
+    @Autowired
+    private ImageVariantService imageVariantService;
+
+    @Autowired
+    private ImageVariantsRepository imageVariantsRepository;
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private CheckoutPipeline checkoutPipeline;
+
+    @Autowired
+    private OrderEventService orderEventService;
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    @Autowired
+    private SalesAnalyticsService salesAnalyticsService;
 
     // ============ РЕСТОРАНЫ ============
 
@@ -56,14 +103,24 @@ public class AdminController {
         restaurant.setDescription(restaurantDTO.getDescription());
 
         // Если загружено фото, сохраняем его и устанавливаем URL
+        String imageUrl = null;
         if (imageFile != null && !imageFile.isEmpty()) {
-            String imageUrl = saveImage(imageFile);
+            imageUrl = imageStorageService.store(imageFile);
             restaurant.setUrl(imageUrl);
         } else {
             restaurant.setUrl(restaurantDTO.getUrl());
         }
 
-        Restaurant savedRestaurant = restaurantRepository.save(restaurant);
+        Restaurant savedRestaurant;
+        try {
+            savedRestaurant = restaurantRepository.save(restaurant);
+        } catch (RuntimeException e) {
+            imageStorageService.abandoned(imageUrl);
+            throw e;
+        }
+        imageStorageService.attached(imageUrl);
+        catalogService.restaurantSaved(savedRestaurant);
+        imageVariantService.submit(savedRestaurant.getUrl());
         return ResponseEntity.status(HttpStatus.CREATED).body(convertRestaurantToDTO(savedRestaurant));
     }
 
@@ -82,17 +139,27 @@ public class AdminController {
         restaurant.setDescription(restaurantDTO.getDescription());
 
         // Если загружено новое фото
+        String oldUrl = restaurant.getUrl();
+        String imageUrl = null;
         if (imageFile != null && !imageFile.isEmpty()) {
-            // Удаляем старый файл если есть
-            if (restaurant.getUrl() != null && !restaurant.getUrl().isEmpty()) {
-                deleteImage(restaurant.getUrl());
-            }
-            // Сохраняем новый файл
-            String imageUrl = saveImage(imageFile);
+            imageUrl = imageStorageService.store(imageFile);
             restaurant.setUrl(imageUrl);
         }
 
-        Restaurant updatedRestaurant = restaurantRepository.save(restaurant);
+        Restaurant updatedRestaurant;
+        try {
+            updatedRestaurant = restaurantRepository.save(restaurant);
+        } catch (RuntimeException e) {
+            imageStorageService.abandoned(imageUrl);
+            throw e;
+        }
+        imageStorageService.attached(imageUrl);
+        // Старый файл удаляется, только если на него больше никто не ссылается
+        if (imageUrl != null) {
+            imageStorageService.release(oldUrl);
+        }
+        catalogService.restaurantSaved(updatedRestaurant);
+        imageVariantService.submit(updatedRestaurant.getUrl());
         return ResponseEntity.ok(convertRestaurantToDTO(updatedRestaurant));
     }
 
@@ -101,13 +168,16 @@ public class AdminController {
         Restaurant restaurant = restaurantRepository.findById(restaurantId)
                 .orElseThrow(() -> new IllegalArgumentException("Ресторан не найден"));
 
-        // Удаляем файл со диска
-        if (restaurant.getUrl() != null && !restaurant.getUrl().isEmpty()) {
-            deleteImage(restaurant.getUrl());
-        }
+        // Вместе с рестораном каскадно удаляются его блюда - их картинки тоже освобождаем
+        Set<String> imageUrls = new HashSet<>();
+        imageUrls.add(restaurant.getUrl());
+        catalogService.getDishes(restaurantId).forEach(dish -> imageUrls.add(dish.getUrl()));
 
-        // Удаляем запись из БД
+        // Удаляем запись из БД (позиции корзин с его блюдами удалит каскад)
+        cartService.excludeRestaurant(restaurantId);
         restaurantRepository.deleteById(restaurantId);
+        catalogService.restaurantDeleted(restaurantId);
+        imageUrls.forEach(imageStorageService::release);
         return ResponseEntity.noContent().build();
     }
 
@@ -130,14 +200,24 @@ public class AdminController {
         dish.setWeight(dishDTO.getWeight());
 
         // Если загружено фото, сохраняем его и устанавливаем URL
+        String imageUrl = null;
         if (imageFile != null && !imageFile.isEmpty()) {
-            String imageUrl = saveImage(imageFile);
+            imageUrl = imageStorageService.store(imageFile);
             dish.setUrl(imageUrl);
         } else {
             dish.setUrl(dishDTO.getUrl());
         }
 
-        Dish savedDish = dishRepository.save(dish);
+        Dish savedDish;
+        try {
+            savedDish = dishRepository.save(dish);
+        } catch (RuntimeException e) {
+            imageStorageService.abandoned(imageUrl);
+            throw e;
+        }
+        imageStorageService.attached(imageUrl);
+        catalogService.dishSaved(savedDish);
+        imageVariantService.submit(savedDish.getUrl());
         return ResponseEntity.status(HttpStatus.CREATED).body(convertDishToDTO(savedDish));
     }
 
@@ -156,17 +236,27 @@ public class AdminController {
         dish.setWeight(dishDTO.getWeight());
 
         // Если загружено новое фото
+        String oldUrl = dish.getUrl();
+        String imageUrl = null;
         if (imageFile != null && !imageFile.isEmpty()) {
-            // Удаляем старый файл если есть
-            if (dish.getUrl() != null && !dish.getUrl().isEmpty()) {
-                deleteImage(dish.getUrl());
-            }
-            // Сохраняем новый файл
-            String imageUrl = saveImage(imageFile);
+            imageUrl = imageStorageService.store(imageFile);
             dish.setUrl(imageUrl);
         }
 
-        Dish updatedDish = dishRepository.save(dish);
+        Dish updatedDish;
+        try {
+            updatedDish = dishRepository.save(dish);
+        } catch (RuntimeException e) {
+            imageStorageService.abandoned(imageUrl);
+            throw e;
+        }
+        imageStorageService.attached(imageUrl);
+        // Старый файл удаляется, только если на него больше никто не ссылается
+        if (imageUrl != null) {
+            imageStorageService.release(oldUrl);
+        }
+        catalogService.dishSaved(updatedDish);
+        imageVariantService.submit(updatedDish.getUrl());
         return ResponseEntity.ok(convertDishToDTO(updatedDish));
     }
 
@@ -175,65 +265,132 @@ public class AdminController {
         Dish dish = dishRepository.findById(dishId)
                 .orElseThrow(() -> new IllegalArgumentException("Ресторан не найден"));
 
-        // Удаляем файл со диска
-        if (dish.getUrl() != null && !dish.getUrl().isEmpty()) {
-            deleteImage(dish.getUrl());
-        }
-
-        // Удаляем запись из БД
+        // Удаляем запись из БД (позиции корзин с этим блюдом удалит каскад, в позициях заказов ссылка обнулится)
+        cartService.excludeDish(dishId);
         dishRepository.deleteById(dishId);
+        catalogService.dishDeleted(dishId);
+
+        // Файл удаляется, только если на него больше никто не ссылается
+        imageStorageService.release(dish.getUrl());
         return ResponseEntity.noContent().build();
     }
 
+    // ============ МАССОВЫЙ ИМПОРТ ============
+
+    // Тело читается потоково (без multipart и без буферизации всего файла), ошибки возвращаются по строкам
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson"})
+    public ResponseEntity<ImportResultDTO> importMenu(HttpServletRequest request) throws IOException {
+        MediaType contentType = MediaType.parseMediaType(request.getContentType());
+        return ResponseEntity.ok(menuImportService.importMenu(request.getInputStream(), contentType));
+    }
+
     // ============ ЗАКАЗЫ ============
 
+    // Постранично (по умолчанию новые сверху), курсор следующей страницы - в заголовке X-Next-Cursor
     @GetMapping("/orders")
     public ResponseEntity<List<OrderDTO>> getOrders(
             @RequestParam(required = false) OrderStatus status,
-            @RequestParam(required = false) Long userId) {
-
-        List<Order> orders;
+            @RequestParam(required = false) Long userId,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
 
-        if (status != null && userId != null) {
-            orders = orderRepository.findByUserIdAndStatus(userId, status);
-        } else if (status != null) {
-            orders = orderRepository.findByStatus(status);
-        } else if (userId != null) {
-            orders = orderRepository.findByUserId(userId);
-        } else {
-            orders = orderRepository.findAll();
+        try {
+            return keysetQueryService.findOrders(userId, status, sort, cursor, limit)
+                    .toResponse();
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return ResponseEntity.badRequest().build();
         }
+    }
 
-        List<OrderDTO> orderDTOs = new ArrayList<>();
-        orders.forEach(order -> orderDTOs.add(convertOrderToDTO(order)));
+    // Изменения всех заказов (Server-Sent Events) для дашборда заказов, с повтором по Last-Event-ID
+    @GetMapping(value = "/orders/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamOrders(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return orderEventService.subscribeAll(lastEventId);
+    }
 
-        return ResponseEntity.ok(orderDTOs);
+    // Асинхронное оформление: глубина очереди, размеры и время пакетов
+    @GetMapping("/orders/checkout-queue")
+    public ResponseEntity<CheckoutQueueStatsDTO> getCheckoutQueueStats() {
+        return ResponseEntity.ok(checkoutPipeline.getStats());
     }
 
     @PatchMapping("/orders/{orderId}/status")
     public ResponseEntity<OrderDTO> updateOrderStatus(@PathVariable Long orderId,
                                                       @RequestParam OrderStatus status) {
-        Order order = orderRepository.findById(orderId)
+        Order order = orderRepository.findWithItemsById(orderId)
                 .orElseThrow(() -> new IllegalArgumentException("Заказ не найден"));
 
-        order.setStatus(status);
-        Order updatedOrder = orderRepository.save(order);
+        OrderStatus previous = order.getStatus();
+        if (previous != status) {
+            // Параллельная смена статуса успела первой - изменение в статистике учтёт только она
+            if (orderRepository.updateStatus(orderId, previous, status, LocalDateTime.now()) == 0) {
+                return ResponseEntity.status(409).build();
+            }
+            order.setStatus(status);
+            salesAnalyticsService.statusChanged(order, previous);
+        }
 
-        return ResponseEntity.ok(convertOrderToDTO(updatedOrder));
+        OrderDTO orderDTO = orderMapper.toDTO(order);
+        if (previous != status) {
+            // Тот же статус - заказ не изменился, подписчикам сообщать нечего
+            orderEventService.publish(orderDTO);
+        }
+        return ResponseEntity.ok(orderDTO);
     }
 
-    // ============ ПОЛЬЗОВАТЕЛИ ============
+    // ============ СТАТИСТИКА ============
 
-    @GetMapping("/users")
-    public ResponseEntity<List<UserInfoDTO>> getUsers() {
-        List<User> users = userRepository.findAll();
-        List<UserInfoDTO> userInfoDTOs = new ArrayList<>();
+    // Продажи по дням или часам (granularity=day|hour) за период from..to (по умолчанию последние 7 дней)
+    @GetMapping("/stats")
+    public ResponseEntity<List<SalesPeriodDTO>> getSalesTimeline(
+            @RequestParam(required = false) String granularity,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) Long restaurantId) {
+        try {
+            return ResponseEntity.ok(salesAnalyticsService.getTimeline(granularity, from, to, restaurantId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/stats/restaurants")
+    public ResponseEntity<List<SalesTotalsDTO>> getRestaurantSales(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            return ResponseEntity.ok(salesAnalyticsService.getRestaurantTotals(from, to));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/stats/dishes")
+    public ResponseEntity<List<SalesTotalsDTO>> getDishSales(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) Long restaurantId) {
+        try {
+            return ResponseEntity.ok(salesAnalyticsService.getDishTotals(from, to, restaurantId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
 
-        users.forEach(user -> userInfoDTOs.add(
-                new UserInfoDTO(user.getId(), user.getName(), user.getEmail(), user.getRole())
-        ));
+    // ============ ПОЛЬЗОВАТЕЛИ ============
 
-        return ResponseEntity.ok(userInfoDTOs);
+    @GetMapping("/users")
+    public ResponseEntity<List<UserInfoDTO>> getUsers(@RequestParam(required = false) String sort,
+                                                      @RequestParam(required = false) String cursor,
+                                                      @RequestParam(required = false) Integer limit) {
+        try {
+            return keysetQueryService.findUsers(sort, cursor, limit)
+                    .map(user -> new UserInfoDTO(user.getId(), user.getName(), user.getEmail(), user.getRole()))
+                    .toResponse();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     @DeleteMapping("/users/{userId}")
@@ -242,68 +399,14 @@ public class AdminController {
             return ResponseEntity.notFound().build();
         }
         userRepository.deleteById(userId);
+        cartService.excludeUser(userId);
         return ResponseEntity.noContent().build();
     }
 
     // ============ ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ============
 
-    /**
-     * Сохраняет загруженный файл на диск и возвращает путь к нему
-     *
-     * @param file MultipartFile загруженный файл
-     * @return String путь к сохранённому файлу (для использования в URL)
-     */
-    private String saveImage(MultipartFile file) {
-        try {
-            // Генерируем уникальное имя файла: UUID + оригинальное расширение
-            String originalFilename = file.getOriginalFilename();
-            String fileExtension = originalFilename.substring(originalFilename.lastIndexOf("."));
-            String uniqueFilename = UUID.randomUUID() + fileExtension;
-
-            // Создаём директорию если её нет
-            Path uploadPath = Paths.get(uploadDir);
-            if (!Files.exists(uploadPath)) {
-                Files.createDirectories(uploadPath);
-            }
-
-            // Полный путь к файлу
-            Path filePath = uploadPath.resolve(uniqueFilename);
-
-            // Сохраняем файл на диск
-            Files.write(filePath, file.getBytes());
-
-            // Возвращаем относительный путь для URL
-            // Например: "/uploads/550e8400-e29b-41d4-a716-446655440000.jpg"
-            return "/uploads/" + uniqueFilename;
-
-        } catch (IOException e) {
-            throw new RuntimeException("Ошибка при сохранении файла: " + e.getMessage());
-        }
-    }
-
-    /**
-     * Удаляет файл со диска
-     * @param imageUrl путь к файлу (например: /uploads/550e8400-e29b-41d4-a716-446655440000.jpg)
-     */
-    private void deleteImage(String imageUrl) {
-        try {
-            // Преобразуем URL в путь
-            // /uploads/550e8400... → uploads/550e8400...
-            String filePath = imageUrl.startsWith("/") ? imageUrl.substring(1) : imageUrl;
-            Path path = Paths.get(filePath);
-
-            if (Files.exists(path)) {
-                Files.delete(path);
-            }
-        } catch (IOException e) {
-            // Логируем ошибку, но не кидаем исключение
-            // Если удаление не сработало, всё равно продолжаем обновление
-            System.err.println("Ошибка при удалении старого файла: " + e.getMessage());
-        }
-    }
-
     private RestaurantDTO convertRestaurantToDTO(Restaurant restaurant) {
-        return new RestaurantDTO(
+        RestaurantDTO restaurantDTO = new RestaurantDTO(
                 restaurant.getId(),
                 restaurant.getName(),
                 restaurant.getAddress(),
@@ -311,10 +414,16 @@ public class AdminController {
                 restaurant.getDescription(),
                 restaurant.getUrl()
         );
+        findImageVariants(restaurant.getUrl()).ifPresent(variants -> {
+            restaurantDTO.setThumbnailUrl(variants.getThumbnailUrl());
+            restaurantDTO.setPreviewUrl(variants.getPreviewUrl());
+            restaurantDTO.setPlaceholder(variants.getPlaceholder());
+        });
+        return restaurantDTO;
     }
 
     private DishDTO convertDishToDTO(Dish dish) {
-        return new DishDTO(
+        DishDTO dishDTO = new DishDTO(
                 dish.getId(),
                 dish.getName(),
                 dish.getDescription(),
@@ -322,27 +431,16 @@ public class AdminController {
                 dish.getPrice(),
                 dish.getWeight()
         );
+        findImageVariants(dish.getUrl()).ifPresent(variants -> {
+            dishDTO.setThumbnailUrl(variants.getThumbnailUrl());
+            dishDTO.setPreviewUrl(variants.getPreviewUrl());
+            dishDTO.setPlaceholder(variants.getPlaceholder());
+        });
+        return dishDTO;
     }
 
-    private OrderDTO convertOrderToDTO(Order order) {
-        var orderItemDTOs = order.getOrderItems().stream()
-                .map(orderItem -> new course_project.course_project.dto.OrderItemDTO(
-                        orderItem.getId(),
-                        orderItem.getDish().getId(),
-                        orderItem.getDish().getName(),
-                        orderItem.getQuantity(),
-                        orderItem.getPriceAtOrder(),
-                        orderItem.getPriceAtOrder().multiply(new BigDecimal(orderItem.getQuantity()))
-                ))
-                .toList();
-
-        return new OrderDTO(
-                order.getId(),
-                order.getUser().getId(),
-                orderItemDTOs,
-                order.getOrderTime(),
-                order.getStatus(),
-                order.getTotal()
-        );
+    // Копии картинки, если уже готовы (та же картинка уже загружалась или не менялась)
+    private Optional<ImageVariants> findImageVariants(String url) {
+        return url == null ? Optional.empty() : imageVariantsRepository.findById(url);
     }
 }
@@ -4,14 +4,20 @@ import course_project.course_project.dto.CartDTO;
 import course_project.course_project.dto.CartItemDTO;
 import course_project.course_project.dto.DishDTO;
 import course_project.course_project.dto.OrderDTO;
-import course_project.course_project.dto.OrderItemDTO;
+import course_project.course_project.dto.request.CartOperationDTO;
+import course_project.course_project.dto.response.CheckoutTicketDTO;
 import course_project.course_project.model.*;
 import course_project.course_project.repository.CartItemRepository;
-import course_project.course_project.repository.CartRepository;
 import course_project.course_project.repository.DishRepository;
 import course_project.course_project.repository.UserRepository;
 import course_project.course_project.service.CartService;
+import course_project.course_project.service.CatalogService;
+import course_project.course_project.service.CheckoutKeyService;
+import course_project.course_project.service.CheckoutPipeline;
+import course_project.course_project.service.OrderMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -19,8 +25,10 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 @RestController
 @RequestMapping("/cart")
@@ -39,13 +47,29 @@ public class CartController {
     private CartItemRepository cartItemRepository;
 
     @Autowired
-    private CartRepository cartRepository;
+    private CheckoutPipeline checkoutPipeline;
 
-    // Получить корзину текущего пользователя
+    @Autowired
+    private CatalogService catalogService;
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    // Получить корзину текущего пользователя (только чтение: id пользователя и корзина с позициями)
     @GetMapping
     public ResponseEntity<CartDTO> getCart() {
-        User user = getCurrentUser();
-        Cart cart = cartService.getCartByUser(user);
+        String username = SecurityContextHolder.getContext().getAuthentication().getName();
+        User user = new User();
+        user.setId(userRepository.findIdByName(username)
+                .orElseThrow(() -> new IllegalArgumentException("Пользователь не найден")));
+        user.setName(username);
+        Cart cart = cartService.findCart(user);
+
+        if (cart == null) {
+            // Корзины ещё нет - отдаём пустую, не создавая её
+            CartDTO emptyCart = new CartDTO(null, user.getId(), new ArrayList<>(), BigDecimal.ZERO);
+            return ResponseEntity.ok(emptyCart);
+        }
 
         CartDTO cartDTO = convertToDTO(cart);
         return ResponseEntity.ok(cartDTO);
@@ -63,8 +87,7 @@ public class CartController {
         Dish dish = dishRepository.findById(dishId)
                 .orElseThrow(() -> new IllegalArgumentException("Блюдо не найдено"));
 
-        cartService.addDishToCart(dish, quantity, user);
-        Cart cart = cartService.getCartByUser(user);
+        Cart cart = cartService.addDishToCart(dish, quantity, user);
 
         CartDTO cartDTO = convertToDTO(cart);
         return ResponseEntity.ok(cartDTO);
@@ -81,23 +104,31 @@ public class CartController {
         User user = getCurrentUser();
 
         try {
-            CartItem cartItem = cartItemRepository.findById(cartItemId)
-                    .orElseThrow(() -> new IllegalArgumentException("CartItem не найден"));
+            Cart cart = cartService.removeCartItem(user, cartItemId, quantity);
 
-            if (!cartItem.getCart().getUser().getId().equals(user.getId())) {
+            CartDTO cartDTO = convertToDTO(cart);
+            return ResponseEntity.ok(cartDTO);
+        } catch (IllegalArgumentException e) {
+            // Позиции нет в корзине пользователя: чужая - 403, несуществующая - 404
+            if (cartItemRepository.existsById(cartItemId)) {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
             }
+            return ResponseEntity.notFound().build();
+        }
+    }
 
-            Long cartId = cartItem.getCart().getId();
-            cartService.removeCartItem(user, cartItemId, quantity);
+    // Пакет операций над корзиной (add, remove, set) одним запросом - всё или ничего
+    @PatchMapping
+    public ResponseEntity<CartDTO> updateCart(@RequestBody List<CartOperationDTO> operations) {
+        User user = getCurrentUser();
 
-            Cart cart = cartRepository.findById(cartId)
-                    .orElseThrow(() -> new IllegalArgumentException("Cart не найден"));
+        try {
+            Cart cart = cartService.applyOperations(user, operations);
 
             CartDTO cartDTO = convertToDTO(cart);
             return ResponseEntity.ok(cartDTO);
         } catch (IllegalArgumentException e) {
-            return ResponseEntity.notFound().build();
+            return ResponseEntity.badRequest().build();
         }
     }
 
@@ -109,13 +140,75 @@ public class CartController {
         return ResponseEntity.noContent().build();
     }
 
-    // Оформить заказ (checkout)
+    /**
+     * Оформить заказ (checkout). Повтор с тем же Idempotency-Key возвращает уже созданный заказ.
+     * В асинхронном режиме - 202 с адресом состояния в Location, заказ записывается в фоне;
+     * очередь заполнена - 503 и Retry-After
+     */
     @PostMapping("/checkout")
-    public ResponseEntity<OrderDTO> checkout() {
+    public ResponseEntity<?> checkout(@RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        if (idempotencyKey != null && !CheckoutKeyService.isValid(idempotencyKey)) {
+            return ResponseEntity.badRequest().build();
+        }
+        User user = getCurrentUser();
+        if (checkoutPipeline.isEnabled()) {
+            return checkoutAsync(user, idempotencyKey);
+        }
+
+        try {
+            CartService.CheckoutResult result = cartService.checkoutCart(user, idempotencyKey);
+            return created(result.order(), result.replayed());
+        } catch (IllegalArgumentException e) {
+            // Корзина пуста
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // Состояние асинхронного оформления: QUEUED, COMPLETED (с orderId) или FAILED
+    @GetMapping("/checkout/{ticketId}")
+    public ResponseEntity<CheckoutTicketDTO> getCheckoutStatus(@PathVariable String ticketId) {
         User user = getCurrentUser();
-        Order order = cartService.checkoutCart(user);
-        OrderDTO orderDTO = convertOrderToDTO(order);
-        return ResponseEntity.status(HttpStatus.CREATED).body(orderDTO);
+        CheckoutTicketDTO ticket = checkoutPipeline.find(user.getId(), ticketId);
+        if (ticket == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(ticket);
+    }
+
+    // Корзину одновременно меняют другие запросы, повторы исчерпаны - клиент может повторить позже
+    @ExceptionHandler(ConcurrencyFailureException.class)
+    public ResponseEntity<Void> handleConflict() {
+        return ResponseEntity.status(HttpStatus.CONFLICT).build();
+    }
+
+    // Корзина проверяется сразу, заказ пишется в фоне пакетом с другими
+    private ResponseEntity<?> checkoutAsync(User user, String idempotencyKey) {
+        if (idempotencyKey != null) {
+            Order previous = cartService.findCheckout(user, idempotencyKey);
+            if (previous != null) {
+                return created(previous, true);
+            }
+        }
+        Cart cart = cartService.findCart(user);
+        if (cart == null || cart.getCartItems().isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        CheckoutTicketDTO ticket = checkoutPipeline.submit(user, idempotencyKey);
+        if (ticket == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(checkoutPipeline.getRetryAfterSeconds()))
+                    .build();
+        }
+        return ResponseEntity.accepted()
+                .location(URI.create("/cart/checkout/" + ticket.getTicketId()))
+                .body(ticket);
+    }
+
+    private ResponseEntity<OrderDTO> created(Order order, boolean replayed) {
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .header("Idempotent-Replayed", String.valueOf(replayed))
+                .body(orderMapper.toDTO(order));
     }
 
     // Вспомогательный метод для получения текущего пользователя
@@ -145,6 +238,13 @@ public class CartController {
                         dish.getPrice(),
                         dish.getWeight()
                 );
+                // Копии картинки - из снимка каталога, без запросов к БД
+                DishDTO catalogDish = catalogService.current().getDish(dish.getId());
+                if (catalogDish != null && Objects.equals(catalogDish.getUrl(), dish.getUrl())) {
+                    dishDTO.setThumbnailUrl(catalogDish.getThumbnailUrl());
+                    dishDTO.setPreviewUrl(catalogDish.getPreviewUrl());
+                    dishDTO.setPlaceholder(catalogDish.getPlaceholder());
+                }
 
                 CartItemDTO itemDTO = new CartItemDTO(
                         cartItem.getId(),
@@ -162,31 +262,4 @@ public class CartController {
         return cartDTO;
     }
 
-    // Конвертация Order в OrderDTO
-    private OrderDTO convertOrderToDTO(Order order) {
-        List<OrderItemDTO> orderItemDTOs = new ArrayList<>();
-        if (order.getOrderItems() != null) {
-            order.getOrderItems().forEach(orderItem -> {
-                OrderItemDTO itemDTO = new OrderItemDTO(
-                        orderItem.getId(),
-                        orderItem.getDish().getId(),
-                        orderItem.getDish().getName(),
-                        orderItem.getQuantity(),
-                        orderItem.getPriceAtOrder(),
-                        orderItem.getPriceAtOrder().multiply(new BigDecimal(orderItem.getQuantity()))
-                );
-                orderItemDTOs.add(itemDTO);
-            });
-        }
-
-        return new OrderDTO(
-                order.getId(),
-                order.getUser().getId(),
-                orderItemDTOs,
-                order.getOrderTime(),
-                order.getStatus(),
-                order.getTotal()
-        );
-    }
-
 }
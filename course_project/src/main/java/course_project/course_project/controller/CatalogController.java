@@ -2,15 +2,15 @@ package course_project.course_project.controller;
 
 import course_project.course_project.dto.DishDTO;
 import course_project.course_project.dto.RestaurantDTO;
-import course_project.course_project.model.Dish;
-import course_project.course_project.model.Restaurant;
-import course_project.course_project.repository.DishRepository;
-import course_project.course_project.repository.RestaurantRepository;
+import course_project.course_project.dto.SuggestionDTO;
+import course_project.course_project.service.CatalogBodies;
+import course_project.course_project.service.CatalogService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.ArrayList;
 import java.util.List;
 
 @RestController
@@ -18,121 +18,103 @@ import java.util.List;
 public class CatalogController {
 
     @Autowired
-    private RestaurantRepository restaurantRepository;
+    private CatalogService catalogService;
 
-    @Autowired
-    private DishRepository dishRepository;
-
-    //все рестораны для главной страницы
+    //все рестораны для главной страницы (из снимка каталога, без обращения к БД)
+    //с параметрами sort/cursor/limit - постранично, курсор следующей страницы в заголовке X-Next-Cursor
     @GetMapping
-    public ResponseEntity<List<RestaurantDTO>> getRestaurants() {
-        List<Restaurant> restaurants = restaurantRepository.findAll();
-        List<RestaurantDTO> restaurantDTOs = new ArrayList<>();
-        restaurants.forEach(restaurant -> restaurantDTOs.add(
-                        new RestaurantDTO(
-                                restaurant.getId(),
-                                restaurant.getName(),
-                                restaurant.getAddress(),
-                                restaurant.getPhone(),
-                                restaurant.getDescription(),
-                                restaurant.getUrl()
-                        )
-                )
-        );
-        return ResponseEntity.ok(restaurantDTOs);
+    public ResponseEntity<?> getRestaurants(@RequestParam(required = false) String sort,
+                                            @RequestParam(required = false) String cursor,
+                                            @RequestParam(required = false) Integer limit,
+                                            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false)
+                                            String acceptEncoding) {
+        if (sort == null && cursor == null && limit == null) {
+            return prepared(catalogService.bodies().getRestaurants(), acceptEncoding);
+        }
+        try {
+            return catalogService.getRestaurants(sort, cursor, limit).toResponse();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
-    //поиск ресторана по названию
+    //поиск ресторана по названию (по триграммному индексу, с ранжированием)
     @GetMapping("/searchRestaurant")
     public ResponseEntity<List<RestaurantDTO>> getRestaurantsByName(@RequestParam String name) {
-        List<Restaurant> restaurants = restaurantRepository.search(name);
-        List<RestaurantDTO> restaurantDTOs = new ArrayList<>();
-        restaurants.forEach(restaurant -> restaurantDTOs.add(
-                        new RestaurantDTO(
-                                restaurant.getId(),
-                                restaurant.getName(),
-                                restaurant.getAddress(),
-                                restaurant.getPhone(),
-                                restaurant.getDescription(),
-                                restaurant.getUrl()
-                        )
-                )
-        );
-        return ResponseEntity.ok(restaurantDTOs);
+        return ResponseEntity.ok(catalogService.searchRestaurants(name));
     }
 
-    //все блюда выбранного ресторана
+    //подсказки для строки поиска (рестораны и блюда по префиксу, с учётом опечаток)
+    @GetMapping("/suggest")
+    public ResponseEntity<List<SuggestionDTO>> suggest(@RequestParam String query,
+                                                       @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(catalogService.suggest(query, limit));
+    }
+
+    //популярные сейчас блюда всех ресторанов (по числу заказов за последние сутки, из памяти)
+    @GetMapping("/popular")
+    public ResponseEntity<List<DishDTO>> getPopularDishes(@RequestParam(defaultValue = "10") int limit) {
+        try {
+            return ResponseEntity.ok(catalogService.getPopularDishes(limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    //все блюда выбранного ресторана (из снимка каталога), постранично - как и рестораны
+    //sort=popular - сначала самые заказываемые
     @GetMapping("/{restaurantId}/dishes")
-    public ResponseEntity<List<DishDTO>> getDishes(@PathVariable Long restaurantId) {
-        List<Dish> dishes = dishRepository.findByRestaurantId(restaurantId);
-        List<DishDTO> dishDTOs = new ArrayList<>();
-        dishes.forEach(dish -> dishDTOs.add(
-                        new DishDTO(
-                                dish.getId(),
-                                dish.getName(),
-                                dish.getDescription(),
-                                dish.getUrl(),
-                                dish.getPrice(),
-                                dish.getWeight()
-                        )
-                )
-        );
-        return ResponseEntity.ok(dishDTOs);
+    public ResponseEntity<?> getDishes(@PathVariable Long restaurantId,
+                                       @RequestParam(required = false) String sort,
+                                       @RequestParam(required = false) String cursor,
+                                       @RequestParam(required = false) Integer limit,
+                                       @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false)
+                                       String acceptEncoding) {
+        if (sort == null && cursor == null && limit == null) {
+            CatalogBodies.Body menu = catalogService.bodies().getMenu(restaurantId);
+            if (menu != null) {
+                return prepared(menu, acceptEncoding);
+            }
+            return ResponseEntity.ok(catalogService.getDishes(restaurantId));
+        }
+        try {
+            return catalogService.getDishes(restaurantId, sort, cursor, limit).toResponse();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     //поиск блюда по названию в выбранном ресторане
     @GetMapping("/{restaurantId}/dishes/searchDish")
     public ResponseEntity<List<DishDTO>> getDishesByRestaurantIdAndDishName(@PathVariable Long restaurantId,
                                                                             @RequestParam String dishName) {
-        List<Dish> dishes = dishRepository.searchInRestaurant(dishName, restaurantId);
-        List<DishDTO> dishDTOs = new ArrayList<>();
-        dishes.forEach(dish -> dishDTOs.add(
-                        new DishDTO(
-                                dish.getId(),
-                                dish.getName(),
-                                dish.getDescription(),
-                                dish.getUrl(),
-                                dish.getPrice(),
-                                dish.getWeight()
-                        )
-                )
-        );
-        return ResponseEntity.ok(dishDTOs);
+        return ResponseEntity.ok(catalogService.searchDishes(dishName, restaurantId));
     }
+
     //поиск блюда на главной странице
     @GetMapping("/searchDish")
     public ResponseEntity<List<DishDTO>> getDishesByName(@RequestParam String dishName) {
-        List<Dish> dishes = dishRepository.search(dishName);
-        List<DishDTO> dishDTOs = new ArrayList<>();
-        dishes.forEach(dish -> dishDTOs.add(
-                        new DishDTO(
-                                dish.getId(),
-                                dish.getName(),
-                                dish.getDescription(),
-                                dish.getUrl(),
-                                dish.getPrice(),
-                                dish.getWeight(),
-                                dish.getRestaurant().getId(),
-                                dish.getRestaurant().getName()
-                        )
-                )
-        );
-        return ResponseEntity.ok(dishDTOs);
+        return ResponseEntity.ok(catalogService.searchDishes(dishName, null));
+    }
+
+    // Отдаём заранее сериализованный JSON (и gzip, если клиент его принимает) без Jackson и сжатия на запрос
+    private ResponseEntity<byte[]> prepared(CatalogBodies.Body body, String acceptEncoding) {
+        boolean gzip = CatalogBodies.acceptsGzip(acceptEncoding);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body.forEncoding(gzip));
     }
 
     //открытое окно блюда
     @GetMapping("/{restaurantId}/dishes/{dishId}")
     public ResponseEntity<DishDTO> getDishById(@PathVariable Long restaurantId,
                                                @PathVariable Long dishId) {
-        Dish dish = dishRepository.findByIdAndRestaurantId(dishId, restaurantId);
-        DishDTO dishDTO = new DishDTO(
-                dish.getId(),
-                dish.getName(),
-                dish.getDescription(),
-                dish.getUrl(),
-                dish.getPrice(),
-                dish.getWeight()
-        );
+        DishDTO dishDTO = catalogService.getDish(restaurantId, dishId);
+        if (dishDTO == null) {
+            return ResponseEntity.notFound().build();
+        }
         return ResponseEntity.ok(dishDTO);
     }
 
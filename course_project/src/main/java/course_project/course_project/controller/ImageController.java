@@ -0,0 +1,197 @@
+package course_project.course_project.controller;
+
+import course_project.course_project.service.CatalogBodies;
+import course_project.course_project.service.ImageStorageService;
+import course_project.course_project.service.ImageStore;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Раздача загруженных картинок (/uploads/**).
+ *
+ * Локальный файл отдаётся через sendfile Tomcat: поток обработчика сразу освобождается, а файл
+ * копирует в сокет ядро. Если sendfile недоступен - FileChannel.transferTo прямо в ответ.
+ * Файлы с хэшем содержимого в имени никогда не меняются, поэтому кэшируются навсегда.
+ */
+@RestController
+@RequestMapping("/uploads")
+public class ImageController {
+
+    // Атрибуты запроса, через которые Tomcat принимает файл для sendfile
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // <sha256>.<ext> или <sha256>-<размер>.<ext> (уменьшенная копия)
+    private static final Pattern HASHED_NAME = Pattern.compile("([0-9a-f]{64}(?:-\\d+)?)\\.[a-z0-9]+");
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d{0,18})-(\\d{0,18})");
+
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+    private static final CacheControl REVALIDATE = CacheControl.maxAge(Duration.ofHours(1)).cachePublic();
+
+    @Autowired
+    private ImageStorageService imageStorageService;
+
+    @RequestMapping(value = "/{filename:.+}", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void serve(@PathVariable String filename,
+                      HttpServletRequest request,
+                      HttpServletResponse response) throws IOException {
+        String url = ImageStorageService.URL_PREFIX + filename;
+        ImageStore.StoredImage image = imageStorageService.find(url);
+        if (image == null) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        long lastModified = image.lastModified();
+
+        Matcher hashed = HASHED_NAME.matcher(filename);
+        boolean immutable = hashed.matches();
+        String etag = immutable
+                ? "\"" + hashed.group(1) + "\""
+                : "\"" + Long.toHexString(image.size()) + "-" + Long.toHexString(lastModified) + "\"";
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, (immutable ? IMMUTABLE : REVALIDATE).getHeaderValue());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        MediaType mediaType = MediaTypeFactory.getMediaType(filename).orElse(MediaType.APPLICATION_OCTET_STREAM);
+
+        // Диапазон отдаётся только из исходного файла; If-Range сравнивается с его ETag
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        boolean ranged = range != null && (ifRange == null || ifRange.equals(etag));
+
+        // Заранее сжатая копия рядом с файлом (имя.br / имя.gz), если клиент её принимает.
+        // Растровые картинки уже сжаты - для них копий не бывает, лишний раз хранилище не спрашиваем
+        String encoding = null;
+        String compressedUrl = null;
+        ImageStore.StoredImage compressed = null;
+        if (!ranged && isCompressible(mediaType)) {
+            String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+            for (String candidate : new String[]{"br", "gzip"}) {
+                if (!CatalogBodies.acceptsEncoding(acceptEncoding, candidate)) {
+                    continue;
+                }
+                compressedUrl = url + (candidate.equals("br") ? ".br" : ".gz");
+                compressed = imageStorageService.find(compressedUrl);
+                if (compressed != null) {
+                    encoding = candidate;
+                    // Сжатая копия - другое представление со своим строгим ETag
+                    etag = etag.substring(0, etag.length() - 1) + "-" + encoding + "\"";
+                    break;
+                }
+            }
+        }
+
+        // If-None-Match / If-Modified-Since -> 304 без тела
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
+        }
+        response.setContentType(mediaType.toString());
+        if (ranged) {
+            serveRange(url, image, range, request, response);
+        } else if (compressed != null) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+            send(compressedUrl, compressed, 0, compressed.size(), request, response);
+        } else {
+            send(url, image, 0, image.size(), request, response);
+        }
+    }
+
+    // ============ ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ============
+
+    // Поддерживается один диапазон; несколько диапазонов (multipart/byteranges) - отдаём файл целиком
+    private void serveRange(String url, ImageStore.StoredImage image, String range, HttpServletRequest request,
+                            HttpServletResponse response) throws IOException {
+        long size = image.size();
+        Matcher matcher = RANGE.matcher(range.trim());
+        if (!matcher.matches()) {
+            send(url, image, 0, size, request, response);
+            return;
+        }
+        String from = matcher.group(1);
+        String to = matcher.group(2);
+        long start;
+        long end;  // включительно
+        if (from.isEmpty()) {
+            if (to.isEmpty()) {
+                send(url, image, 0, size, request, response);
+                return;
+            }
+            // bytes=-500: последние 500 байт
+            long suffix = Long.parseLong(to);
+            start = suffix == 0 ? size : Math.max(0, size - suffix);
+            end = size - 1;
+        } else {
+            start = Long.parseLong(from);
+            end = to.isEmpty() ? size - 1 : Math.min(Long.parseLong(to), size - 1);
+        }
+        if (start >= size || start > end) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+            response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+            return;
+        }
+        response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+        send(url, image, start, end + 1, request, response);
+    }
+
+    /**
+     * Отдаёт байты [start, end) файла. Локальный файл - через sendfile, если контейнер его поддерживает,
+     * иначе через transferTo; файл из удалённого хранилища копируется потоком.
+     */
+    private void send(String url, ImageStore.StoredImage image, long start, long end, HttpServletRequest request,
+                      HttpServletResponse response) throws IOException {
+        response.setContentLengthLong(end - start);
+        if ("HEAD".equals(request.getMethod()) || end <= start) {
+            return;
+        }
+        Path file = image.localFile();
+        if (file == null) {
+            try (InputStream in = imageStorageService.open(url, start, end)) {
+                in.transferTo(response.getOutputStream());
+            }
+            return;
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position < end) {
+                position += channel.transferTo(position, end - position, out);
+            }
+        }
+    }
+
+    // Текст, SVG, JSON и т.п. (растровые картинки и так сжаты)
+    private static boolean isCompressible(MediaType mediaType) {
+        return !"image".equals(mediaType.getType()) || mediaType.getSubtype().contains("svg");
+    }
+}
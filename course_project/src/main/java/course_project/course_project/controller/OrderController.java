@@ -6,13 +6,21 @@ import course_project.course_project.model.OrderStatus;
 import course_project.course_project.model.User;
 import course_project.course_project.repository.OrderRepository;
 import course_project.course_project.repository.UserRepository;
+import course_project.course_project.service.KeysetQueryService;
+import course_project.course_project.service.OrderEventService;
+import course_project.course_project.service.OrderArchiveService;
+import course_project.course_project.service.OrderMapper;
+import course_project.course_project.service.SalesAnalyticsService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.util.ArrayList;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 
 @RestController
@@ -25,50 +33,74 @@ public class OrderController {
     @Autowired
     private UserRepository userRepository;
 
-    // Получить все заказы текущего пользователя
-    @GetMapping
-    public ResponseEntity<List<OrderDTO>> getUserOrders() {
-        User user = getCurrentUser();
-        List<Order> orders = orderRepository.findByUserId(user.getId());
+    @Autowired
+    private KeysetQueryService keysetQueryService;
+
+    @Autowired
+    private OrderEventService orderEventService;
+
+    @Autowired
+    private OrderMapper orderMapper;
 
-        List<OrderDTO> orderDTOs = new ArrayList<>();
-        orders.forEach(order -> orderDTOs.add(convertToDTO(order)));
+    @Autowired
+    private SalesAnalyticsService salesAnalyticsService;
 
-        return ResponseEntity.ok(orderDTOs);
+    @Autowired
+    private OrderArchiveService orderArchiveService;
+
+    // Получить заказы текущего пользователя (постранично, новые сверху)
+    // Курсор следующей страницы возвращается в заголовке X-Next-Cursor
+    @GetMapping
+    public ResponseEntity<List<OrderDTO>> getUserOrders(@RequestParam(required = false) String sort,
+                                                        @RequestParam(required = false) String cursor,
+                                                        @RequestParam(required = false) Integer limit) {
+        return findOrders(null, sort, cursor, limit);
+    }
+
+    /**
+     * Изменения заказов пользователя (Server-Sent Events, событие order с OrderDTO) вместо опроса.
+     * При переподключении EventSource присылает Last-Event-ID - пропущенные события придут повторно
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamOrders(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        User user = getCurrentUser();
+        return orderEventService.subscribe(user.getId(), lastEventId);
     }
 
     // Получить конкретный заказ пользователя
     @GetMapping("/{orderId}")
     public ResponseEntity<OrderDTO> getOrderById(@PathVariable Long orderId) {
         User user = getCurrentUser();
-        Order order = orderRepository.findById(orderId)
-                .orElseThrow(() -> new IllegalArgumentException("Заказ не найден"));
+        // Старые выполненные и отменённые заказы перенесены в архив
+        OrderDTO order = orderRepository.findWithItemsById(orderId)
+                .map(orderMapper::toDTO)
+                .orElseGet(() -> orderArchiveService.findOrder(orderId));
+        if (order == null) {
+            throw new IllegalArgumentException("Заказ не найден");
+        }
 
         // Проверяем, что заказ принадлежит текущему пользователю
-        if (!order.getUser().getId().equals(user.getId())) {
+        if (!order.getUserId().equals(user.getId())) {
             return ResponseEntity.status(403).build(); // Forbidden
         }
 
-        return ResponseEntity.ok(convertToDTO(order));
+        return ResponseEntity.ok(order);
     }
 
     // Получить заказы с определённым статусом
     @GetMapping("/status/{status}")
-    public ResponseEntity<List<OrderDTO>> getOrdersByStatus(@PathVariable OrderStatus status) {
-        User user = getCurrentUser();
-        List<Order> orders = orderRepository.findByUserIdAndStatus(user.getId(), status);
-
-        List<OrderDTO> orderDTOs = new ArrayList<>();
-        orders.forEach(order -> orderDTOs.add(convertToDTO(order)));
-
-        return ResponseEntity.ok(orderDTOs);
+    public ResponseEntity<List<OrderDTO>> getOrdersByStatus(@PathVariable OrderStatus status,
+                                                            @RequestParam(required = false) String sort,
+                                                            @RequestParam(required = false) String cursor,
+                                                            @RequestParam(required = false) Integer limit) {
+        return findOrders(status, sort, cursor, limit);
     }
 
     // Отменить заказ (если он ещё в статусе PENDING)
     @PutMapping("/{orderId}/cancel")
     public ResponseEntity<OrderDTO> cancelOrder(@PathVariable Long orderId) {
         User user = getCurrentUser();
-        Order order = orderRepository.findById(orderId)
+        Order order = orderRepository.findWithItemsById(orderId)
                 .orElseThrow(() -> new IllegalArgumentException("Заказ не найден"));
 
         // Проверяем, что заказ принадлежит текущему пользователю
@@ -81,25 +113,35 @@ public class OrderController {
             return ResponseEntity.badRequest().build();
         }
 
+        // Статус мог смениться после чтения (администратор, повторный запрос) - отменяет только первый
+        if (orderRepository.updateStatus(orderId, OrderStatus.PENDING, OrderStatus.CANCELLED, LocalDateTime.now()) == 0) {
+            return ResponseEntity.status(409).build();
+        }
         order.setStatus(OrderStatus.CANCELLED);
-        orderRepository.save(order);
+        salesAnalyticsService.statusChanged(order, OrderStatus.PENDING);
 
-        return ResponseEntity.ok(convertToDTO(order));
+        OrderDTO orderDTO = orderMapper.toDTO(order);
+        orderEventService.publish(orderDTO);
+        return ResponseEntity.ok(orderDTO);
     }
 
     // Получить историю заказов
+    // Сортировка (новые сверху) выполняется в БД по индексу orders(user_id, order_time, id)
     @GetMapping("/history")
-    public ResponseEntity<List<OrderDTO>> getOrderHistory() {
-        User user = getCurrentUser();
-        List<Order> orders = orderRepository.findByUserId(user.getId());
-
-        // Сортируем по времени заказа в обратном порядке (новые сверху)
-        orders.sort((o1, o2) -> o2.getOrderTime().compareTo(o1.getOrderTime()));
-
-        List<OrderDTO> orderDTOs = new ArrayList<>();
-        orders.forEach(order -> orderDTOs.add(convertToDTO(order)));
+    public ResponseEntity<List<OrderDTO>> getOrderHistory(@RequestParam(required = false) String cursor,
+                                                          @RequestParam(required = false) Integer limit) {
+        return findOrders(null, KeysetQueryService.NEWEST, cursor, limit);
+    }
 
-        return ResponseEntity.ok(orderDTOs);
+    // Страница заказов текущего пользователя
+    private ResponseEntity<List<OrderDTO>> findOrders(OrderStatus status, String sort, String cursor, Integer limit) {
+        User user = getCurrentUser();
+        try {
+            return keysetQueryService.findOrders(user.getId(), status, sort, cursor, limit)
+                    .toResponse();
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     // Вспомогательный метод для получения текущего пользователя
@@ -109,27 +151,4 @@ public class OrderController {
         return userRepository.findByName(username)
                 .orElseThrow(() -> new IllegalArgumentException("Пользователь не найден"));
     }
-
-    // Конвертация Order в OrderDTO
-    private OrderDTO convertToDTO(Order order) {
-        var orderItemDTOs = order.getOrderItems().stream()
-                .map(orderItem -> new course_project.course_project.dto.OrderItemDTO(
-                        orderItem.getId(),
-                        orderItem.getDish().getId(),
-                        orderItem.getDish().getName(),
-                        orderItem.getQuantity(),
-                        orderItem.getPriceAtOrder(),
-                        orderItem.getPriceAtOrder().multiply(new java.math.BigDecimal(orderItem.getQuantity()))
-                ))
-                .toList();
-
-        return new OrderDTO(
-                order.getId(),
-                order.getUser().getId(),
-                orderItemDTOs,
-                order.getOrderTime(),
-                order.getStatus(),
-                order.getTotal()
-        );
-    }
 }
@@ -34,4 +34,9 @@ public class DishDTO {
     private Long restaurantId;
     private String restaurantName;
 
+    //уменьшенные копии картинки (null, пока не готовы)
+    private String thumbnailUrl;
+    private String previewUrl;
+    private String placeholder;
+
 }
@@ -13,8 +13,9 @@ import java.math.BigDecimal;
 @NoArgsConstructor
 public class OrderItemDTO {
     private Long id;
-    private Long dishId;
+    private Long dishId;  // null, если блюдо удалено из каталога
     private String dishName;
+    private String dishUrl;
     private int quantity;
     private BigDecimal priceAtOrder;
     private BigDecimal itemTotal;  // quantity * priceAtOrder
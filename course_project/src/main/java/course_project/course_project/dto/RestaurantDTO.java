@@ -16,4 +16,19 @@ public class RestaurantDTO {
     private String phone;
     private String description;
     private String url;
+
+    //уменьшенные копии картинки (null, пока не готовы)
+    private String thumbnailUrl;
+    private String previewUrl;
+    private String placeholder;
+
+    //конструктор без вариантов картинки
+    public RestaurantDTO(Long id, String name, String address, String phone, String description, String url) {
+        this.id = id;
+        this.name = name;
+        this.address = address;
+        this.phone = phone;
+        this.description = description;
+        this.url = url;
+    }
 }
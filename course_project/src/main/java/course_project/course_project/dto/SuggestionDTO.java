@@ -0,0 +1,17 @@
+package course_project.course_project.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class SuggestionDTO {
+    private String type;  // RESTAURANT или DISH
+    private Long id;
+    private String name;
+    private Long restaurantId;  // для блюд - ресторан, для ресторанов - он сам
+}
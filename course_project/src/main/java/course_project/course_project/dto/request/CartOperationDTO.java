@@ -0,0 +1,27 @@
+package course_project.course_project.dto.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Одна операция PATCH /cart:
+ * add - добавить quantity блюда dishId;
+ * remove - убрать quantity из позиции (cartItemId или dishId);
+ * set - установить количество позиции (cartItemId или dishId), 0 - удалить; блюда dishId может не быть в корзине
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class CartOperationDTO {
+    public static final String ADD = "add";
+    public static final String REMOVE = "remove";
+    public static final String SET = "set";
+
+    private String op;
+    private Long dishId;
+    private Long cartItemId;
+    private int quantity;
+}
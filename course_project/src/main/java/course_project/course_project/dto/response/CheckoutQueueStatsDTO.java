@@ -0,0 +1,25 @@
+package course_project.course_project.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class CheckoutQueueStatsDTO {
+    private boolean enabled;
+    private int queueDepth;
+    private int queueCapacity;
+    private long accepted;
+    private long rejected;     // очередь была заполнена (503)
+    private long completed;
+    private long failed;
+    private long batches;
+    private int lastBatchSize;
+    private int maxBatchSize;
+    private double averageBatchSize;
+    private double averageBatchMillis;
+}
@@ -0,0 +1,21 @@
+package course_project.course_project.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Состояние асинхронного оформления заказа (GET /cart/checkout/{ticketId}):
+ * QUEUED - ждёт записи, COMPLETED - заказ orderId создан, FAILED - не оформлен (error)
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class CheckoutTicketDTO {
+    private String ticketId;
+    private String state;
+    private Long orderId;
+    private String error;
+}
@@ -0,0 +1,15 @@
+package course_project.course_project.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImportErrorDTO {
+    private long line;  // номер строки файла, с которой начинается запись
+    private String message;
+}
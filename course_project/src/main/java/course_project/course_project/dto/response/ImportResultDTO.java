@@ -0,0 +1,20 @@
+package course_project.course_project.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImportResultDTO {
+    private long restaurantsImported;
+    private long dishesImported;
+    private long failedRows;
+    private List<ImportErrorDTO> errors;
+    private boolean errorsTruncated;  // ошибок больше, чем вернули в ответе
+}
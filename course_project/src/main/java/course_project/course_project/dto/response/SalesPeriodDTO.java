@@ -0,0 +1,24 @@
+package course_project.course_project.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Продажи за час или день (GET /admin/stats). Отменённые заказы в orders, quantity и revenue не входят
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class SalesPeriodDTO {
+    private LocalDateTime periodStart;
+    private long orders;
+    private long quantity;
+    private BigDecimal revenue;
+    private long cancelled;
+}
@@ -0,0 +1,26 @@
+package course_project.course_project.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+/**
+ * Продажи ресторана или блюда за период (GET /admin/stats/restaurants, /admin/stats/dishes).
+ * name - null, если запись уже удалена из каталога
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class SalesTotalsDTO {
+    private Long id;
+    private String name;
+    private Long restaurantId;
+    private long orders;
+    private long quantity;
+    private BigDecimal revenue;
+    private long cancelled;
+}
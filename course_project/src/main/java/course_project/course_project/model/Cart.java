@@ -5,6 +5,7 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.OptimisticLock;
 
 import java.math.BigDecimal;
 import java.util.List;
@@ -24,9 +25,15 @@ public class Cart {
     @JoinColumn(name = "user_id", nullable = false, unique = true)
     private User user;
 
+    // Позиции версионируются сами: их добавление и удаление не меняет версию корзины
     @OneToMany(mappedBy = "cart", cascade = CascadeType.ALL, orphanRemoval = true)
+    @OptimisticLock(excluded = true)
     private List<CartItem> cartItems;
 
     @Column
     private BigDecimal total;
+
+    // Оптимистическая блокировка: одновременные изменения корзины не перетирают друг друга
+    @Version
+    private Long version;
 }
@@ -9,7 +9,7 @@ import lombok.Setter;
 import java.math.BigDecimal;
 
 @Entity
-@Table(name = "cart_items")
+@Table(name = "cart_items", uniqueConstraints = @UniqueConstraint(columnNames = {"cart_id", "dish_id"}))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -33,4 +33,6 @@ public class CartItem {
     @Column(nullable = false)
     private BigDecimal price;
 
+    @Version
+    private Long version;
 }
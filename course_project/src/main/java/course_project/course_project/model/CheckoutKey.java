@@ -0,0 +1,36 @@
+package course_project.course_project.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// Ключ идемпотентности оформления заказа: какой заказ создан по ключу (ключи у каждого пользователя свои)
+@Entity
+@Table(name = "checkout_keys",
+        uniqueConstraints = @UniqueConstraint(name = "uk_checkout_keys_user_key", columnNames = {"user_id", "idempotency_key"}))
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class CheckoutKey {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "idempotency_key", nullable = false, length = 100)
+    private String idempotencyKey;
+
+    @Column(name = "order_id", nullable = false)
+    private Long orderId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
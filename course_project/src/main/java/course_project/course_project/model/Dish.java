@@ -33,7 +33,7 @@ public class Dish {
     @Column(nullable = false)
     private int weight;
 
-    @Column(unique = true, nullable = false)
+    @Column(nullable = false)
     private String url;
 
 }
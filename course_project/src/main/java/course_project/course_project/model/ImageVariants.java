@@ -0,0 +1,31 @@
+package course_project.course_project.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// Уменьшенные копии загруженной картинки (одна запись на файл, его могут использовать несколько блюд)
+@Entity
+@Table(name = "image_variants")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImageVariants {
+
+    // url оригинала, например /uploads/9f86d08...e3.jpg
+    @Id
+    private String url;
+
+    @Column(name = "thumbnail_url", nullable = false)
+    private String thumbnailUrl;
+
+    @Column(name = "preview_url", nullable = false)
+    private String previewUrl;
+
+    // Крошечная размытая копия в виде data URI, показывается до загрузки картинки
+    @Column(nullable = false, length = 2048)
+    private String placeholder;
+}
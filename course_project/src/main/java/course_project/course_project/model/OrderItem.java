@@ -24,10 +24,18 @@ public class OrderItem {
     @JoinColumn(name = "order_id", nullable = false)
     private Order order;
 
+    // null, если блюдо удалено из каталога
     @ManyToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "dish_id", nullable = false)
+    @JoinColumn(name = "dish_id")
     private Dish dish;
 
+    // Снимок блюда на момент оформления - для показа заказа блюдо не загружается
+    @Column(name = "dish_name", nullable = false)
+    private String dishName;
+
+    @Column(name = "dish_url")
+    private String dishUrl;
+
     @Column
     private int quantity;
 
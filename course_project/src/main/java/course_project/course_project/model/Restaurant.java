@@ -23,7 +23,7 @@ public class Restaurant {
     @Column(unique = true, nullable = false)
     private String name;
 
-    @Column(unique = true, nullable = false)
+    @Column(nullable = false)
     private String url;
 
     @Column(nullable = false)
@@ -2,14 +2,42 @@ package course_project.course_project.repository;
 
 import course_project.course_project.model.CartItem;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.math.BigDecimal;
 
 public interface CartItemRepository extends JpaRepository<CartItem, Long> {
-    CartItem findByCartIdAndDishId(Long cartId, Long dishId);
-    void deleteAllByCartId(Long cartId);
+    // Позиция по id, только если она в этой корзине
+    @Query("SELECT item FROM CartItem item WHERE item.id = :id AND item.cart.id = :cartId")
+    CartItem findInCart(@Param("id") Long id, @Param("cartId") Long cartId);
+
+    // Цена позиции с блюдом в корзине (null - позиции нет). Цена фиксируется при первом добавлении
+    @Query("SELECT item.price FROM CartItem item WHERE item.cart.id = :cartId AND item.dish.id = :dishId")
+    BigDecimal findPrice(@Param("cartId") Long cartId, @Param("dishId") Long dishId);
+
+    // Атомарные изменения количества: UPDATE ... SET quantity = quantity +/- n, без чтения и записи всей позиции
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE CartItem item SET item.quantity = item.quantity + :quantity, item.version = item.version + 1 " +
+            "WHERE item.cart.id = :cartId AND item.dish.id = :dishId")
+    int incrementQuantity(@Param("cartId") Long cartId, @Param("dishId") Long dishId, @Param("quantity") int quantity);
+
+    // Не уменьшает до нуля и ниже: такая позиция удаляется через deleteVersion
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE CartItem item SET item.quantity = item.quantity - :quantity, item.version = item.version + 1 " +
+            "WHERE item.id = :id AND item.quantity > :quantity")
+    int decrementQuantity(@Param("id") Long id, @Param("quantity") int quantity);
+
+    // Удаление, только если позицию не меняли после чтения
+    @Modifying(clearAutomatically = true)
+    @Query("DELETE FROM CartItem item WHERE item.id = :id AND item.version = :version")
+    int deleteVersion(@Param("id") Long id, @Param("version") Long version);
+
+    // Один DELETE без загрузки позиций (производный deleteAllBy... удаляет по одной)
+    @Modifying
+    @Query("DELETE FROM CartItem item WHERE item.cart.id = :cartId")
+    int deleteAllByCartId(@Param("cartId") Long cartId);
 
     @Query("SELECT COALESCE(SUM(item.price * item.quantity), 0) FROM CartItem item WHERE item.cart.id = :cartId")
     BigDecimal calculateCartTotal(@Param("cartId") Long cartId);
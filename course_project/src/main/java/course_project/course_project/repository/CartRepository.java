@@ -12,8 +12,38 @@ import java.math.BigDecimal;
 public interface CartRepository extends JpaRepository<Cart, Long> {
     Cart findCartByUserId(Long id);
 
+    // Корзина вместе с позициями и блюдами - одним запросом
+    @Query("SELECT c FROM Cart c LEFT JOIN FETCH c.cartItems item LEFT JOIN FETCH item.dish WHERE c.user.id = :userId")
+    Cart findWithItemsByUserId(@Param("userId") Long userId);
+
+    @Query("SELECT c.id FROM Cart c WHERE c.user.id = :userId")
+    Long findIdByUserId(@Param("userId") Long userId);
+
     @Modifying
     @Transactional
-    @Query("UPDATE Cart c SET c.total = :total WHERE c.id = :cartId")
+    @Query("UPDATE Cart c SET c.total = :total, c.version = c.version + 1 WHERE c.id = :cartId")
     void updateTotal(@Param("cartId") Long cartId, @Param("total") BigDecimal total);
+
+    // Обнуление итога, только если корзину не меняли после чтения (оформление заказа)
+    @Modifying
+    @Query("UPDATE Cart c SET c.total = 0, c.version = c.version + 1 WHERE c.id = :cartId AND c.version = :version")
+    int resetTotal(@Param("cartId") Long cartId, @Param("version") Long version);
+
+    // Атомарное изменение итога на разницу - без чтения корзины
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Cart c SET c.total = COALESCE(c.total, 0) + :delta, c.version = c.version + 1 WHERE c.id = :cartId")
+    int addToTotal(@Param("cartId") Long cartId, @Param("delta") BigDecimal delta);
+
+    // Позиции с блюдом удаляются каскадом в БД - итог корзин пересчитываем без них (до удаления блюда)
+    @Modifying
+    @Query("UPDATE Cart c SET c.version = c.version + 1, c.total = (SELECT COALESCE(SUM(item.price * item.quantity), 0) FROM CartItem item " +
+            "WHERE item.cart = c AND item.dish.id <> :dishId) " +
+            "WHERE c.id IN (SELECT item.cart.id FROM CartItem item WHERE item.dish.id = :dishId)")
+    int excludeDishFromTotals(@Param("dishId") Long dishId);
+
+    @Modifying
+    @Query("UPDATE Cart c SET c.version = c.version + 1, c.total = (SELECT COALESCE(SUM(item.price * item.quantity), 0) FROM CartItem item " +
+            "WHERE item.cart = c AND item.dish.restaurant.id <> :restaurantId) " +
+            "WHERE c.id IN (SELECT item.cart.id FROM CartItem item WHERE item.dish.restaurant.id = :restaurantId)")
+    int excludeRestaurantFromTotals(@Param("restaurantId") Long restaurantId);
 }
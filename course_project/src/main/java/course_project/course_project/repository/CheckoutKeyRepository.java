@@ -0,0 +1,20 @@
+package course_project.course_project.repository;
+
+import course_project.course_project.model.CheckoutKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface CheckoutKeyRepository extends JpaRepository<CheckoutKey, Long> {
+    Optional<CheckoutKey> findByUserIdAndIdempotencyKey(Long userId, String idempotencyKey);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM CheckoutKey checkoutKey WHERE checkoutKey.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") LocalDateTime before);
+}
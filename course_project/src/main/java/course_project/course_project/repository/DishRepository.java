@@ -1,5 +1,6 @@
 package course_project.course_project.repository;
 
+import course_project.course_project.dto.DishDTO;
 import course_project.course_project.model.Dish;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
@@ -8,20 +9,15 @@ import java.util.List;
 
 public interface DishRepository extends JpaRepository<Dish, Long> {
 
-    //поиск блюда на главной странице
-    @Query( "SELECT d " +
-            "FROM Dish d " +
-            "WHERE d.name ILIKE %?1%")
-    List<Dish> search(String name);
-
-    //поиск блюда по названию в выбранном ресторане
-    @Query( "SELECT d " +
-            "FROM Dish d " +
-            "WHERE d.name ILIKE %?1% AND d.restaurant = ?2")
-    List<Dish> searchInRestaurant(String name, Long restaurantId);
-
-
-    Dish findByIdAndRestaurantId(Long Id, Long restaurantId);
-
-    List<Dish> findByRestaurantId(Long restaurantId);
+    //все блюда сразу в DTO вместе с рестораном и вариантами картинки (один запрос с join, без ленивых загрузок)
+    @Query( "SELECT new course_project.course_project.dto.DishDTO(" +
+            "d.id, d.name, d.description, d.url, d.price, d.weight, r.id, r.name, " +
+            "v.thumbnailUrl, v.previewUrl, v.placeholder) " +
+            "FROM Dish d JOIN d.restaurant r " +
+            "LEFT JOIN ImageVariants v ON v.url = d.url " +
+            "ORDER BY d.id")
+    List<DishDTO> findAllDTOs();
+
+    // сколько записей ссылаются на картинку (для удаления файла без ссылок)
+    long countByUrl(String url);
 }
@@ -0,0 +1,7 @@
+package course_project.course_project.repository;
+
+import course_project.course_project.model.ImageVariants;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface ImageVariantsRepository extends JpaRepository<ImageVariants, String> {
+}
@@ -4,4 +4,7 @@ import course_project.course_project.model.OrderItem;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
+
+    // Картинка ещё показывается в истории заказов (снимок блюда) - файл удалять нельзя
+    boolean existsByDishUrl(String dishUrl);
 }
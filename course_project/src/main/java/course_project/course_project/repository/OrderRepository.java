@@ -1,15 +1,33 @@
 package course_project.course_project.repository;
 
 import course_project.course_project.model.Order;
-import course_project.course_project.model.OrderStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import course_project.course_project.model.OrderStatus;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+
+public interface OrderRepository extends JpaRepository<Order, Long>, JpaSpecificationExecutor<Order> {
 
-public interface OrderRepository extends JpaRepository<Order, Long> {
-    List<Order> findByUserIdAndStatus(Long id, OrderStatus status);
+    // Заказ с позициями одним запросом (название и картинка блюда хранятся в позиции)
+    @Query("SELECT o FROM Order o LEFT JOIN FETCH o.orderItems WHERE o.id = :id")
+    Optional<Order> findWithItemsById(@Param("id") Long id);
 
-    List<Order> findByUserId(Long id);
+    // Позиции для списка заказов одним запросом (страница заказов выбирается отдельно - с LIMIT)
+    @Query("SELECT o FROM Order o LEFT JOIN FETCH o.orderItems WHERE o.id IN :ids")
+    List<Order> findWithItemsByIdIn(@Param("ids") Collection<Long> ids);
 
-    List<Order> findByStatus(OrderStatus status);
+    // Смена статуса, только если он всё ещё previous: из параллельных смен проходит одна (0 - статус уже другой)
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Order o SET o.status = :next, o.updateTime = :now WHERE o.id = :id AND o.status = :previous")
+    int updateStatus(@Param("id") Long id, @Param("previous") OrderStatus previous,
+                     @Param("next") OrderStatus next, @Param("now") LocalDateTime now);
 }
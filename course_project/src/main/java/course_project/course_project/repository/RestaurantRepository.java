@@ -1,5 +1,6 @@
 package course_project.course_project.repository;
 
+import course_project.course_project.dto.RestaurantDTO;
 import course_project.course_project.model.Restaurant;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
@@ -8,9 +9,15 @@ import java.util.List;
 
 public interface RestaurantRepository extends JpaRepository<Restaurant, Long> {
 
-    //поиск ресторана по названию
-    @Query( "SELECT r " +
+    //все рестораны сразу в DTO вместе с вариантами картинки (один запрос, без загрузки сущностей)
+    @Query( "SELECT new course_project.course_project.dto.RestaurantDTO(" +
+            "r.id, r.name, r.address, r.phone, r.description, r.url, " +
+            "v.thumbnailUrl, v.previewUrl, v.placeholder) " +
             "FROM Restaurant r " +
-            "WHERE r.name ILIKE %?1%")
-    List<Restaurant> search(String name);
+            "LEFT JOIN ImageVariants v ON v.url = r.url " +
+            "ORDER BY r.id")
+    List<RestaurantDTO> findAllDTOs();
+
+    // сколько записей ссылаются на картинку (для удаления файла без ссылок)
+    long countByUrl(String url);
 }
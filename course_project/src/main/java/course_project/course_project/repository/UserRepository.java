@@ -2,11 +2,18 @@ package course_project.course_project.repository;
 
 import course_project.course_project.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Optional;
 
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, JpaSpecificationExecutor<User> {
     Optional<User> findByName(String username);
     boolean existsByName(String username);
     boolean existsByEmail(String email);
+
+    // Только id - без загрузки пользователя и его данных доставки
+    @Query("SELECT u.id FROM User u WHERE u.name = :username")
+    Optional<Long> findIdByName(@Param("username") String username);
 }
@@ -1,23 +1,36 @@
 package course_project.course_project.service;
 
+import course_project.course_project.dto.request.CartOperationDTO;
 import course_project.course_project.model.*;
 import course_project.course_project.repository.CartItemRepository;
 import course_project.course_project.repository.CartRepository;
-import course_project.course_project.repository.OrderItemRepository;
+import course_project.course_project.repository.DishRepository;
 import course_project.course_project.repository.OrderRepository;
 import jakarta.persistence.EntityManager;
-import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 public class CartService {
 
+    // Сколько операций можно прислать в одном PATCH /cart
+    private static final int MAX_OPERATIONS = 500;
+
+    private static final String INSERT_ORDER_ITEM =
+            "INSERT INTO order_items (order_id, dish_id, dish_name, dish_url, quantity, price_at_order) " +
+                    "VALUES (?, ?, ?, ?, ?, ?)";
+
     @Autowired
     private CartRepository cartRepository;
 
@@ -28,188 +41,206 @@ public class CartService {
     OrderRepository orderRepository;
 
     @Autowired
-    OrderItemRepository orderItemRepository;
+    private JdbcTemplate jdbcTemplate;
 
     @Autowired
     private EntityManager entityManager;
 
-    // Добавление блюда в корзину (или создание корзины)
-    @Transactional
-    public void addDishToCart(Dish dish, int quantity, User user) {
-        // Получаем или создаём корзину пользователя
-        Cart cart = cartRepository.findCartByUserId(user.getId());
-
-        if (cart == null) {
-            cart = new Cart();
-            cart.setUser(user);
-            cart = cartRepository.save(cart);
-        }
+    @Autowired
+    private DishRepository dishRepository;
 
-        // Проверяем наличие блюда в корзине
-        CartItem existingCartItem = cartItemRepository.findByCartIdAndDishId(cart.getId(), dish.getId());
+    @Autowired
+    private CartStore cartStore;
 
-        if (existingCartItem != null) {
-            // Увеличиваем количество если блюдо уже есть
-            existingCartItem.setQuantity(existingCartItem.getQuantity() + quantity);
-            cartItemRepository.save(existingCartItem);
-        } else {
-            // Добавляем новый элемент если блюда нет
-            CartItem newCartItem = new CartItem();
-            newCartItem.setCart(cart);
-            newCartItem.setDish(dish);
-            newCartItem.setQuantity(quantity);
-            newCartItem.setPrice(dish.getPrice());
-            cartItemRepository.save(newCartItem);
-        }
+    @Autowired
+    private CheckoutKeyService checkoutKeyService;
+
+    @Autowired
+    private SalesAnalyticsService salesAnalyticsService;
+
+    @Autowired
+    private DishPopularityService dishPopularityService;
 
-        calculateTotal(cart);
+    @Autowired
+    private ConflictRetry conflictRetry;
+
+    // Добавление блюда в корзину (или создание корзины)
+    public Cart addDishToCart(Dish dish, int quantity, User user) {
+        return cartStore.add(user, dish, quantity);
     }
 
-    // Удаление блюда из корзины
-    @Transactional
-    public void removeCartItem(User user, Long cartItemId, int quantity) {
-        CartItem cartItem = cartItemRepository.findById(cartItemId)
-                .orElseThrow(() -> new IllegalArgumentException("CartItem не найден"));
+    // Удаление блюда из корзины пользователя. Возвращает корзину после изменения
+    public Cart removeCartItem(User user, Long cartItemId, int quantity) {
+        return cartStore.remove(user, cartItemId, quantity);
+    }
 
-        Cart cart = cartItem.getCart();
+    /**
+     * Пакет операций PATCH /cart: блюда всех операций загружаются одним запросом (IN),
+     * затем хранилище применяет операции в одной транзакции целиком или не применяет ни одной
+     * (транзакция своя у хранилища - её можно повторить при конфликте)
+     */
+    public Cart applyOperations(User user, List<CartOperationDTO> operations) {
+        if (operations == null || operations.isEmpty() || operations.size() > MAX_OPERATIONS) {
+            throw new IllegalArgumentException("Ожидалось от 1 до " + MAX_OPERATIONS + " операций");
+        }
+        Set<Long> dishIds = new HashSet<>();
+        for (CartOperationDTO operation : operations) {
+            validate(operation);
+            if (operation.getDishId() != null && !CartOperationDTO.REMOVE.equals(operation.getOp())) {
+                dishIds.add(operation.getDishId());
+            }
+        }
 
-        if (cartItem.getQuantity() <= quantity) {
-            cartItemRepository.deleteById(cartItemId);
-            cart.getCartItems().remove(cartItem);
-        } else {
-            cartItem.setQuantity(cartItem.getQuantity() - quantity);
-            cartItemRepository.save(cartItem);
+        Map<Long, Dish> dishes = new HashMap<>();
+        dishRepository.findAllById(dishIds).forEach(dish -> dishes.put(dish.getId(), dish));
+        if (dishes.size() != dishIds.size()) {
+            throw new IllegalArgumentException("Блюдо не найдено");
         }
-        // Гарантируем, что изменения видны перед пересчётом
-        entityManager.flush();
-        // Пересчитываем с актуальными данными
-        calculateTotal(cart);
+        return cartStore.apply(user, operations, dishes);
     }
 
+    // Корзина пользователя или null, если её ещё нет (она создаётся при первом добавлении)
+    public Cart findCart(User user) {
+        return cartStore.find(user);
+    }
 
-    // Получение всей корзины пользователя
-    public Cart getCartByUser(User user) {
-        Cart cart = cartRepository.findCartByUserId(user.getId());
+    // Перед удалением блюда или ресторана: позиции с ними удалит каскад в БД, итоги корзин правим заранее
+    public void excludeDish(Long dishId) {
+        cartStore.excludeDish(dishId);
+    }
 
-        if (cart == null) {
-            cart = new Cart();
-            cart.setUser(user);
-            cart.setTotal(BigDecimal.ZERO);
-            cart = cartRepository.save(cart);
-        } else {
-            // Calculate total to ensure it's up to date
-            calculateTotal(cart);
-        }
+    public void excludeRestaurant(Long restaurantId) {
+        cartStore.excludeRestaurant(restaurantId);
+    }
 
-        return cart;
+    // После удаления пользователя: корзина в БД удалена каскадом, хранилище забывает её
+    public void excludeUser(Long userId) {
+        cartStore.excludeUser(userId);
     }
 
     // Очистка корзины
-    @Transactional
     public void removeAllCartItemsByUser(User user) {
-        Cart cart = cartRepository.findCartByUserId(user.getId());
+        cartStore.clear(user);
+    }
 
-        if (cart != null) {
-            cartItemRepository.deleteAllByCartId(cart.getId());
-            // После удаления, обновляем total
-            cart.setTotal(BigDecimal.ZERO);
-            cartRepository.save(cart);
-        }
+    /**
+     * Результат оформления. replayed - заказ уже был создан раньше по тому же ключу идемпотентности
+     */
+    public record CheckoutResult(Order order, boolean replayed) {
     }
 
-    // Преобразование в заказ
-    @Transactional
-    public Order checkoutCart(User user) {
-        // Получаем корзину пользователя
-        Cart cart = cartRepository.findCartByUserId(user.getId());
+    /**
+     * Преобразование в заказ. Хранилище корзин сначала синхронно записывает корзину в БД,
+     * само оформление - одна транзакция (повторяется, если корзину изменили во время оформления).
+     *
+     * С ключом идемпотентности повтор запроса возвращает уже созданный заказ, не трогая корзину.
+     * Если параллельный запрос с тем же ключом успел первым, этот откатывается и тоже получает его заказ.
+     */
+    public CheckoutResult checkoutCart(User user, String idempotencyKey) {
+        if (idempotencyKey != null) {
+            Order previous = findCheckout(user, idempotencyKey);
+            if (previous != null) {
+                return new CheckoutResult(previous, true);
+            }
+        }
 
-        if (cart == null || cart.getCartItems().isEmpty()) {
-            throw new IllegalArgumentException("Корзина пуста или не найдена");
+        try {
+            Order order = cartStore.checkout(user, () -> conflictRetry.inTransaction(() -> createOrder(user, idempotencyKey)));
+            return new CheckoutResult(order, false);
+        } catch (IllegalArgumentException | DataIntegrityViolationException e) {
+            // Корзина пуста или ключ занят - возможно, первый запрос с этим ключом уже оформил заказ
+            Order previous = idempotencyKey == null ? null : findCheckout(user, idempotencyKey);
+            if (previous == null) {
+                throw e;
+            }
+            return new CheckoutResult(previous, true);
         }
+    }
 
-        Long cartId = cart.getId();
-        BigDecimal orderTotal = cart.getTotal();
+    // Заказ, уже оформленный по этому ключу идемпотентности, или null
+    public Order findCheckout(User user, String idempotencyKey) {
+        Long orderId = checkoutKeyService.findOrderId(user.getId(), idempotencyKey);
+        return orderId == null ? null : orderRepository.findWithItemsById(orderId).orElse(null);
+    }
 
-        // ШАГ 1: КОПИРУЕМ данные из CartItems (только ID и значения)
-        List<OrderItemData> orderItemsData = new ArrayList<>();
-        for (CartItem cartItem : cart.getCartItems()) {
-            orderItemsData.add(new OrderItemData(
-                    cartItem.getDish().getId(),
-                    cartItem.getDish().getName(),
-                    cartItem.getQuantity(),
-                    cartItem.getPrice()
-            ));
+    /**
+     * Оформление внутри уже открытой транзакции - пакетная запись асинхронных заказов (CheckoutPipeline).
+     * Пустая корзина - IllegalArgumentException до любой записи, общая транзакция остаётся целой
+     */
+    Order checkoutInTransaction(User user, String idempotencyKey) {
+        return cartStore.checkout(user, () -> createOrder(user, idempotencyKey));
+    }
+
+    /**
+     * Запись заказа постоянным числом запросов независимо от размера корзины:
+     * корзина с позициями - один запрос, заказ - один INSERT, позиции заказа - один JDBC batch,
+     * очистка корзины - один DELETE и один UPDATE
+     */
+    private Order createOrder(User user, String idempotencyKey) {
+        // Получаем корзину пользователя вместе с позициями и блюдами
+        Cart cart = cartRepository.findWithItemsByUserId(user.getId());
+
+        if (cart == null || cart.getCartItems().isEmpty()) {
+            throw new IllegalArgumentException("Корзина пуста или не найдена");
         }
 
-        // ШАГ 2: Создаём новый Order
         Order order = new Order();
         order.setUser(user);
         order.setOrderTime(LocalDateTime.now());
-        order.setStatus(OrderStatus.valueOf("PENDING"));
-        order.setTotal(orderTotal);
-
-        // ШАГ 3: Сохраняем Order
+        order.setStatus(OrderStatus.PENDING);
+        order.setTotal(cart.getTotal());
+        // IDENTITY: INSERT выполняется сразу, id заказа нужен для позиций
         order = orderRepository.save(order);
-
-        // ШАГ 4: Флаш для синхронизации
-        entityManager.flush();
-
-        // ШАГ 5: Создаём OrderItems
-        for (OrderItemData itemData : orderItemsData) {
-            Dish dishReloaded = entityManager.find(Dish.class, itemData.dishId);
-
-            OrderItem orderItem = new OrderItem();
-            orderItem.setOrder(order);
-            orderItem.setDish(dishReloaded);
-            orderItem.setQuantity(itemData.quantity);
-            orderItem.setPriceAtOrder(itemData.price);
-
-            orderItemRepository.save(orderItem);
+        if (idempotencyKey != null) {
+            // Уникальный (user_id, idempotency_key): дубль упадёт здесь, до записи позиций
+            checkoutKeyService.save(user.getId(), idempotencyKey, order.getId());
         }
 
-        // ШАГ 6: Флаш перед удалением
-        entityManager.flush();
-
-        // ШАГ 7: ОЧИЩАЕМ CART ПЕРЕД УДАЛЕНИЕМ CARTITEMS
-        cart.getCartItems().clear();
-        cart.setTotal(BigDecimal.ZERO);
-        cartRepository.save(cart);
-
-        // ШАГ 8: Флаш перед удалением CartItems
-        entityManager.flush();
+        // Позиции заказа - одним batch (Hibernate не группирует INSERT при IDENTITY)
+        List<Object[]> rows = new ArrayList<>();
+        List<OrderItem> orderItems = new ArrayList<>();
+        for (CartItem cartItem : cart.getCartItems()) {
+            // Название и картинка копируются в заказ: история не зависит от дальнейших изменений каталога
+            Dish dish = cartItem.getDish();
+            rows.add(new Object[]{order.getId(), dish.getId(), dish.getName(), dish.getUrl(),
+                    cartItem.getQuantity(), cartItem.getPrice()});
+            orderItems.add(new OrderItem(null, order, dish, dish.getName(), dish.getUrl(),
+                    cartItem.getQuantity(), cartItem.getPrice()));
+        }
+        jdbcTemplate.batchUpdate(INSERT_ORDER_ITEM, rows);
 
-        // ШАГ 9: Теперь удаляем CartItems
-        cartItemRepository.deleteAllByCartId(cartId);
+        // Очищаем корзину без загрузки позиций. Версия корзины не та, что при чтении, - её меняли параллельно,
+        // заказ мог бы не включить новые позиции: откат и повтор
+        cartItemRepository.deleteAllByCartId(cart.getId());
+        if (cartRepository.resetTotal(cart.getId(), cart.getVersion()) == 0) {
+            throw new OptimisticLockingFailureException("Корзина изменена во время оформления");
+        }
 
+        // Позиции нужны только для ответа клиенту: заказ отсоединяем, чтобы Hibernate не вставил их второй раз
+        entityManager.detach(order);
+        order.setOrderItems(orderItems);
+        salesAnalyticsService.orderPlaced(order);
+        dishPopularityService.orderPlaced(order);
         return order;
     }
 
-    // Расчёт общей стоимости
-    public void calculateTotal(Cart cart) {
-        if (cart.getCartItems() != null && !cart.getCartItems().isEmpty()) {
-            cart.setTotal(
-                    cart.getCartItems().stream()
-                            .map(cartItem -> cartItem.getPrice().multiply(new BigDecimal(cartItem.getQuantity())))
-                            .reduce(BigDecimal.ZERO, BigDecimal::add)
-            );
+    private static void validate(CartOperationDTO operation) {
+        String op = operation.getOp();
+        boolean hasItem = operation.getCartItemId() != null || operation.getDishId() != null;
+        if (CartOperationDTO.ADD.equals(op)) {
+            if (operation.getDishId() == null || operation.getQuantity() <= 0) {
+                throw new IllegalArgumentException("add: нужны dishId и quantity > 0");
+            }
+        } else if (CartOperationDTO.REMOVE.equals(op)) {
+            if (!hasItem || operation.getQuantity() <= 0) {
+                throw new IllegalArgumentException("remove: нужны cartItemId или dishId и quantity > 0");
+            }
+        } else if (CartOperationDTO.SET.equals(op)) {
+            if (!hasItem || operation.getQuantity() < 0) {
+                throw new IllegalArgumentException("set: нужны cartItemId или dishId и quantity >= 0");
+            }
         } else {
-            cart.setTotal(BigDecimal.ZERO);
-        }
-        cartRepository.save(cart);
-    }
-
-    // Вспомогательный класс для хранения данных OrderItem
-    private static class OrderItemData {
-        Long dishId;
-        String dishName;
-        int quantity;
-        BigDecimal price;
-
-        OrderItemData(Long dishId, String dishName, int quantity, BigDecimal price) {
-            this.dishId = dishId;
-            this.dishName = dishName;
-            this.quantity = quantity;
-            this.price = price;
+            throw new IllegalArgumentException("Неизвестная операция: " + op);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,51 @@
+package course_project.course_project.service;
+
+import course_project.course_project.dto.request.CartOperationDTO;
+import course_project.course_project.model.Cart;
+import course_project.course_project.model.Dish;
+import course_project.course_project.model.User;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Где живут корзины между запросами.
+ * Реализация выбирается свойством cart.store.type: jpa (по умолчанию, каждая операция сразу в БД)
+ * или memory (корзины в памяти процесса, в БД пишутся пачками в фоне).
+ *
+ * Возвращаемая корзина нужна только для ответа клиенту - менять её нельзя.
+ */
+public interface CartStore {
+
+    // Добавление блюда (корзина создаётся при первом добавлении)
+    Cart add(User user, Dish dish, int quantity);
+
+    // Уменьшение количества или удаление позиции. IllegalArgumentException, если позиции нет в корзине пользователя
+    Cart remove(User user, Long cartItemId, int quantity);
+
+    /**
+     * Пакет операций над корзиной - всё или ничего. Операции уже проверены (CartService),
+     * dishes содержит блюда всех dishId из операций add и set
+     */
+    Cart apply(User user, List<CartOperationDTO> operations, Map<Long, Dish> dishes);
+
+    // Корзина пользователя или null, если её ещё нет
+    Cart find(User user);
+
+    void clear(User user);
+
+    /**
+     * Оформление заказа: корзина пользователя синхронно записывается в БД, затем выполняется checkout
+     * (он читает корзину из БД и очищает её). Пока идёт оформление, корзину никто не меняет.
+     */
+    <T> T checkout(User user, Supplier<T> checkout);
+
+    // Перед удалением блюда или ресторана (позиции с ними в БД удалит каскад)
+    void excludeDish(Long dishId);
+
+    void excludeRestaurant(Long restaurantId);
+
+    // Пользователь удалён (его корзину в БД удалил каскад)
+    void excludeUser(Long userId);
+}
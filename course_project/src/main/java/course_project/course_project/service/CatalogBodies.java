@@ -0,0 +1,95 @@
+package course_project.course_project.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Готовые к отправке тела ответов каталога: UTF-8 JSON и его gzip-вариант
+ * для списка ресторанов и для меню каждого ресторана.
+ * Собираются при подмене снимка; меню, которые правка не затронула, переиспользуются.
+ */
+public final class CatalogBodies {
+
+    /** Тело ответа в двух кодировках */
+    public record Body(byte[] json, byte[] gzip) {
+
+        public byte[] forEncoding(boolean gzipAccepted) {
+            return gzipAccepted ? gzip : json;
+        }
+    }
+
+    public static final CatalogBodies EMPTY = new CatalogBodies(null, Map.of());
+
+    private final Body restaurants;
+    private final Map<Long, Body> menus;
+
+    private CatalogBodies(Body restaurants, Map<Long, Body> menus) {
+        this.restaurants = restaurants;
+        this.menus = menus;
+    }
+
+    /**
+     * @param changedMenus рестораны, меню которых нужно пересобрать; null - пересобрать все
+     */
+    public static CatalogBodies build(CatalogSnapshot snapshot, CatalogBodies previous, Set<Long> changedMenus,
+                                      ObjectMapper objectMapper) {
+        Map<Long, Body> menus = new HashMap<>();
+        snapshot.getRestaurants().forEach(restaurant -> {
+            Long restaurantId = restaurant.getId();
+            Body body = changedMenus == null || changedMenus.contains(restaurantId)
+                    ? null
+                    : previous.menus.get(restaurantId);
+            menus.put(restaurantId, body != null ? body : serialize(snapshot.getDishes(restaurantId), objectMapper));
+        });
+        return new CatalogBodies(serialize(snapshot.getRestaurants(), objectMapper), Collections.unmodifiableMap(menus));
+    }
+
+    public Body getRestaurants() {
+        return restaurants;
+    }
+
+    public Body getMenu(Long restaurantId) {
+        return menus.get(restaurantId);
+    }
+
+    public static boolean acceptsGzip(String acceptEncoding) {
+        return acceptsEncoding(acceptEncoding, "gzip");
+    }
+
+    // Поддерживает ли клиент кодировку по заголовку Accept-Encoding (с учётом явного запрета "gzip;q=0")
+    public static boolean acceptsEncoding(String acceptEncoding, String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            if (tokens[0].trim().equalsIgnoreCase(encoding)) {
+                return tokens.length < 2 || !tokens[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    private static Body serialize(Object value, ObjectMapper objectMapper) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(value);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 4 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(json);
+            }
+            return new Body(json, compressed.toByteArray());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Ошибка сериализации каталога: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Ошибка сжатия каталога: " + e.getMessage(), e);
+        }
+    }
+}
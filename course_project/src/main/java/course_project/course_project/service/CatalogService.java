@@ -0,0 +1,385 @@
+package course_project.course_project.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import course_project.course_project.dto.DishDTO;
+import course_project.course_project.dto.RestaurantDTO;
+import course_project.course_project.dto.SuggestionDTO;
+import course_project.course_project.model.Dish;
+import course_project.course_project.model.ImageVariants;
+import course_project.course_project.model.Restaurant;
+import course_project.course_project.repository.DishRepository;
+import course_project.course_project.repository.RestaurantRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Каталог в памяти: чтение ресторанов и меню идёт из неизменяемого снимка без обращения к БД.
+ * Снимок атомарно подменяется после каждого изменения каталога в AdminController.
+ */
+@Service
+public class CatalogService {
+
+    @Autowired
+    private RestaurantRepository restaurantRepository;
+
+    @Autowired
+    private DishRepository dishRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private DishPopularityService dishPopularityService;
+
+    private static final String SUGGEST_RESTAURANT = "RESTAURANT";
+    private static final String SUGGEST_DISH = "DISH";
+
+    public static final String SORT_POPULAR = "popular";
+    public static final int MAX_POPULAR = 50;
+
+    // Отличает ETag разных запусков приложения: после рестарта версия начинается заново
+    private final String instanceId = Long.toString(System.currentTimeMillis(), 36);
+
+    private final AtomicReference<CatalogSnapshot> snapshot = new AtomicReference<>();
+
+    // Поисковые индексы по названию и описанию (вместо ILIKE '%...%')
+    private final NGramIndex restaurantIndex = new NGramIndex();
+    private final NGramIndex dishIndex = new NGramIndex();
+
+    // Заранее сериализованные и сжатые ответы для списка ресторанов и меню
+    private volatile CatalogBodies bodies = CatalogBodies.EMPTY;
+
+    // Префиксное дерево для автодополнения, пересобирается вместе со снимком
+    private volatile PrefixSuggester suggester = PrefixSuggester.build(List.of());
+
+    // Прогреваем каталог при старте, чтобы первый запрос не ходил в БД
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        reload();
+    }
+
+    // Текущий снимок каталога (загружается при первом обращении, если ещё не готов)
+    public CatalogSnapshot current() {
+        CatalogSnapshot current = snapshot.get();
+        return current != null ? current : reload();
+    }
+
+    // Строгий ETag текущей версии каталога (меняется при каждом изменении из админки)
+    public String etag() {
+        return "\"" + instanceId + "-" + current().getVersion() + "\"";
+    }
+
+    // Готовые тела ответов (актуальны для текущего снимка)
+    public CatalogBodies bodies() {
+        current();
+        return bodies;
+    }
+
+    public List<RestaurantDTO> getRestaurants() {
+        return current().getRestaurants();
+    }
+
+    public List<DishDTO> getDishes(Long restaurantId) {
+        return current().getDishes(restaurantId);
+    }
+
+    /**
+     * Страница ресторанов (keyset-пагинация по снимку каталога)
+     *
+     * @param sort id (по умолчанию) или name
+     */
+    public KeysetPage<RestaurantDTO> getRestaurants(String sort, String cursor, Integer limit) {
+        String order = sort == null ? "id" : sort;
+        CatalogSnapshot catalog = current();
+        SortSpec<RestaurantDTO> spec = switch (order) {
+            case "id" -> new SortSpec<>(catalog.getRestaurants(), CatalogSnapshot.RESTAURANTS_BY_ID, 1,
+                    restaurant -> new Object[]{restaurant.getId()},
+                    keys -> restaurantProbe(Long.valueOf(keys[0]), null));
+            case "name" -> new SortSpec<>(catalog.getRestaurantsByName(), CatalogSnapshot.RESTAURANTS_BY_NAME, 2,
+                    restaurant -> new Object[]{restaurant.getName(), restaurant.getId()},
+                    keys -> restaurantProbe(Long.valueOf(keys[1]), keys[0]));
+            default -> throw new IllegalArgumentException("Неизвестная сортировка: " + sort);
+        };
+        return page(order, spec, cursor, limit);
+    }
+
+    /**
+     * Страница меню ресторана
+     *
+     * @param sort id (по умолчанию), name, price или popular (по числу заказов за окно популярности)
+     */
+    public KeysetPage<DishDTO> getDishes(Long restaurantId, String sort, String cursor, Integer limit) {
+        String order = sort == null ? "id" : sort;
+        if (SORT_POPULAR.equals(order)) {
+            return getDishesByPopularity(restaurantId, cursor, limit);
+        }
+        CatalogSnapshot catalog = current();
+        SortSpec<DishDTO> spec = switch (order) {
+            case "id" -> new SortSpec<>(catalog.getDishes(restaurantId), CatalogSnapshot.DISHES_BY_ID, 1,
+                    dish -> new Object[]{dish.getId()},
+                    keys -> dishProbe(Long.valueOf(keys[0]), null, null));
+            case "name" -> new SortSpec<>(catalog.getDishesByName(restaurantId), CatalogSnapshot.DISHES_BY_NAME, 2,
+                    dish -> new Object[]{dish.getName(), dish.getId()},
+                    keys -> dishProbe(Long.valueOf(keys[1]), keys[0], null));
+            case "price" -> new SortSpec<>(catalog.getDishesByPrice(restaurantId), CatalogSnapshot.DISHES_BY_PRICE, 2,
+                    dish -> new Object[]{dish.getPrice(), dish.getId()},
+                    keys -> dishProbe(Long.valueOf(keys[1]), null, new BigDecimal(keys[0])));
+            default -> throw new IllegalArgumentException("Неизвестная сортировка: " + sort);
+        };
+        return page(order, spec, cursor, limit);
+    }
+
+    // Блюдо ищется только в меню указанного ресторана
+    public DishDTO getDish(Long restaurantId, Long dishId) {
+        DishDTO dish = current().getDish(dishId);
+        if (dish == null || !dish.getRestaurantId().equals(restaurantId)) {
+            return null;
+        }
+        return dish;
+    }
+
+    // Самые заказываемые блюда всех ресторанов (из рейтинга в памяти, без заказов в БД)
+    public List<DishDTO> getPopularDishes(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit должен быть больше нуля");
+        }
+        CatalogSnapshot catalog = current();
+        return dishPopularityService.ranking().dishIds().stream()
+                .map(catalog::getDish)
+                .filter(Objects::nonNull)
+                .limit(Math.min(limit, MAX_POPULAR))
+                .toList();
+    }
+
+    // Поиск ресторанов по названию и описанию, от более релевантных к менее
+    public List<RestaurantDTO> searchRestaurants(String query) {
+        CatalogSnapshot catalog = current();
+        return restaurantIndex.search(query, null).stream()
+                .map(catalog::getRestaurant)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    // Поиск блюд; restaurantId = null - по всем ресторанам
+    public List<DishDTO> searchDishes(String query, Long restaurantId) {
+        CatalogSnapshot catalog = current();
+        return dishIndex.search(query, restaurantId).stream()
+                .map(catalog::getDish)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    // Подсказки для строки поиска (с учётом опечаток), без обращения к БД
+    public List<SuggestionDTO> suggest(String query, int limit) {
+        int size = Math.min(limit, PrefixSuggester.MAX_SUGGESTIONS);
+        return suggester.suggest(query, size).stream()
+                .map(entry -> new SuggestionDTO(entry.type(), entry.id(), entry.name(), entry.restaurantId()))
+                .toList();
+    }
+
+    // Полная перезагрузка каталога из БД
+    public synchronized CatalogSnapshot reload() {
+        // Проекции сразу в DTO: два запроса на весь каталог, сущности не создаются
+        List<RestaurantDTO> restaurants = restaurantRepository.findAllDTOs();
+        List<DishDTO> dishes = dishRepository.findAllDTOs();
+
+        CatalogSnapshot previous = snapshot.get();
+        CatalogSnapshot loaded = CatalogSnapshot.of(nextVersion(previous), restaurants, dishes);
+        publish(loaded, null);
+        restaurantIndex.rebuild(loaded.getRestaurants().stream().map(CatalogService::toDoc).toList());
+        dishIndex.rebuild(loaded.getAllDishes().stream().map(CatalogService::toDoc).toList());
+        return loaded;
+    }
+
+    // ============ ИЗМЕНЕНИЯ ИЗ АДМИНКИ ============
+
+    public synchronized void restaurantSaved(Restaurant restaurant) {
+        CatalogSnapshot previous = current();
+        RestaurantDTO restaurantDTO = toDTO(restaurant, previous.getRestaurant(restaurant.getId()));
+        publish(previous.withRestaurant(nextVersion(previous), restaurantDTO), Set.of(restaurantDTO.getId()));
+        restaurantIndex.put(toDoc(restaurantDTO));
+    }
+
+    public synchronized void restaurantDeleted(Long restaurantId) {
+        CatalogSnapshot previous = current();
+        publish(previous.withoutRestaurant(nextVersion(previous), restaurantId), Set.of());
+        restaurantIndex.remove(restaurantId);
+        dishIndex.removeGroup(restaurantId);
+    }
+
+    public synchronized void dishSaved(Dish dish) {
+        CatalogSnapshot previous = current();
+        RestaurantDTO restaurant = previous.getRestaurant(dish.getRestaurant().getId());
+        DishDTO dishDTO = toDTO(dish, restaurant, previous.getDish(dish.getId()));
+        publish(previous.withDish(nextVersion(previous), dishDTO), Set.of(dishDTO.getRestaurantId()));
+        dishIndex.put(toDoc(dishDTO));
+    }
+
+    public synchronized void dishDeleted(Long dishId) {
+        CatalogSnapshot previous = current();
+        DishDTO removed = previous.getDish(dishId);
+        Set<Long> changedMenus = removed != null ? Set.of(removed.getRestaurantId()) : Set.of();
+        publish(previous.withoutDish(nextVersion(previous), dishId), changedMenus);
+        dishIndex.remove(dishId);
+    }
+
+    // Готовы уменьшенные копии картинки - проставляем их всем записям с этим url
+    public synchronized void imageVariantsReady(ImageVariants variants) {
+        CatalogSnapshot previous = current();
+        Set<Long> changedMenus = new HashSet<>();
+        CatalogSnapshot next = previous.withImageVariants(nextVersion(previous), variants.getUrl(),
+                variants.getThumbnailUrl(), variants.getPreviewUrl(), variants.getPlaceholder(), changedMenus);
+        publish(next, changedMenus);
+    }
+
+    // ============ ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ============
+
+    // Порядок сортировки: уже отсортированный по нему список, компаратор, ключи для курсора
+    // и "образец" записи, восстановленный из курсора
+    private record SortSpec<T>(List<T> sorted, Comparator<T> order, int keyCount, Function<T, Object[]> keys,
+                               Function<String[], T> probe) {
+    }
+
+    // Блюдо со счётом популярности
+    private record ScoredDish(DishDTO dish, long score) {
+    }
+
+    private static final Comparator<ScoredDish> BY_POPULARITY = Comparator.comparingLong(ScoredDish::score).reversed()
+            .thenComparing(scored -> scored.dish().getId());
+
+    // Меню по популярности для версии снимка и рейтинга: сортируются при первом запросе после смены любой из них
+    private record PopularMenus(long catalogVersion, long rankingVersion, Map<Long, List<ScoredDish>> menus) {
+    }
+
+    private volatile PopularMenus popularMenus = new PopularMenus(0, 0, new ConcurrentHashMap<>());
+
+    // В курсоре - версия рейтинга: после пересчёта порядок другой, и продолжение выдачи повторило бы
+    // или пропустило блюда. Такой курсор отклоняется (400) - клиент начинает выдачу заново
+    private KeysetPage<DishDTO> getDishesByPopularity(Long restaurantId, String cursor, Integer limit) {
+        DishPopularityService.Ranking ranking = dishPopularityService.ranking();
+        CatalogSnapshot catalog = current();
+        PopularMenus cached = popularMenus;
+        if (cached.catalogVersion() != catalog.getVersion() || cached.rankingVersion() != ranking.version()) {
+            cached = new PopularMenus(catalog.getVersion(), ranking.version(), new ConcurrentHashMap<>());
+            popularMenus = cached;
+        }
+        List<ScoredDish> dishes = cached.menus().computeIfAbsent(restaurantId, id -> catalog.getDishes(id).stream()
+                .map(dish -> new ScoredDish(dish, ranking.score(dish.getId())))
+                .sorted(BY_POPULARITY)
+                .toList());
+        SortSpec<ScoredDish> spec = new SortSpec<>(dishes, BY_POPULARITY, 3,
+                scored -> new Object[]{ranking.version(), scored.score(), scored.dish().getId()},
+                keys -> {
+                    if (!keys[0].equals(String.valueOf(ranking.version()))) {
+                        throw new IllegalArgumentException("Рейтинг пересчитан, начните выдачу заново");
+                    }
+                    return new ScoredDish(dishProbe(Long.valueOf(keys[2]), null, null), Long.parseLong(keys[1]));
+                });
+        return page(SORT_POPULAR, spec, cursor, limit).map(ScoredDish::dish);
+    }
+
+    // Keyset-пагинация по заранее отсортированному списку: позиция курсора ищется бинарным поиском
+    private static <T> KeysetPage<T> page(String sort, SortSpec<T> spec, String cursor, Integer limit) {
+        int size = KeysetPage.limit(limit);
+        List<T> sorted = spec.sorted();
+
+        int from = 0;
+        if (cursor != null) {
+            T probe = spec.probe().apply(KeysetCursor.decode(cursor, sort, spec.keyCount()));
+            int position = Collections.binarySearch(sorted, probe, spec.order());
+            from = position >= 0 ? position + 1 : -position - 1;
+        }
+        List<T> rows = sorted.subList(from, Math.min(sorted.size(), from + size + 1));
+        return KeysetPage.of(rows, size, item -> KeysetCursor.encode(sort, spec.keys().apply(item)));
+    }
+
+    private static RestaurantDTO restaurantProbe(Long id, String name) {
+        RestaurantDTO probe = new RestaurantDTO();
+        probe.setId(id);
+        probe.setName(name);
+        return probe;
+    }
+
+    private static DishDTO dishProbe(Long id, String name, BigDecimal price) {
+        DishDTO probe = new DishDTO();
+        probe.setId(id);
+        probe.setName(name);
+        probe.setPrice(price);
+        return probe;
+    }
+
+    // Подмена снимка и пересборка зависящих от него подсказок и готовых тел ответов
+    // changedMenus - рестораны, чьё меню изменилось (null - все)
+    private void publish(CatalogSnapshot next, Set<Long> changedMenus) {
+        CatalogBodies nextBodies = CatalogBodies.build(next, bodies, changedMenus, objectMapper);
+        snapshot.set(next);
+        bodies = nextBodies;
+        List<PrefixSuggester.Entry> entries = new ArrayList<>();
+        next.getRestaurants().forEach(restaurant -> entries.add(new PrefixSuggester.Entry(
+                SUGGEST_RESTAURANT, restaurant.getId(), restaurant.getName(), restaurant.getId(), 1)));
+        next.getAllDishes().forEach(dish -> entries.add(new PrefixSuggester.Entry(
+                SUGGEST_DISH, dish.getId(), dish.getName(), dish.getRestaurantId(), 0)));
+        suggester = PrefixSuggester.build(entries);
+    }
+
+    private static long nextVersion(CatalogSnapshot previous) {
+        return previous == null ? 1 : previous.getVersion() + 1;
+    }
+
+    private static NGramIndex.Doc toDoc(RestaurantDTO restaurant) {
+        return new NGramIndex.Doc(restaurant.getId(), null, restaurant.getName(), restaurant.getDescription());
+    }
+
+    private static NGramIndex.Doc toDoc(DishDTO dish) {
+        return new NGramIndex.Doc(dish.getId(), dish.getRestaurantId(), dish.getName(), dish.getDescription());
+    }
+
+    // Варианты картинки переносим из прежней версии записи, если картинка не менялась
+    private RestaurantDTO toDTO(Restaurant restaurant, RestaurantDTO previous) {
+        boolean sameImage = previous != null && Objects.equals(previous.getUrl(), restaurant.getUrl());
+        return new RestaurantDTO(
+                restaurant.getId(),
+                restaurant.getName(),
+                restaurant.getAddress(),
+                restaurant.getPhone(),
+                restaurant.getDescription(),
+                restaurant.getUrl(),
+                sameImage ? previous.getThumbnailUrl() : null,
+                sameImage ? previous.getPreviewUrl() : null,
+                sameImage ? previous.getPlaceholder() : null
+        );
+    }
+
+    // Название ресторана берём из уже загруженного DTO, чтобы не инициализировать ленивую связь
+    private DishDTO toDTO(Dish dish, RestaurantDTO restaurant, DishDTO previous) {
+        boolean sameImage = previous != null && Objects.equals(previous.getUrl(), dish.getUrl());
+        return new DishDTO(
+                dish.getId(),
+                dish.getName(),
+                dish.getDescription(),
+                dish.getUrl(),
+                dish.getPrice(),
+                dish.getWeight(),
+                dish.getRestaurant().getId(),
+                restaurant != null ? restaurant.getName() : dish.getRestaurant().getName(),
+                sameImage ? previous.getThumbnailUrl() : null,
+                sameImage ? previous.getPreviewUrl() : null,
+                sameImage ? previous.getPlaceholder() : null
+        );
+    }
+}
@@ -0,0 +1,214 @@
+package course_project.course_project.service;
+
+import course_project.course_project.dto.DishDTO;
+import course_project.course_project.dto.RestaurantDTO;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Неизменяемый снимок каталога (рестораны + меню).
+ * Каждое изменение в админке создаёт новый снимок, старый при этом не трогается,
+ * поэтому читатели работают без блокировок.
+ */
+public final class CatalogSnapshot {
+
+    // Порядки постраничной выдачи: списки снимка отсортированы по ним заранее, при сборке снимка
+    public static final Comparator<RestaurantDTO> RESTAURANTS_BY_ID = Comparator.comparing(RestaurantDTO::getId);
+    public static final Comparator<RestaurantDTO> RESTAURANTS_BY_NAME = Comparator.comparing(RestaurantDTO::getName)
+            .thenComparing(RestaurantDTO::getId);
+    public static final Comparator<DishDTO> DISHES_BY_ID = Comparator.comparing(DishDTO::getId);
+    public static final Comparator<DishDTO> DISHES_BY_NAME = Comparator.comparing(DishDTO::getName)
+            .thenComparing(DishDTO::getId);
+    public static final Comparator<DishDTO> DISHES_BY_PRICE = Comparator.comparing(DishDTO::getPrice)
+            .thenComparing(DishDTO::getId);
+
+    private final long version;
+    private final Map<Long, RestaurantDTO> restaurantsById;
+    private final Map<Long, DishDTO> dishesById;
+    private final List<RestaurantDTO> restaurants;
+    private final List<RestaurantDTO> restaurantsByName;
+    private final Map<Long, List<DishDTO>> dishesByRestaurant;
+    private final Map<Long, List<DishDTO>> menusByName;
+    private final Map<Long, List<DishDTO>> menusByPrice;
+
+    private CatalogSnapshot(long version, Map<Long, RestaurantDTO> restaurantsById, Map<Long, DishDTO> dishesById) {
+        this.version = version;
+        this.restaurantsById = Collections.unmodifiableMap(restaurantsById);
+        this.dishesById = Collections.unmodifiableMap(dishesById);
+
+        this.restaurants = sorted(restaurantsById.values(), RESTAURANTS_BY_ID);
+        this.restaurantsByName = sorted(restaurantsById.values(), RESTAURANTS_BY_NAME);
+
+        Map<Long, List<DishDTO>> grouped = new HashMap<>();
+        for (DishDTO dish : dishesById.values()) {
+            grouped.computeIfAbsent(dish.getRestaurantId(), id -> new ArrayList<>()).add(dish);
+        }
+        Map<Long, List<DishDTO>> menus = new HashMap<>();
+        Map<Long, List<DishDTO>> byName = new HashMap<>();
+        Map<Long, List<DishDTO>> byPrice = new HashMap<>();
+        grouped.forEach((restaurantId, dishes) -> {
+            menus.put(restaurantId, sorted(dishes, DISHES_BY_ID));
+            byName.put(restaurantId, sorted(dishes, DISHES_BY_NAME));
+            byPrice.put(restaurantId, sorted(dishes, DISHES_BY_PRICE));
+        });
+        this.dishesByRestaurant = Collections.unmodifiableMap(menus);
+        this.menusByName = Collections.unmodifiableMap(byName);
+        this.menusByPrice = Collections.unmodifiableMap(byPrice);
+    }
+
+    private static <T> List<T> sorted(Collection<T> items, Comparator<T> order) {
+        List<T> list = new ArrayList<>(items);
+        list.sort(order);
+        return Collections.unmodifiableList(list);
+    }
+
+    public static CatalogSnapshot of(long version, Collection<RestaurantDTO> restaurants, Collection<DishDTO> dishes) {
+        Map<Long, RestaurantDTO> restaurantsById = new LinkedHashMap<>();
+        restaurants.forEach(restaurant -> restaurantsById.put(restaurant.getId(), restaurant));
+        Map<Long, DishDTO> dishesById = new HashMap<>();
+        dishes.forEach(dish -> dishesById.put(dish.getId(), dish));
+        return new CatalogSnapshot(version, restaurantsById, dishesById);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<RestaurantDTO> getRestaurants() {
+        return restaurants;
+    }
+
+    // Рестораны по названию (RESTAURANTS_BY_NAME)
+    public List<RestaurantDTO> getRestaurantsByName() {
+        return restaurantsByName;
+    }
+
+    public RestaurantDTO getRestaurant(Long restaurantId) {
+        return restaurantsById.get(restaurantId);
+    }
+
+    public List<DishDTO> getDishes(Long restaurantId) {
+        return dishesByRestaurant.getOrDefault(restaurantId, Collections.emptyList());
+    }
+
+    // Меню ресторана по названию (DISHES_BY_NAME)
+    public List<DishDTO> getDishesByName(Long restaurantId) {
+        return menusByName.getOrDefault(restaurantId, Collections.emptyList());
+    }
+
+    // Меню ресторана по цене (DISHES_BY_PRICE)
+    public List<DishDTO> getDishesByPrice(Long restaurantId) {
+        return menusByPrice.getOrDefault(restaurantId, Collections.emptyList());
+    }
+
+    public Collection<DishDTO> getAllDishes() {
+        return dishesById.values();
+    }
+
+    public DishDTO getDish(Long dishId) {
+        return dishesById.get(dishId);
+    }
+
+    // Новый снимок с добавленным/изменённым рестораном.
+    // Название ресторана продублировано в блюдах, поэтому обновляем и их.
+    CatalogSnapshot withRestaurant(long newVersion, RestaurantDTO restaurant) {
+        Map<Long, RestaurantDTO> restaurantsCopy = new LinkedHashMap<>(restaurantsById);
+        restaurantsCopy.put(restaurant.getId(), restaurant);
+
+        Map<Long, DishDTO> dishesCopy = new HashMap<>(dishesById);
+        for (DishDTO dish : getDishes(restaurant.getId())) {
+            DishDTO renamed = copyDish(dish);
+            renamed.setRestaurantName(restaurant.getName());
+            dishesCopy.put(renamed.getId(), renamed);
+        }
+        return new CatalogSnapshot(newVersion, restaurantsCopy, dishesCopy);
+    }
+
+    // Новый снимок без ресторана; блюда удаляются вместе с ним (ON DELETE CASCADE в БД)
+    CatalogSnapshot withoutRestaurant(long newVersion, Long restaurantId) {
+        Map<Long, RestaurantDTO> restaurantsCopy = new LinkedHashMap<>(restaurantsById);
+        restaurantsCopy.remove(restaurantId);
+
+        Map<Long, DishDTO> dishesCopy = new HashMap<>(dishesById);
+        getDishes(restaurantId).forEach(dish -> dishesCopy.remove(dish.getId()));
+        return new CatalogSnapshot(newVersion, restaurantsCopy, dishesCopy);
+    }
+
+    CatalogSnapshot withDish(long newVersion, DishDTO dish) {
+        Map<Long, DishDTO> dishesCopy = new HashMap<>(dishesById);
+        dishesCopy.put(dish.getId(), dish);
+        return new CatalogSnapshot(newVersion, new LinkedHashMap<>(restaurantsById), dishesCopy);
+    }
+
+    CatalogSnapshot withoutDish(long newVersion, Long dishId) {
+        Map<Long, DishDTO> dishesCopy = new HashMap<>(dishesById);
+        dishesCopy.remove(dishId);
+        return new CatalogSnapshot(newVersion, new LinkedHashMap<>(restaurantsById), dishesCopy);
+    }
+
+    // Новый снимок, где у всех записей с картинкой url проставлены её уменьшенные копии.
+    // changedMenus дополняется ресторанами, чьи блюда изменились
+    CatalogSnapshot withImageVariants(long newVersion, String url, String thumbnailUrl, String previewUrl,
+                                      String placeholder, Set<Long> changedMenus) {
+        Map<Long, RestaurantDTO> restaurantsCopy = new LinkedHashMap<>(restaurantsById);
+        for (RestaurantDTO restaurant : restaurants) {
+            if (url.equals(restaurant.getUrl())) {
+                RestaurantDTO updated = copyRestaurant(restaurant);
+                updated.setThumbnailUrl(thumbnailUrl);
+                updated.setPreviewUrl(previewUrl);
+                updated.setPlaceholder(placeholder);
+                restaurantsCopy.put(updated.getId(), updated);
+            }
+        }
+        Map<Long, DishDTO> dishesCopy = new HashMap<>(dishesById);
+        for (DishDTO dish : dishesById.values()) {
+            if (url.equals(dish.getUrl())) {
+                DishDTO updated = copyDish(dish);
+                updated.setThumbnailUrl(thumbnailUrl);
+                updated.setPreviewUrl(previewUrl);
+                updated.setPlaceholder(placeholder);
+                dishesCopy.put(updated.getId(), updated);
+                changedMenus.add(updated.getRestaurantId());
+            }
+        }
+        return new CatalogSnapshot(newVersion, restaurantsCopy, dishesCopy);
+    }
+
+    private static DishDTO copyDish(DishDTO dish) {
+        return new DishDTO(
+                dish.getId(),
+                dish.getName(),
+                dish.getDescription(),
+                dish.getUrl(),
+                dish.getPrice(),
+                dish.getWeight(),
+                dish.getRestaurantId(),
+                dish.getRestaurantName(),
+                dish.getThumbnailUrl(),
+                dish.getPreviewUrl(),
+                dish.getPlaceholder()
+        );
+    }
+
+    private static RestaurantDTO copyRestaurant(RestaurantDTO restaurant) {
+        return new RestaurantDTO(
+                restaurant.getId(),
+                restaurant.getName(),
+                restaurant.getAddress(),
+                restaurant.getPhone(),
+                restaurant.getDescription(),
+                restaurant.getUrl(),
+                restaurant.getThumbnailUrl(),
+                restaurant.getPreviewUrl(),
+                restaurant.getPlaceholder()
+        );
+    }
+}
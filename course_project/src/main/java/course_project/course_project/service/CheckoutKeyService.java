@@ -0,0 +1,112 @@
+package course_project.course_project.service;
+
+import course_project.course_project.model.CheckoutKey;
+import course_project.course_project.repository.CheckoutKeyRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Ключи идемпотентности оформления заказа (заголовок Idempotency-Key).
+ *
+ * Недавние ключи держатся в памяти (ограниченный LRU с истечением по времени), все - в таблице checkout_keys
+ * с уникальным (user_id, idempotency_key): ключ записывается в той же транзакции, что и заказ,
+ * поэтому переживает перезапуск, а параллельный дубль не может создать второй заказ.
+ */
+@Service
+public class CheckoutKeyService {
+
+    private static final int MAX_KEY_LENGTH = 100;
+
+    @Autowired
+    private CheckoutKeyRepository checkoutKeyRepository;
+
+    // Сколько часов ключ действует (потом повтор с тем же ключом оформит новый заказ)
+    @Value("${checkout.idempotency.ttl-hours:24}")
+    private long ttlHours;
+
+    private final int maxCachedKeys;
+
+    // "userId:ключ" -> заказ; самые давно использованные вытесняются
+    private final Map<String, Remembered> recent;
+
+    private record Remembered(Long orderId, LocalDateTime createdAt) {
+    }
+
+    public CheckoutKeyService(@Value("${checkout.idempotency.cache-size:10000}") int maxCachedKeys) {
+        this.maxCachedKeys = maxCachedKeys;
+        this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Remembered> eldest) {
+                return size() > CheckoutKeyService.this.maxCachedKeys;
+            }
+        };
+    }
+
+    // Непустой ключ до 100 символов
+    public static boolean isValid(String idempotencyKey) {
+        return !idempotencyKey.isBlank() && idempotencyKey.length() <= MAX_KEY_LENGTH;
+    }
+
+    /**
+     * Заказ, уже созданный по этому ключу, или null
+     */
+    public Long findOrderId(Long userId, String idempotencyKey) {
+        String cacheKey = userId + ":" + idempotencyKey;
+        LocalDateTime expiredBefore = LocalDateTime.now().minusHours(ttlHours);
+        synchronized (recent) {
+            Remembered remembered = recent.get(cacheKey);
+            if (remembered != null) {
+                if (remembered.createdAt().isAfter(expiredBefore)) {
+                    return remembered.orderId();
+                }
+                recent.remove(cacheKey);
+            }
+        }
+
+        CheckoutKey checkoutKey = checkoutKeyRepository.findByUserIdAndIdempotencyKey(userId, idempotencyKey)
+                .filter(key -> key.getCreatedAt().isAfter(expiredBefore))
+                .orElse(null);
+        if (checkoutKey == null) {
+            return null;
+        }
+        remember(checkoutKey);
+        return checkoutKey.getOrderId();
+    }
+
+    /**
+     * Записывает ключ в таблицу. Вызывать в транзакции оформления заказа:
+     * если ключ уже занят параллельным запросом, транзакция откатится вместе с заказом
+     */
+    public void save(Long userId, String idempotencyKey, Long orderId) {
+        CheckoutKey checkoutKey = checkoutKeyRepository.save(
+                new CheckoutKey(null, userId, idempotencyKey, orderId, LocalDateTime.now()));
+        // В память - только после коммита: откаченный заказ не должен находиться по ключу
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                remember(checkoutKey);
+            }
+        });
+    }
+
+    // Просроченные ключи удаляются из таблицы раз в час
+    @Scheduled(fixedDelayString = "${checkout.idempotency.cleanup-interval-ms:3600000}")
+    public void deleteExpired() {
+        checkoutKeyRepository.deleteCreatedBefore(LocalDateTime.now().minusHours(ttlHours));
+    }
+
+    private void remember(CheckoutKey checkoutKey) {
+        synchronized (recent) {
+            recent.put(checkoutKey.getUserId() + ":" + checkoutKey.getIdempotencyKey(),
+                    new Remembered(checkoutKey.getOrderId(), checkoutKey.getCreatedAt()));
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package course_project.course_project.service;
+
+import course_project.course_project.dto.response.CheckoutQueueStatsDTO;
+import course_project.course_project.dto.response.CheckoutTicketDTO;
+import course_project.course_project.model.User;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Асинхронное оформление заказов (checkout.async.enabled).
+ *
+ * Запрос только проверяет корзину и получает билет - заказ пишет фоновый поток: он забирает из ограниченной
+ * очереди до batch-size оформлений и записывает их в одной транзакции. Если пакет откатился (конфликт,
+ * дубль ключа идемпотентности, ошибка БД), его оформления повторяются по одному обычным путём.
+ * Заполненная очередь - отказ сразу (503 и Retry-After), а не рост памяти и времени ответа.
+ *
+ * Очередь и билеты живут в памяти процесса: при остановке очередь дописывается, при аварии - теряется
+ * (корзины при этом остаются нетронутыми).
+ */
+@Service
+public class CheckoutPipeline {
+
+    public static final String QUEUED = "QUEUED";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${checkout.async.enabled:false}")
+    private boolean enabled;
+
+    @Value("${checkout.async.batch-size:20}")
+    private int batchSize;
+
+    @Value("${checkout.async.retry-after-seconds:2}")
+    private int retryAfterSeconds;
+
+    // Сколько минут хранится результат оформления для GET /cart/checkout/{ticketId}
+    @Value("${checkout.async.result-ttl-minutes:10}")
+    private long resultTtlMinutes;
+
+    private final BlockingQueue<Ticket> queue;
+
+    private final Map<String, Ticket> tickets = new ConcurrentHashMap<>();
+
+    private volatile boolean running = true;
+
+    private Thread worker;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong batchedTickets = new AtomicLong();
+    private final AtomicLong batchNanos = new AtomicLong();
+    private final AtomicInteger maxBatchSize = new AtomicInteger();
+    private volatile int lastBatchSize;
+
+    private static final class Ticket {
+        final String id;
+        final User user;
+        final String idempotencyKey;
+        volatile String state = QUEUED;
+        volatile Long orderId;
+        volatile String error;
+        volatile LocalDateTime finishedAt;
+
+        Ticket(User user, String idempotencyKey) {
+            this.id = UUID.randomUUID().toString();
+            this.user = user;
+            this.idempotencyKey = idempotencyKey;
+        }
+    }
+
+    public CheckoutPipeline(@Value("${checkout.async.queue-capacity:500}") int queueCapacity) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            worker = new Thread(this::run, "checkout-pipeline");
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    // Остановка: новые оформления уже не принимаются (сервер не отдаёт запросы), очередь дописывается
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Постановка оформления в очередь. null - очередь заполнена.
+     * Повтор с тем же ключом идемпотентности, пока заказ в очереди или создан, возвращает прежний билет
+     */
+    public CheckoutTicketDTO submit(User user, String idempotencyKey) {
+        if (idempotencyKey != null) {
+            for (Ticket ticket : tickets.values()) {
+                if (ticket.user.getId().equals(user.getId()) && idempotencyKey.equals(ticket.idempotencyKey)
+                        && !FAILED.equals(ticket.state)) {
+                    return toDTO(ticket);
+                }
+            }
+        }
+
+        Ticket ticket = new Ticket(user, idempotencyKey);
+        tickets.put(ticket.id, ticket);
+        if (!queue.offer(ticket)) {
+            tickets.remove(ticket.id);
+            rejected.incrementAndGet();
+            return null;
+        }
+        accepted.incrementAndGet();
+        return toDTO(ticket);
+    }
+
+    // Билет пользователя или null (чужие билеты не видны)
+    public CheckoutTicketDTO find(Long userId, String ticketId) {
+        Ticket ticket = tickets.get(ticketId);
+        return ticket == null || !ticket.user.getId().equals(userId) ? null : toDTO(ticket);
+    }
+
+    public CheckoutQueueStatsDTO getStats() {
+        long batchCount = batches.get();
+        return new CheckoutQueueStatsDTO(
+                enabled,
+                queue.size(),
+                queue.size() + queue.remainingCapacity(),
+                accepted.get(),
+                rejected.get(),
+                completed.get(),
+                failed.get(),
+                batchCount,
+                lastBatchSize,
+                maxBatchSize.get(),
+                batchCount == 0 ? 0 : (double) batchedTickets.get() / batchCount,
+                batchCount == 0 ? 0 : batchNanos.get() / 1_000_000.0 / batchCount);
+    }
+
+    // Забытые результаты: клиент не спросил о них за result-ttl-minutes
+    @Scheduled(fixedDelay = 60_000)
+    public void evictFinished() {
+        LocalDateTime threshold = LocalDateTime.now().minusMinutes(resultTtlMinutes);
+        tickets.values().removeIf(ticket -> ticket.finishedAt != null && ticket.finishedAt.isBefore(threshold));
+    }
+
+    // ============ ФОНОВАЯ ЗАПИСЬ ============
+
+    private void run() {
+        List<Ticket> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Ticket first = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("Ошибка пакетного оформления заказов: " + e.getMessage());
+                batch.stream()
+                        .filter(ticket -> QUEUED.equals(ticket.state))
+                        .forEach(ticket -> fail(ticket, "Не удалось оформить заказ"));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void process(List<Ticket> batch) {
+        long start = System.nanoTime();
+        try {
+            // Результаты публикуются только после фиксации пакета
+            List<Runnable> results = new TransactionTemplate(transactionManager).execute(status -> {
+                List<Runnable> outcomes = new ArrayList<>(batch.size());
+                for (Ticket ticket : batch) {
+                    try {
+                        Long orderId = cartService.checkoutInTransaction(ticket.user, ticket.idempotencyKey).getId();
+                        outcomes.add(() -> complete(ticket, orderId));
+                    } catch (IllegalArgumentException e) {
+                        // Корзина опустела, пока оформление ждало в очереди: до записи дело не дошло
+                        outcomes.add(() -> fail(ticket, e.getMessage()));
+                    }
+                }
+                return outcomes;
+            });
+            results.forEach(Runnable::run);
+        } catch (RuntimeException e) {
+            // Пакет откатился целиком - по одному: ошибка одного оформления не задевает остальные
+            for (Ticket ticket : batch) {
+                try {
+                    complete(ticket, cartService.checkoutCart(ticket.user, ticket.idempotencyKey).order().getId());
+                } catch (IllegalArgumentException single) {
+                    fail(ticket, single.getMessage());
+                } catch (RuntimeException single) {
+                    System.err.println("Не удалось оформить заказ " + ticket.id + ": " + single.getMessage());
+                    fail(ticket, "Не удалось оформить заказ");
+                }
+            }
+        }
+
+        batches.incrementAndGet();
+        batchedTickets.addAndGet(batch.size());
+        batchNanos.addAndGet(System.nanoTime() - start);
+        lastBatchSize = batch.size();
+        maxBatchSize.accumulateAndGet(batch.size(), Math::max);
+    }
+
+    private void complete(Ticket ticket, Long orderId) {
+        ticket.orderId = orderId;
+        ticket.finishedAt = LocalDateTime.now();
+        ticket.state = COMPLETED;
+        completed.incrementAndGet();
+    }
+
+    private void fail(Ticket ticket, String error) {
+        ticket.error = error;
+        ticket.finishedAt = LocalDateTime.now();
+        ticket.state = FAILED;
+        failed.incrementAndGet();
+    }
+
+    private static CheckoutTicketDTO toDTO(Ticket ticket) {
+        return new CheckoutTicketDTO(ticket.id, ticket.state, ticket.orderId, ticket.error);
+    }
+}
@@ -0,0 +1,57 @@
+package course_project.course_project.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Повтор транзакции при конфликте параллельных изменений.
+ *
+ * Конфликт - ConcurrencyFailureException: устаревшая версия (@Version), изменённая строка в атомарном UPDATE,
+ * ожидание блокировки или взаимоблокировка. Каждая попытка - новая транзакция; после отката Spring очищает
+ * контекст персистентности, поэтому следующая попытка читает свежие данные.
+ * Число попыток ограничено - при постоянной конкуренции ошибка уходит вызывающему.
+ */
+@Service
+public class ConflictRetry {
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${cart.retry.max-attempts:8}")
+    private int maxAttempts;
+
+    // Пауза перед повтором: случайная, до backoff-ms * 2^(попытка-1) - конкуренты расходятся во времени
+    @Value("${cart.retry.backoff-ms:10}")
+    private long backoffMs;
+
+    public <T> T inTransaction(Supplier<T> operation) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transaction.execute(status -> operation.get());
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                pause(attempt);
+            }
+        }
+    }
+
+    private void pause(int attempt) {
+        long delay = ThreadLocalRandom.current().nextLong(backoffMs << (attempt - 1)) + 1;
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConcurrencyFailureException("Повтор транзакции прерван", e);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package course_project.course_project.service;
+
+import course_project.course_project.model.Dish;
+import course_project.course_project.model.Order;
+import course_project.course_project.model.OrderItem;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Популярность блюд: сколько заказов с блюдом оформлено за последние popularity.window-hours.
+ *
+ * Окно делится на интервалы по popularity.slot-minutes. Оформление только увеличивает LongAdder блюда
+ * в текущем интервале - без блокировок и без обращения к БД. Раз в popularity.refresh-ms счётчики
+ * сводятся в неизменяемый рейтинг, из которого читают /restaurants/popular и sort=popular;
+ * интервалы, вышедшие из окна, отбрасываются.
+ *
+ * Закрытые интервалы пишутся в dish_popularity и загружаются при старте. Пустая таблица при старте
+ * заполняется по заказам за окно. При аварийной остановке теряются последние два интервала.
+ */
+@Service
+public class DishPopularityService {
+
+    private static final String SEED =
+            "SELECT DISTINCT o.id, o.order_time, i.dish_id FROM orders o " +
+            "JOIN order_items i ON i.order_id = o.id WHERE o.order_time > ? AND i.dish_id IS NOT NULL";
+
+    private static final String LOAD =
+            "SELECT slot_start, dish_id, order_count FROM dish_popularity WHERE slot_start > ?";
+
+    private static final String INSERT =
+            "INSERT INTO dish_popularity (slot_start, dish_id, order_count) VALUES (?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${popularity.window-hours:24}")
+    private long windowHours;
+
+    @Value("${popularity.slot-minutes:15}")
+    private long slotMinutes;
+
+    // Интервал окна: счётчики заказов по блюдам
+    private record Slot(LocalDateTime start, Map<Long, LongAdder> counts) {
+
+        Slot(LocalDateTime start) {
+            this(start, new ConcurrentHashMap<>());
+        }
+
+        void add(Long dishId, long count) {
+            counts.computeIfAbsent(dishId, id -> new LongAdder()).add(count);
+        }
+    }
+
+    /**
+     * Рейтинг на момент последнего пересчёта: счёт каждого блюда и блюда по убыванию счёта.
+     * Версия меняется только вместе со счётом - по ней строится ETag популярных выдач
+     */
+    public record Ranking(long version, Map<Long, Long> scores, List<Long> dishIds) {
+
+        public long score(Long dishId) {
+            return scores.getOrDefault(dishId, 0L);
+        }
+    }
+
+    private volatile Slot current = new Slot(LocalDateTime.now());
+
+    // Закрытые интервалы окна, старые - в начале (доступ только под блокировкой сервиса)
+    private final Deque<Slot> closed = new ArrayDeque<>();
+
+    // Сумма закрытых интервалов, кроме unsaved: пересчитывается при смене интервала
+    private Map<Long, Long> closedTotals = Map.of();
+
+    // Интервал, закрытый при прошлой смене: ещё получает запоздавшие приросты, поэтому в рейтинг
+    // складывается при каждом пересчёте, а в БД пишется на следующей смене
+    private Slot unsaved;
+
+    private volatile Ranking ranking = new Ranking(0, Map.of(), List.of());
+
+    // Популярность не нужна для работы магазина: без неё приложение стартует, ошибка только в лог
+    @PostConstruct
+    public synchronized void load() {
+        current = new Slot(slotStart(LocalDateTime.now()));
+        LocalDateTime threshold = windowStart(current.start());
+        closed.clear();
+        try {
+            Map<LocalDateTime, Slot> slots = new TreeMap<>();
+            Integer stored = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM dish_popularity", Integer.class);
+            boolean seeded = stored != null && stored == 0;
+            if (seeded) {
+                jdbcTemplate.query(SEED, rs -> {
+                    LocalDateTime start = slotStart(rs.getTimestamp("order_time").toLocalDateTime());
+                    slots.computeIfAbsent(start, Slot::new).add(rs.getLong("dish_id"), 1);
+                }, Timestamp.valueOf(threshold));
+            } else {
+                jdbcTemplate.query(LOAD, rs -> {
+                    LocalDateTime start = rs.getTimestamp("slot_start").toLocalDateTime();
+                    slots.computeIfAbsent(start, Slot::new).add(rs.getLong("dish_id"), rs.getLong("order_count"));
+                }, Timestamp.valueOf(threshold));
+            }
+
+            for (Slot slot : slots.values()) {
+                if (!slot.start().isAfter(threshold)) {
+                    continue;
+                }
+                if (slot.start().isBefore(current.start())) {
+                    closed.addLast(slot);
+                    if (seeded) {
+                        save(slot);
+                    }
+                } else {
+                    // Текущий интервал, дописанный при прошлой остановке: продолжаем его и запишем заново целиком
+                    slot.counts().forEach((dishId, count) -> current.add(dishId, count.sum()));
+                }
+            }
+            if (!seeded) {
+                jdbcTemplate.update("DELETE FROM dish_popularity WHERE slot_start >= ?",
+                        Timestamp.valueOf(current.start()));
+            }
+        } catch (DataAccessException e) {
+            System.err.println("Не удалось загрузить популярность блюд: " + e.getMessage());
+        }
+        closedTotals = sum(closed);
+        refresh();
+    }
+
+    // Остановка: в БД дописываются и закрытый, и текущий интервал
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (unsaved != null) {
+            save(unsaved);
+            unsaved = null;
+        }
+        save(current);
+    }
+
+    /**
+     * Заказ оформлен: +1 каждому блюду заказа. В транзакции оформления - только после коммита
+     */
+    public void orderPlaced(Order order) {
+        Set<Long> dishIds = order.getOrderItems().stream()
+                .map(OrderItem::getDish)
+                .filter(Objects::nonNull)
+                .map(Dish::getId)
+                .collect(Collectors.toSet());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Откаченное оформление (конфликт, повтор пакета) не должно поднимать популярность
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    increment(dishIds);
+                }
+            });
+        } else {
+            increment(dishIds);
+        }
+    }
+
+    public Ranking ranking() {
+        return ranking;
+    }
+
+    /**
+     * Смена интервала (если текущий истёк) и пересчёт рейтинга
+     */
+    @Scheduled(fixedDelayString = "${popularity.refresh-ms:60000}")
+    public synchronized void refresh() {
+        LocalDateTime start = slotStart(LocalDateTime.now());
+        if (start.isAfter(current.start())) {
+            rotate(start);
+        }
+
+        Map<Long, Long> scores = new HashMap<>(closedTotals);
+        if (unsaved != null && closed.peekLast() == unsaved) {
+            addCounts(scores, unsaved);
+        }
+        addCounts(scores, current);
+        scores.values().removeIf(score -> score <= 0);
+        if (scores.equals(ranking.scores())) {
+            return;
+        }
+
+        List<Long> dishIds = new ArrayList<>(scores.keySet());
+        dishIds.sort(Comparator.comparing((Long dishId) -> scores.get(dishId)).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+        ranking = new Ranking(ranking.version() + 1, Map.copyOf(scores), List.copyOf(dishIds));
+    }
+
+    // ============ ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ============
+
+    private void increment(Set<Long> dishIds) {
+        // Интервал читается один раз: при смене приросты могут уйти в только что закрытый (unsaved)
+        Slot slot = current;
+        dishIds.forEach(dishId -> slot.add(dishId, 1));
+    }
+
+    private void rotate(LocalDateTime start) {
+        Slot finished = current;
+        current = new Slot(start);
+
+        if (unsaved != null) {
+            save(unsaved);
+        }
+        unsaved = finished;
+        closed.addLast(finished);
+
+        LocalDateTime threshold = windowStart(start);
+        while (!closed.isEmpty() && !closed.peekFirst().start().isAfter(threshold)) {
+            closed.removeFirst();
+        }
+        try {
+            jdbcTemplate.update("DELETE FROM dish_popularity WHERE slot_start <= ?", Timestamp.valueOf(threshold));
+        } catch (DataAccessException e) {
+            System.err.println("Не удалось удалить устаревшую популярность блюд: " + e.getMessage());
+        }
+        closedTotals = sum(closed.stream().filter(slot -> slot != finished).toList());
+    }
+
+    private void save(Slot slot) {
+        List<Object[]> rows = new ArrayList<>();
+        Timestamp start = Timestamp.valueOf(slot.start());
+        slot.counts().forEach((dishId, count) -> rows.add(new Object[]{start, dishId, count.sum()}));
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate(INSERT, rows);
+        } catch (DataAccessException e) {
+            System.err.println("Не удалось сохранить популярность блюд: " + e.getMessage());
+        }
+    }
+
+    private static Map<Long, Long> sum(Collection<Slot> slots) {
+        Map<Long, Long> totals = new HashMap<>();
+        slots.forEach(slot -> addCounts(totals, slot));
+        return totals;
+    }
+
+    private static void addCounts(Map<Long, Long> totals, Slot slot) {
+        slot.counts().forEach((dishId, count) -> totals.merge(dishId, count.sum(), Long::sum));
+    }
+
+    // Начало интервала, в который попадает момент (интервалы отсчитываются от полуночи)
+    private LocalDateTime slotStart(LocalDateTime time) {
+        LocalDateTime minute = time.truncatedTo(ChronoUnit.MINUTES);
+        long minuteOfDay = minute.getHour() * 60L + minute.getMinute();
+        return minute.minusMinutes(minuteOfDay % slotMinutes);
+    }
+
+    // Интервалы, начавшиеся не позже этого момента, уже вне окна
+    private LocalDateTime windowStart(LocalDateTime currentStart) {
+        return currentStart.minusHours(windowHours);
+    }
+}
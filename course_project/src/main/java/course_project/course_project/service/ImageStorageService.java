@@ -0,0 +1,302 @@
+package course_project.course_project.service;
+
+import course_project.course_project.repository.DishRepository;
+import course_project.course_project.repository.OrderItemRepository;
+import course_project.course_project.repository.RestaurantRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Хранилище загруженных изображений с адресацией по содержимому.
+ *
+ * Файл потоково пишется во временный файл (без чтения целиком в память), параллельно считается SHA-256;
+ * имя файла - это хэш, поэтому одинаковые картинки хранятся один раз.
+ * Где лежат сами файлы (локальный диск или S3), решает {@link ImageStore}.
+ * Счётчиком ссылок служат сами записи блюд, ресторанов и позиций заказов (снимок блюда):
+ * файл удаляется, когда на url больше никто не ссылается.
+ *
+ * Файл из store(), на который ещё не сослалась сохранённая запись, закреплён строкой в image_uploads:
+ * её видят все экземпляры бэкенда с общим хранилищем, и release() на любом из них такой файл не удалит.
+ */
+@Service
+public class ImageStorageService {
+
+    public static final String URL_PREFIX = "/uploads/";
+
+    private static final String PIN = "UPDATE image_uploads SET pins = pins + 1, expires_at = ? WHERE url = ?";
+    private static final String INSERT_PIN = "INSERT INTO image_uploads (url, pins, expires_at) VALUES (?, ?, ?)";
+    private static final String UNPIN = "UPDATE image_uploads SET pins = pins - 1 WHERE url = ? AND pins > 0";
+    private static final String LOCK_PIN = "SELECT pins, expires_at FROM image_uploads WHERE url = ? FOR UPDATE";
+    private static final String DELETE_PIN = "DELETE FROM image_uploads WHERE url = ?";
+
+    @Autowired
+    private DishRepository dishRepository;
+
+    @Autowired
+    private RestaurantRepository restaurantRepository;
+
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+
+    @Autowired
+    private OrderArchiveService orderArchiveService;
+
+    @Autowired
+    private ImageVariantService imageVariantService;
+
+    @Autowired
+    private ImageStore imageStore;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Локальная папка загрузок (временные файлы; при хранении на диске - и сами картинки)
+    @Value("${file.upload-dir:uploads}")
+    private String uploadDir;
+
+    // Сколько минут держится закрепление, если запись так и не сохранили (например, экземпляр упал)
+    @Value("${file.upload-pin-minutes:30}")
+    private long pinMinutes;
+
+    /**
+     * Сохраняет загруженный файл и возвращает его url (например: /uploads/9f86d08...e3.jpg)
+     */
+    public String store(MultipartFile file) {
+        try {
+            // Пишем во временный файл, по пути считая хэш
+            Path temp = Files.createTempFile(incomingDir(uploadDir), "upload-", ".tmp");
+            String hash;
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                try (InputStream in = new DigestInputStream(file.getInputStream(), digest);
+                     ReadableByteChannel source = Channels.newChannel(in);
+                     FileChannel target = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    long position = 0;
+                    long written;
+                    while ((written = target.transferFrom(source, position, 1 << 20)) > 0) {
+                        position += written;
+                    }
+                }
+                hash = HexFormat.of().formatHex(digest.digest());
+            } catch (IOException | NoSuchAlgorithmException | RuntimeException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+
+            String filename = hash + extension(file.getOriginalFilename());
+            String url = URL_PREFIX + filename;
+            try {
+                // Закрепляем до проверки файла: release(), начатый раньше, успеет удалить его целиком,
+                // и файл будет записан заново; начатый позже - увидит закрепление
+                pin(url);
+                try {
+                    // Такая картинка уже есть - второй раз не храним
+                    if (imageStore.find(filename) == null) {
+                        makeReadable(temp);
+                        imageStore.put(filename, temp, contentType(filename));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    attached(url);
+                    throw e;
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            return url;
+
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new RuntimeException("Ошибка при сохранении файла: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Сообщает, что запись с url из store() сохранена (или сохранение не удалось) -
+     * дальше файл держат ссылки из БД.
+     */
+    public void attached(String imageUrl) {
+        if (filename(imageUrl) != null) {
+            jdbcTemplate.update(UNPIN, imageUrl);
+        }
+    }
+
+    /**
+     * Запись с url из store() сохранить не удалось: файл больше не закреплён и удаляется,
+     * если на него никто не ссылается (например, та же картинка уже есть у другого блюда)
+     */
+    public void abandoned(String imageUrl) {
+        attached(imageUrl);
+        release(imageUrl);
+    }
+
+    /**
+     * Освобождает ссылку на файл: удаляет его, если ни блюдо, ни ресторан больше не ссылаются на этот url.
+     * Вызывать после того, как запись со старым url изменена или удалена.
+     */
+    public void release(String imageUrl) {
+        String filename = filename(imageUrl);
+        if (filename == null) {
+            return;
+        }
+        // Строка закрепления блокируется до конца удаления: store() на любом экземпляре ждёт её
+        Boolean locked;
+        do {
+            lockRow(imageUrl);
+            locked = new TransactionTemplate(transactionManager).execute(status -> {
+                List<Boolean> pinned = jdbcTemplate.query(LOCK_PIN, (rs, rowNum) -> rs.getInt("pins") > 0
+                        && rs.getTimestamp("expires_at").toLocalDateTime().isAfter(LocalDateTime.now()), imageUrl);
+                if (pinned.isEmpty()) {
+                    // Строку успел удалить параллельный release() - создаём заново
+                    return false;
+                }
+                if (pinned.get(0)) {
+                    return true;
+                }
+                jdbcTemplate.update(DELETE_PIN, imageUrl);
+                if (dishRepository.countByUrl(imageUrl) > 0
+                        || restaurantRepository.countByUrl(imageUrl) > 0
+                        || orderItemRepository.existsByDishUrl(imageUrl)
+                        || orderArchiveService.usesImage(imageUrl)) {
+                    return true;
+                }
+                try {
+                    imageStore.delete(filename);
+                } catch (IOException e) {
+                    // Логируем ошибку, но не кидаем исключение
+                    System.err.println("Ошибка при удалении файла: " + e.getMessage());
+                }
+                imageVariantService.discard(imageUrl);
+                return true;
+            });
+        } while (!Boolean.TRUE.equals(locked));
+    }
+
+    /**
+     * Закрепления, которые так и не сняли (экземпляр упал между загрузкой и сохранением записи):
+     * по истечении срока файл удаляется, если на него никто не ссылается
+     */
+    @Scheduled(fixedDelayString = "${file.upload-pin-sweep-ms:600000}")
+    public void releaseExpiredPins() {
+        try {
+            jdbcTemplate.queryForList("SELECT url FROM image_uploads WHERE expires_at < ?", String.class,
+                    Timestamp.valueOf(LocalDateTime.now())).forEach(this::release);
+        } catch (DataAccessException e) {
+            System.err.println("Ошибка при снятии просроченных закреплений: " + e.getMessage());
+        }
+    }
+
+    // Сведения о файле по url или null, если такого файла нет
+    public ImageStore.StoredImage find(String imageUrl) throws IOException {
+        String filename = filename(imageUrl);
+        return filename == null ? null : imageStore.find(filename);
+    }
+
+    // Байты [start, end) файла по url (url уже проверен через find)
+    public InputStream open(String imageUrl, long start, long end) throws IOException {
+        return imageStore.open(filename(imageUrl), start, end);
+    }
+
+    // ============ ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ============
+
+    // +1 закрепление url. Строку мог удалить параллельный release() - тогда она вставляется заново
+    private void pin(String imageUrl) {
+        Timestamp expiresAt = Timestamp.valueOf(LocalDateTime.now().plusMinutes(pinMinutes));
+        while (jdbcTemplate.update(PIN, expiresAt, imageUrl) == 0) {
+            if (insertIfAbsent(imageUrl, 1, expiresAt)) {
+                return;
+            }
+        }
+    }
+
+    // Строка, которую release() может заблокировать, - даже если url никто не закреплял
+    private void lockRow(String imageUrl) {
+        insertIfAbsent(imageUrl, 0, Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    // Вставка в своей транзакции: дубль ключа (строку вставил параллельный запрос) - false
+    private boolean insertIfAbsent(String imageUrl, int pins, Timestamp expiresAt) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            transaction.executeWithoutResult(status -> jdbcTemplate.update(INSERT_PIN, imageUrl, pins, expiresAt));
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    // Имя файла из url или null, если url не из хранилища (или пытается выйти за его пределы)
+    static String filename(String imageUrl) {
+        if (imageUrl == null || !imageUrl.startsWith(URL_PREFIX)) {
+            return null;
+        }
+        String filename = imageUrl.substring(URL_PREFIX.length());
+        if (filename.isEmpty() || filename.contains("/") || filename.contains("\\") || filename.contains("..")) {
+            return null;
+        }
+        return filename;
+    }
+
+    // Папка для недописанных загрузок (в хранилище файл попадает только целиком)
+    static Path incomingDir(String uploadDir) throws IOException {
+        return Files.createDirectories(Paths.get(uploadDir).resolve(".incoming"));
+    }
+
+    static String contentType(String filename) {
+        return MediaTypeFactory.getMediaType(filename).orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+    }
+
+    // Временные файлы создаются с правами только для владельца, а отдаются наружу
+    static void makeReadable(Path file) throws IOException {
+        try {
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-r--r--"));
+        } catch (UnsupportedOperationException e) {
+            // не POSIX (Windows) - права по умолчанию подходят
+        }
+    }
+
+    // Расширение из оригинального имени (только буквы и цифры), например ".jpg"
+    private static String extension(String originalFilename) {
+        if (originalFilename == null) {
+            return "";
+        }
+        int dot = originalFilename.lastIndexOf('.');
+        if (dot < 0) {
+            return "";
+        }
+        String extension = originalFilename.substring(dot + 1).toLowerCase(Locale.ROOT);
+        return extension.matches("[a-z0-9]{1,8}") ? "." + extension : "";
+    }
+}
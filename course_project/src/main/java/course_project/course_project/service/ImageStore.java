@@ -0,0 +1,33 @@
+package course_project.course_project.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * Место хранения файлов картинок. Имена плоские (например 9f86d08...e3-320.jpg),
+ * как реализация раскладывает их у себя - её дело.
+ * Реализация выбирается свойством images.storage.type: local (по умолчанию) или s3.
+ */
+public interface ImageStore {
+
+    /**
+     * Сведения о файле. localFile - путь на диске, если файл лежит локально (для sendfile), иначе null
+     */
+    record StoredImage(long size, long lastModified, Path localFile) {
+    }
+
+    // Сведения о файле или null, если его нет
+    StoredImage find(String name) throws IOException;
+
+    /**
+     * Кладёт готовый локальный файл под именем name. Файл с таким именем уже может существовать -
+     * содержимое у них одинаковое. Исходный файл после вызова можно удалять (если он ещё есть).
+     */
+    void put(String name, Path source, String contentType) throws IOException;
+
+    void delete(String name) throws IOException;
+
+    // Поток байтов [start, end) файла
+    InputStream open(String name, long start, long end) throws IOException;
+}
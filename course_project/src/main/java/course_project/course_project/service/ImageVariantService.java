@@ -0,0 +1,271 @@
+package course_project.course_project.service;
+
+import course_project.course_project.model.ImageVariants;
+import course_project.course_project.repository.ImageVariantsRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Фоновая подготовка уменьшенных копий загруженных картинок:
+ * миниатюра для списков, сжатая копия для карточки блюда и крошечная заглушка (data URI),
+ * которую клиент показывает, пока грузится картинка.
+ *
+ * Работает на ограниченном пуле потоков с ограниченной очередью. Если очередь заполнена,
+ * задачу выполняет вызывающий поток - так админка притормаживает, а память не растёт.
+ */
+@Service
+public class ImageVariantService {
+
+    private static final int THUMBNAIL_SIZE = 320;
+    private static final int PREVIEW_SIZE = 1024;
+    private static final int PLACEHOLDER_SIZE = 16;
+    private static final int LOCK_STRIPES = 64;
+
+    @Autowired
+    private ImageVariantsRepository imageVariantsRepository;
+
+    @Autowired
+    private CatalogService catalogService;
+
+    @Autowired
+    private ImageStore imageStore;
+
+    @Value("${file.upload-dir:uploads}")
+    private String uploadDir;
+
+    private final ThreadPoolExecutor executor;
+
+    // Удаление копий и запись готовых копий одной картинки идут под одной блокировкой
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public ImageVariantService(@Value("${images.variants.threads:2}") int threads,
+                               @Value("${images.variants.queue-capacity:100}") int queueCapacity) {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "image-variants-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Ставит картинку в очередь на обработку. Вызывать после сохранения записи с этим url:
+     * когда копии готовы, каталог проставляет их всем записям с этой картинкой.
+     */
+    public void submit(String imageUrl) {
+        if (ImageStorageService.filename(imageUrl) == null || executor.isShutdown()) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                process(imageUrl);
+            } catch (Exception e) {
+                // Картинка остаётся без копий - клиент покажет оригинал
+                System.err.println("Ошибка при обработке картинки " + imageUrl + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Удаляет копии картинки (когда удалён сам файл)
+     */
+    public void discard(String imageUrl) {
+        String filename = ImageStorageService.filename(imageUrl);
+        if (filename == null) {
+            return;
+        }
+        synchronized (lockFor(filename)) {
+            deleteVariants(imageUrl, filename);
+        }
+    }
+
+    // ============ ОБРАБОТКА ============
+
+    private void process(String imageUrl) throws IOException {
+        // Картинка с тем же содержимым уже обработана - копии общие
+        ImageVariants existing = imageVariantsRepository.findById(imageUrl).orElse(null);
+        if (existing != null) {
+            catalogService.imageVariantsReady(existing);
+            return;
+        }
+
+        String filename = ImageStorageService.filename(imageUrl);
+        ImageStore.StoredImage original = imageStore.find(filename);
+        if (original == null) {
+            return;
+        }
+        BufferedImage image;
+        if (original.localFile() != null) {
+            image = read(original.localFile().toFile(), PREVIEW_SIZE);
+        } else {
+            try (InputStream in = imageStore.open(filename, 0, original.size())) {
+                image = read(in, PREVIEW_SIZE);
+            }
+        }
+        if (image == null) {
+            return;  // не картинка или формат, который ImageIO не читает
+        }
+
+        String thumbnailName = variantName(filename, THUMBNAIL_SIZE);
+        String previewName = variantName(filename, PREVIEW_SIZE);
+        store(resize(image, THUMBNAIL_SIZE), 0.8f, thumbnailName);
+        store(resize(image, PREVIEW_SIZE), 0.75f, previewName);
+
+        ByteArrayOutputStream placeholder = new ByteArrayOutputStream();
+        writeJpeg(resize(image, PLACEHOLDER_SIZE), 0.5f, placeholder);
+
+        ImageVariants variants;
+        synchronized (lockFor(filename)) {
+            // Оригинал удалили, пока готовились копии: discard() уже прошёл, копии убираем сами
+            if (imageStore.find(filename) == null) {
+                deleteVariants(imageUrl, filename);
+                return;
+            }
+            variants = imageVariantsRepository.save(new ImageVariants(
+                    imageUrl,
+                    ImageStorageService.URL_PREFIX + thumbnailName,
+                    ImageStorageService.URL_PREFIX + previewName,
+                    "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(placeholder.toByteArray())));
+        }
+        catalogService.imageVariantsReady(variants);
+    }
+
+    private void deleteVariants(String imageUrl, String filename) {
+        try {
+            imageStore.delete(variantName(filename, THUMBNAIL_SIZE));
+            imageStore.delete(variantName(filename, PREVIEW_SIZE));
+        } catch (IOException e) {
+            // Логируем ошибку, но не кидаем исключение
+            System.err.println("Ошибка при удалении копий картинки: " + e.getMessage());
+        }
+        if (imageVariantsRepository.existsById(imageUrl)) {
+            imageVariantsRepository.deleteById(imageUrl);
+        }
+    }
+
+    private Object lockFor(String filename) {
+        return locks[Math.floorMod(filename.hashCode(), LOCK_STRIPES)];
+    }
+
+    // 9f86d08...e3.png -> 9f86d08...e3-320.jpg
+    private static String variantName(String filename, int size) {
+        int dot = filename.lastIndexOf('.');
+        String base = dot > 0 ? filename.substring(0, dot) : filename;
+        return base + "-" + size + ".jpg";
+    }
+
+    /**
+     * Читает картинку, по возможности сразу с прореживанием пикселей:
+     * большая фотография не разворачивается в памяти целиком, если нужна копия не больше maxSize.
+     */
+    private static BufferedImage read(Object source, int maxSize) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source)) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, longest / maxSize);
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Уменьшение с сохранением пропорций (только уменьшение), прозрачность заливается белым
+    private static BufferedImage resize(BufferedImage source, int maxSize) {
+        double scale = Math.min(1.0, (double) maxSize / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    // Пишем во временный файл и кладём в хранилище целиком, чтобы никто не получил недописанный файл
+    private void store(BufferedImage image, float quality, String name) throws IOException {
+        Path temp = Files.createTempFile(ImageStorageService.incomingDir(uploadDir), "variant-", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                writeJpeg(image, quality, out);
+            }
+            ImageStorageService.makeReadable(temp);
+            imageStore.put(name, temp, MediaType.IMAGE_JPEG_VALUE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeJpeg(BufferedImage image, float quality, OutputStream out) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
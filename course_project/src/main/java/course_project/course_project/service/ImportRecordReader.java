@@ -0,0 +1,229 @@
+package course_project.course_project.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Потоковое чтение записей импорта: CSV (первая строка - заголовок) или NDJSON (один объект на строку).
+ * В памяти держится только текущая запись, поэтому размер файла не ограничен. Запись длиннее
+ * MAX_RECORD_LENGTH символов не копится: она пропускается до конца строки файла и возвращается с ошибкой.
+ */
+public abstract class ImportRecordReader {
+
+    /**
+     * Запись файла. fields - значения по именам колонок (в нижнем регистре).
+     * error - почему запись не удалось разобрать (тогда fields пустой)
+     */
+    public record Record(long line, Map<String, String> fields, String error) {
+    }
+
+    // Предел длины одной записи в символах
+    public static final int MAX_RECORD_LENGTH = 64 * 1024;
+
+    protected final BufferedReader reader;
+    protected long line;
+
+    protected ImportRecordReader(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    public static ImportRecordReader csv(BufferedReader reader) {
+        return new Csv(reader);
+    }
+
+    public static ImportRecordReader ndjson(BufferedReader reader, ObjectMapper objectMapper) {
+        return new Ndjson(reader, objectMapper);
+    }
+
+    // Следующая запись или null, если файл закончился
+    public abstract Record next() throws IOException;
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    // ============ CSV (RFC 4180: кавычки, "" внутри кавычек, переводы строк в значениях) ============
+
+    private static final class Csv extends ImportRecordReader {
+        private String[] header;
+        private boolean finished;
+        // Почему последнюю запись не удалось прочитать (null - прочитана)
+        private String rowError;
+
+        Csv(BufferedReader reader) {
+            super(reader);
+        }
+
+        @Override
+        public Record next() throws IOException {
+            if (finished) {
+                return null;
+            }
+            if (header == null) {
+                List<String> names = readRow();
+                if (names == null) {
+                    return null;
+                }
+                if (rowError != null) {
+                    // Без заголовка остальные строки не разобрать
+                    finished = true;
+                    return new Record(line, Map.of(), "Заголовок: " + rowError);
+                }
+                header = names.stream()
+                        .map(name -> name.replace("﻿", "").trim().toLowerCase(Locale.ROOT))
+                        .toArray(String[]::new);
+            }
+            List<String> values;
+            long start;
+            do {
+                start = line + 1;
+                values = readRow();
+                if (values == null) {
+                    return null;
+                }
+            } while (rowError == null && values.size() == 1 && values.get(0).isBlank());  // пустые строки пропускаем
+
+            if (rowError != null) {
+                return new Record(start, Map.of(), rowError);
+            }
+            if (values.size() != header.length) {
+                return new Record(start, Map.of(),
+                        "Ожидалось колонок: " + header.length + ", получено: " + values.size());
+            }
+            Map<String, String> fields = new HashMap<>();
+            for (int i = 0; i < header.length; i++) {
+                fields.put(header[i], blankToNull(values.get(i)));
+            }
+            return new Record(start, fields, null);
+        }
+
+        // Одна запись CSV (может занимать несколько строк файла)
+        private List<String> readRow() throws IOException {
+            rowError = null;
+            int c = reader.read();
+            if (c == -1) {
+                return null;
+            }
+            line++;
+            List<String> values = new ArrayList<>();
+            StringBuilder value = new StringBuilder();
+            int length = 0;
+            boolean quoted = false;
+            while (true) {
+                if (++length > MAX_RECORD_LENGTH) {
+                    // Скорее всего, не закрыта кавычка: пропускаем строку файла и продолжаем со следующей
+                    rowError = "Запись длиннее " + MAX_RECORD_LENGTH + " символов";
+                    while (c != '\n' && c != -1) {
+                        c = reader.read();
+                    }
+                    return values;
+                }
+                if (quoted) {
+                    if (c == -1) {
+                        rowError = "Не закрыта кавычка";
+                        return values;
+                    }
+                    if (c == '"') {
+                        reader.mark(1);
+                        int following = reader.read();
+                        if (following == '"') {
+                            value.append('"');
+                        } else {
+                            quoted = false;
+                            reader.reset();
+                        }
+                    } else {
+                        if (c == '\n') {
+                            line++;
+                        }
+                        value.append((char) c);
+                    }
+                } else if (c == '"' && value.isEmpty()) {
+                    quoted = true;
+                } else if (c == ',') {
+                    values.add(value.toString());
+                    value.setLength(0);
+                } else if (c == '\n' || c == -1) {
+                    break;
+                } else if (c != '\r') {
+                    value.append((char) c);
+                }
+                c = reader.read();
+            }
+            values.add(value.toString());
+            return values;
+        }
+    }
+
+    // ============ NDJSON ============
+
+    private static final class Ndjson extends ImportRecordReader {
+        private final ObjectMapper objectMapper;
+        // Последняя прочитанная строка обрезана по MAX_RECORD_LENGTH
+        private boolean tooLong;
+
+        Ndjson(BufferedReader reader, ObjectMapper objectMapper) {
+            super(reader);
+            this.objectMapper = objectMapper;
+        }
+
+        @Override
+        public Record next() throws IOException {
+            String text;
+            do {
+                text = readLine();
+                if (text == null) {
+                    return null;
+                }
+                line++;
+            } while (text.isBlank() && !tooLong);
+
+            if (tooLong) {
+                return new Record(line, Map.of(), "Запись длиннее " + MAX_RECORD_LENGTH + " символов");
+            }
+            JsonNode node;
+            try {
+                node = objectMapper.readTree(text);
+            } catch (JsonProcessingException e) {
+                return new Record(line, Map.of(), "Некорректный JSON: " + e.getOriginalMessage());
+            }
+            if (!node.isObject()) {
+                return new Record(line, Map.of(), "Ожидался JSON-объект");
+            }
+            Map<String, String> fields = new HashMap<>();
+            node.properties().forEach(field -> fields.put(field.getKey().toLowerCase(Locale.ROOT),
+                    field.getValue().isNull() ? null : blankToNull(field.getValue().asText())));
+            return new Record(line, fields, null);
+        }
+
+        // Строка файла (null - файл закончился); сверх MAX_RECORD_LENGTH символы пропускаются, tooLong = true
+        private String readLine() throws IOException {
+            tooLong = false;
+            StringBuilder text = new StringBuilder();
+            int c = reader.read();
+            if (c == -1) {
+                return null;
+            }
+            while (c != '\n' && c != -1) {
+                if (text.length() < MAX_RECORD_LENGTH) {
+                    if (c != '\r') {
+                        text.append((char) c);
+                    }
+                } else {
+                    tooLong = true;
+                }
+                c = reader.read();
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,627 @@
+package course_project.course_project.service;
+
+import course_project.course_project.dto.request.CartOperationDTO;
+import course_project.course_project.model.Cart;
+import course_project.course_project.model.CartItem;
+import course_project.course_project.model.Dish;
+import course_project.course_project.model.User;
+import course_project.course_project.repository.CartRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Корзины в памяти процесса (cart.store.type=memory).
+ *
+ * Активные корзины лежат в ConcurrentHashMap по id пользователя, каждая меняется под блокировкой
+ * своей полосы. Изменённые корзины раз в cart.store.flush-interval-ms пишутся в carts/cart_items
+ * одной транзакцией: сколько бы раз корзину ни меняли за интервал, в БД уходит только её последнее состояние,
+ * причём только отличия от уже записанного. Корзина, которую записать не удалось, остаётся изменённой
+ * и записывается снова при следующем проходе.
+ * Перед оформлением заказа и при остановке приложения корзины записываются синхронно.
+ *
+ * Подходит только для одного экземпляра бэкенда: другой экземпляр не увидит корзины из памяти этого.
+ */
+@Service
+@ConditionalOnProperty(name = "cart.store.type", havingValue = "memory")
+public class InMemoryCartStore implements CartStore {
+
+    private static final Logger log = LoggerFactory.getLogger(InMemoryCartStore.class);
+
+    private static final int LOCK_STRIPES = 64;
+
+    private static final String INSERT_CART = "INSERT INTO carts (user_id, total) VALUES (?, ?)";
+    private static final String UPDATE_TOTAL = "UPDATE carts SET total = ?, version = version + 1 WHERE id = ?";
+    private static final String UPDATE_ITEM =
+            "UPDATE cart_items SET quantity = ?, price = ?, version = version + 1 WHERE cart_id = ? AND dish_id = ?";
+    private static final String DELETE_ITEM = "DELETE FROM cart_items WHERE cart_id = ? AND dish_id = ?";
+    private static final String INSERT_ITEM = "INSERT INTO cart_items (cart_id, dish_id, quantity, price) VALUES (?, ?, ?, ?)";
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Корзина без изменений дольше этого времени выгружается из памяти
+    @Value("${cart.store.idle-minutes:30}")
+    private long idleMinutes;
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final Map<Long, Entry> carts = new ConcurrentHashMap<>();
+    // Пользователи, чьи корзины изменены после последней записи в БД
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    // Запись в БД идёт в один поток: иначе старое состояние корзины могло бы записаться поверх нового
+    private final ReentrantLock flushLock = new ReentrantLock();
+    // Позиции, которых ещё нет в БД, получают отрицательные id
+    private final AtomicLong newItemIds = new AtomicLong();
+
+    public InMemoryCartStore() {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    // Корзина в памяти. Поля меняются только под блокировкой полосы пользователя
+    private static final class Entry {
+        final Long userId;
+        final String username;
+        Long cartId;  // null, пока корзины нет в БД
+        final Map<Long, Item> items = new LinkedHashMap<>();  // id блюда -> позиция
+        BigDecimal total = BigDecimal.ZERO;
+        volatile long lastAccess;  // читается и без блокировки - при поиске давно не менявшихся
+        // Что сейчас лежит в БД: с этим сравнивается корзина при записи
+        Map<Long, Line> saved = Map.of();
+        BigDecimal savedTotal = BigDecimal.ZERO;
+        // Позиции оформляемого заказа: пока его транзакция не завершилась, корзина в БД не пишется
+        Map<Long, Line> ordered;
+
+        Entry(Long userId, String username) {
+            this.userId = userId;
+            this.username = username;
+        }
+    }
+
+    private static final class Item {
+        final long id;
+        final Dish dish;
+        final BigDecimal price;
+        int quantity;
+
+        Item(long id, Dish dish, BigDecimal price, int quantity) {
+            this.id = id;
+            this.dish = dish;
+            this.price = price;
+            this.quantity = quantity;
+        }
+    }
+
+    // Позиция в том виде, в каком она пишется в БД
+    private record Line(int quantity, BigDecimal price) {
+
+        boolean sameAs(Line other) {
+            return quantity == other.quantity && price.compareTo(other.price) == 0;
+        }
+    }
+
+    // Состояние корзины для записи в БД и то, что уже записано (id блюда -> позиция)
+    private record Pending(Entry entry, Long cartId, BigDecimal total, Map<Long, Line> items,
+                           BigDecimal savedTotal, Map<Long, Line> saved) {
+    }
+
+    // ============ ОПЕРАЦИИ С КОРЗИНОЙ ============
+
+    @Override
+    public Cart add(User user, Dish dish, int quantity) {
+        synchronized (lockFor(user.getId())) {
+            Entry entry = load(user.getId(), user.getName());
+            addItem(entry, dish, quantity);
+            dirty.add(entry.userId);
+            return toCart(entry);
+        }
+    }
+
+    @Override
+    public Cart remove(User user, Long cartItemId, int quantity) {
+        synchronized (lockFor(user.getId())) {
+            Entry entry = load(user.getId(), user.getName());
+            Item item = findItem(entry, cartItemId, null);
+            if (item == null) {
+                throw new IllegalArgumentException("CartItem не найден");
+            }
+            setQuantity(entry, item, Math.max(0, item.quantity - quantity));
+            dirty.add(entry.userId);
+            return toCart(entry);
+        }
+    }
+
+    // Операции применяются к копии корзины; если все прошли - копия заменяет корзину
+    @Override
+    public Cart apply(User user, List<CartOperationDTO> operations, Map<Long, Dish> dishes) {
+        synchronized (lockFor(user.getId())) {
+            Entry entry = load(user.getId(), user.getName());
+            Entry draft = new Entry(entry.userId, entry.username);
+            entry.items.forEach((dishId, item) ->
+                    draft.items.put(dishId, new Item(item.id, item.dish, item.price, item.quantity)));
+            draft.total = entry.total;
+
+            for (CartOperationDTO operation : operations) {
+                Item item = findItem(draft, operation.getCartItemId(), operation.getDishId());
+                switch (operation.getOp()) {
+                    case CartOperationDTO.ADD -> addItem(draft, dishes.get(operation.getDishId()), operation.getQuantity());
+                    case CartOperationDTO.REMOVE -> {
+                        if (item == null) {
+                            throw new IllegalArgumentException("CartItem не найден");
+                        }
+                        setQuantity(draft, item, Math.max(0, item.quantity - operation.getQuantity()));
+                    }
+                    case CartOperationDTO.SET -> {
+                        if (item != null) {
+                            setQuantity(draft, item, operation.getQuantity());
+                        } else if (operation.getCartItemId() != null) {
+                            throw new IllegalArgumentException("CartItem не найден");
+                        } else if (operation.getQuantity() > 0) {
+                            addItem(draft, dishes.get(operation.getDishId()), operation.getQuantity());
+                        }
+                    }
+                    default -> throw new IllegalArgumentException("Неизвестная операция: " + operation.getOp());
+                }
+            }
+
+            entry.items.clear();
+            entry.items.putAll(draft.items);
+            entry.total = draft.total;
+            dirty.add(entry.userId);
+            return toCart(entry);
+        }
+    }
+
+    // В памяти корзина есть всегда (возможно, пустая и ещё не записанная в БД)
+    @Override
+    public Cart find(User user) {
+        synchronized (lockFor(user.getId())) {
+            return toCart(load(user.getId(), user.getName()));
+        }
+    }
+
+    @Override
+    public void clear(User user) {
+        synchronized (lockFor(user.getId())) {
+            Entry entry = load(user.getId(), user.getName());
+            entry.items.clear();
+            entry.total = BigDecimal.ZERO;
+            dirty.add(entry.userId);
+        }
+    }
+
+    @Override
+    public <T> T checkout(User user, Supplier<T> checkout) {
+        flushLock.lock();
+        boolean flushLocked = true;
+        try {
+            synchronized (lockFor(user.getId())) {
+                Entry entry = load(user.getId(), user.getName());
+                if (entry.ordered != null) {
+                    // Прошлое оформление ещё в общей транзакции: его позиции в БД уже удалены,
+                    // а изменения после него запишутся только после её завершения
+                    flushLock.unlock();
+                    flushLocked = false;
+                    return checkout.get();
+                }
+                if (dirty.remove(user.getId())) {
+                    Pending pending = pending(entry);
+                    try {
+                        write(List.of(pending));
+                    } catch (DataAccessException e) {
+                        dirty.add(user.getId());
+                        throw e;
+                    }
+                }
+                flushLock.unlock();
+                flushLocked = false;
+
+                entry.ordered = lines(entry);
+                boolean done = false;
+                try {
+                    T result = checkout.get();
+                    done = true;
+                    checkedOutAfterCommit(entry);
+                    return result;
+                } finally {
+                    if (!done) {
+                        entry.ordered = null;
+                    }
+                }
+            }
+        } finally {
+            if (flushLocked) {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void excludeDish(Long dishId) {
+        excludeDishes(Set.of(dishId));
+        new TransactionTemplate(transactionManager)
+                .executeWithoutResult(status -> cartRepository.excludeDishFromTotals(dishId));
+    }
+
+    @Override
+    public void excludeRestaurant(Long restaurantId) {
+        List<Long> dishIds = jdbcTemplate.queryForList(
+                "SELECT id FROM dishes WHERE restaurant_id = ?", Long.class, restaurantId);
+        excludeDishes(Set.copyOf(dishIds));
+        new TransactionTemplate(transactionManager)
+                .executeWithoutResult(status -> cartRepository.excludeRestaurantFromTotals(restaurantId));
+    }
+
+    @Override
+    public void excludeUser(Long userId) {
+        synchronized (lockFor(userId)) {
+            dirty.remove(userId);
+            evict(carts.get(userId));
+        }
+    }
+
+    // ============ ЗАПИСЬ В БД ============
+
+    /**
+     * Записывает изменённые корзины в БД одной транзакцией (по расписанию и при остановке).
+     * Корзины, которые давно не менялись, выгружаются из памяти.
+     */
+    @Scheduled(fixedDelayString = "${cart.store.flush-interval-ms:1000}")
+    @PreDestroy
+    public void flush() {
+        flushLock.lock();
+        try {
+            List<Pending> batch = new ArrayList<>();
+            List<Long> ordering = new ArrayList<>();
+            for (Iterator<Long> iterator = dirty.iterator(); iterator.hasNext(); ) {
+                Long userId = iterator.next();
+                iterator.remove();
+                synchronized (lockFor(userId)) {
+                    Entry entry = carts.get(userId);
+                    if (entry != null && entry.ordered != null) {
+                        ordering.add(userId);
+                    } else if (entry != null) {
+                        batch.add(pending(entry));
+                    }
+                }
+            }
+            // Корзины с незавершённым оформлением ждут следующей записи
+            dirty.addAll(ordering);
+            if (!batch.isEmpty()) {
+                writeOrFallback(batch);
+            }
+            evictIdle();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Если пачка не прошла (например, блюдо удалили), пишем корзины по одной.
+    // Сбойная корзина остаётся в памяти изменённой и повторяется при следующей записи -
+    // кроме корзины удалённого пользователя: её записать уже нельзя, она выгружается
+    private void writeOrFallback(List<Pending> batch) {
+        try {
+            write(batch);
+        } catch (DataAccessException batchFailed) {
+            for (Pending pending : batch) {
+                try {
+                    write(List.of(pending));
+                } catch (DataAccessException e) {
+                    if (orphaned(pending)) {
+                        log.warn("Корзина пользователя {} выгружена: пользователь или корзина удалены из БД",
+                                pending.entry().userId);
+                        synchronized (lockFor(pending.entry().userId)) {
+                            evict(pending.entry());
+                        }
+                        continue;
+                    }
+                    log.warn("Не удалось сохранить корзину пользователя {}, повтор при следующей записи: {}",
+                            pending.entry().userId, e.getMostSpecificCause().getMessage());
+                    dirty.add(pending.entry().userId);
+                }
+            }
+        }
+    }
+
+    // В БД уходят только отличия от записанного: итог, изменённые, новые и убранные позиции.
+    // Записанные позиции обновляются на месте и сохраняют свои id.
+    // Своя транзакция: запись корзины перед оформлением не откатится вместе с пакетом заказов (CheckoutPipeline)
+    private void write(List<Pending> batch) {
+        Map<Entry, Long> createdCarts = new HashMap<>();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transaction.executeWithoutResult(status -> {
+            List<Object[]> totals = new ArrayList<>();
+            List<Object[]> updates = new ArrayList<>();
+            List<Object[]> deletes = new ArrayList<>();
+            List<Object[]> inserts = new ArrayList<>();
+            for (Pending pending : batch) {
+                Long cartId = pending.cartId();
+                if (cartId == null) {
+                    cartId = insertCart(pending.entry().userId, pending.total());
+                    createdCarts.put(pending.entry(), cartId);
+                } else if (pending.total().compareTo(pending.savedTotal()) != 0) {
+                    totals.add(new Object[]{pending.total(), cartId});
+                }
+                for (Map.Entry<Long, Line> item : pending.items().entrySet()) {
+                    Line line = item.getValue();
+                    Line saved = pending.saved().get(item.getKey());
+                    if (saved == null) {
+                        inserts.add(new Object[]{cartId, item.getKey(), line.quantity(), line.price()});
+                    } else if (!line.sameAs(saved)) {
+                        updates.add(new Object[]{line.quantity(), line.price(), cartId, item.getKey()});
+                    }
+                }
+                for (Long dishId : pending.saved().keySet()) {
+                    if (!pending.items().containsKey(dishId)) {
+                        deletes.add(new Object[]{cartId, dishId});
+                    }
+                }
+            }
+            jdbcTemplate.batchUpdate(UPDATE_TOTAL, totals);
+            jdbcTemplate.batchUpdate(DELETE_ITEM, deletes);
+            int[] updated = jdbcTemplate.batchUpdate(UPDATE_ITEM, updates);
+            // Позиции уже нет в БД (например, её удалило оформление заказа) - вставляем заново
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] == 0) {
+                    Object[] update = updates.get(i);
+                    inserts.add(new Object[]{update[2], update[3], update[0], update[1]});
+                }
+            }
+            jdbcTemplate.batchUpdate(INSERT_ITEM, inserts);
+        });
+        // Записанное состояние и id новых корзин запоминаем только после коммита
+        for (Pending pending : batch) {
+            Entry entry = pending.entry();
+            synchronized (lockFor(entry.userId)) {
+                if (createdCarts.containsKey(entry)) {
+                    entry.cartId = createdCarts.get(entry);
+                }
+                entry.saved = pending.items();
+                entry.savedTotal = pending.total();
+            }
+        }
+    }
+
+    // Пользователя или записанной корзины больше нет в БД
+    private boolean orphaned(Pending pending) {
+        try {
+            Integer users = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM users WHERE id = ?", Integer.class, pending.entry().userId);
+            if (users == null || users == 0) {
+                return true;
+            }
+            if (pending.cartId() == null) {
+                return false;
+            }
+            Integer carts = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM carts WHERE id = ?", Integer.class, pending.cartId());
+            return carts == null || carts == 0;
+        } catch (DataAccessException e) {
+            // БД недоступна - это не повод терять корзину
+            return false;
+        }
+    }
+
+    private Long insertCart(Long userId, BigDecimal total) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(INSERT_CART, new String[]{"id"});
+            statement.setLong(1, userId);
+            statement.setBigDecimal(2, total);
+            return statement;
+        }, keyHolder);
+        return keyHolder.getKey().longValue();
+    }
+
+    // ============ ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ============
+
+    private Object lockFor(Long userId) {
+        return locks[Math.floorMod(userId.hashCode(), LOCK_STRIPES)];
+    }
+
+    // Корзина из памяти или из БД (вызывать под блокировкой полосы пользователя)
+    private Entry load(Long userId, String username) {
+        Entry entry = carts.get(userId);
+        if (entry == null) {
+            entry = new Entry(userId, username);
+            Cart cart = cartRepository.findWithItemsByUserId(userId);
+            if (cart != null) {
+                entry.cartId = cart.getId();
+                entry.total = cart.getTotal() == null ? BigDecimal.ZERO : cart.getTotal();
+                for (CartItem cartItem : cart.getCartItems()) {
+                    entry.items.put(cartItem.getDish().getId(), new Item(cartItem.getId(), cartItem.getDish(),
+                            cartItem.getPrice(), cartItem.getQuantity()));
+                }
+                entry.saved = lines(entry);
+                entry.savedTotal = entry.total;
+            }
+            carts.put(userId, entry);
+        }
+        entry.lastAccess = System.currentTimeMillis();
+        return entry;
+    }
+
+    // Позиция по id или по блюду, null - если её нет
+    private static Item findItem(Entry entry, Long cartItemId, Long dishId) {
+        if (cartItemId == null) {
+            return entry.items.get(dishId);
+        }
+        return entry.items.values().stream()
+                .filter(item -> item.id == cartItemId)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private void addItem(Entry entry, Dish dish, int quantity) {
+        Item item = entry.items.get(dish.getId());
+        if (item != null) {
+            item.quantity += quantity;
+        } else {
+            item = new Item(newItemIds.decrementAndGet(), dish, dish.getPrice(), quantity);
+            entry.items.put(dish.getId(), item);
+        }
+        entry.total = entry.total.add(item.price.multiply(BigDecimal.valueOf(quantity)));
+    }
+
+    // Новое количество позиции (0 - удалить)
+    private static void setQuantity(Entry entry, Item item, int quantity) {
+        int delta = quantity - item.quantity;
+        if (quantity == 0) {
+            entry.items.remove(item.dish.getId());
+        } else {
+            item.quantity = quantity;
+        }
+        entry.total = entry.total.add(item.price.multiply(BigDecimal.valueOf(delta)));
+    }
+
+    private void evict(Entry entry) {
+        if (entry != null) {
+            carts.remove(entry.userId, entry);
+        }
+    }
+
+    // Внутри общей транзакции (пакет CheckoutPipeline) заказ зафиксирован только после её коммита;
+    // после отката в БД остаётся корзина, записанная перед оформлением
+    private void checkedOutAfterCommit(Entry entry) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            checkedOut(entry);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (lockFor(entry.userId)) {
+                    if (status == STATUS_COMMITTED) {
+                        checkedOut(entry);
+                    } else {
+                        entry.ordered = null;
+                    }
+                }
+            }
+        });
+    }
+
+    // Заказ зафиксирован, корзина в БД пуста. Из корзины в памяти убираем оформленное;
+    // изменения, сделанные пока шла транзакция, остаются и записываются при следующей записи
+    private void checkedOut(Entry entry) {
+        Map<Long, Line> ordered = entry.ordered;
+        entry.ordered = null;
+        entry.saved = Map.of();
+        entry.savedTotal = BigDecimal.ZERO;
+
+        List<Item> items = new ArrayList<>(entry.items.values());
+        entry.items.clear();
+        entry.total = BigDecimal.ZERO;
+        for (Item item : items) {
+            Line line = ordered.get(item.dish.getId());
+            int quantity = line == null ? item.quantity : item.quantity - line.quantity();
+            if (quantity > 0) {
+                // Строка позиции в БД удалена оформлением - оставшееся количество будет новой позицией
+                Item rest = line == null ? item : new Item(newItemIds.decrementAndGet(), item.dish, item.price, quantity);
+                entry.items.put(item.dish.getId(), rest);
+                entry.total = entry.total.add(rest.price.multiply(BigDecimal.valueOf(quantity)));
+            }
+        }
+        if (!entry.items.isEmpty()) {
+            dirty.add(entry.userId);
+        }
+    }
+
+    private void evictIdle() {
+        long idleSince = System.currentTimeMillis() - idleMinutes * 60_000;
+        for (Entry entry : carts.values()) {
+            // Активные корзины пропускаем без блокировки: полосу может держать идущее оформление
+            if (entry.lastAccess >= idleSince) {
+                continue;
+            }
+            synchronized (lockFor(entry.userId)) {
+                if (entry.lastAccess < idleSince && !dirty.contains(entry.userId) && entry.ordered == null) {
+                    evict(entry);
+                }
+            }
+        }
+    }
+
+    private void excludeDishes(Set<Long> dishIds) {
+        for (Entry entry : carts.values()) {
+            synchronized (lockFor(entry.userId)) {
+                boolean changed = false;
+                for (Long dishId : dishIds) {
+                    Item item = entry.items.remove(dishId);
+                    if (item != null) {
+                        entry.total = entry.total.subtract(item.price.multiply(BigDecimal.valueOf(item.quantity)));
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    dirty.add(entry.userId);
+                }
+            }
+        }
+    }
+
+    // Копия состояния для записи вместе с тем, что уже записано
+    private static Pending pending(Entry entry) {
+        return new Pending(entry, entry.cartId, entry.total, lines(entry), entry.savedTotal, entry.saved);
+    }
+
+    private static Map<Long, Line> lines(Entry entry) {
+        Map<Long, Line> lines = new LinkedHashMap<>();
+        entry.items.forEach((dishId, item) -> lines.put(dishId, new Line(item.quantity, item.price)));
+        return lines;
+    }
+
+    // Корзина для ответа клиенту (не связана с БД)
+    private static Cart toCart(Entry entry) {
+        User user = new User();
+        user.setId(entry.userId);
+        user.setName(entry.username);
+
+        Cart cart = new Cart();
+        cart.setId(entry.cartId);
+        cart.setUser(user);
+        cart.setTotal(entry.total);
+        List<CartItem> cartItems = new ArrayList<>();
+        for (Item item : entry.items.values()) {
+            cartItems.add(new CartItem(item.id, cart, item.dish, item.quantity, item.price, null));
+        }
+        cart.setCartItems(cartItems);
+        return cart;
+    }
+}
@@ -0,0 +1,272 @@
+package course_project.course_project.service;
+
+import course_project.course_project.dto.request.CartOperationDTO;
+import course_project.course_project.model.Cart;
+import course_project.course_project.model.CartItem;
+import course_project.course_project.model.Dish;
+import course_project.course_project.model.User;
+import course_project.course_project.repository.CartItemRepository;
+import course_project.course_project.repository.CartRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Корзины в БД: каждая операция - отдельная транзакция над carts/cart_items.
+ *
+ * Добавление и удаление - атомарные UPDATE количества и итога (quantity = quantity + n), без чтения-записи
+ * всей позиции; пакет PATCH меняет сущности и полагается на @Version. Конфликты параллельных запросов
+ * (изменённая версия, дубль блюда по uk_cart_items_cart_dish, блокировки) повторяются через ConflictRetry.
+ * Строки меняются в одном порядке - сначала позиция, потом корзина.
+ */
+@Service
+@ConditionalOnProperty(name = "cart.store.type", havingValue = "jpa", matchIfMissing = true)
+public class JpaCartStore implements CartStore {
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private ConflictRetry conflictRetry;
+
+    /**
+     * Добавление блюда в корзину (или создание корзины).
+     * Итог корзины меняется на стоимость добавленного в той же транзакции, что и позиция
+     */
+    @Override
+    public Cart add(User user, Dish dish, int quantity) {
+        return conflictRetry.inTransaction(() -> {
+            Long cartId = findOrCreateId(user);
+
+            BigDecimal price = cartItemRepository.findPrice(cartId, dish.getId());
+            if (price != null) {
+                // Увеличиваем количество если блюдо уже есть
+                if (cartItemRepository.incrementQuantity(cartId, dish.getId(), quantity) == 0) {
+                    throw new OptimisticLockingFailureException("Позиция корзины удалена параллельно");
+                }
+            } else {
+                // Добавляем новый элемент если блюда нет
+                price = dish.getPrice();
+                CartItem cartItem = new CartItem();
+                cartItem.setCart(cartRepository.getReferenceById(cartId));
+                cartItem.setDish(dish);
+                cartItem.setQuantity(quantity);
+                cartItem.setPrice(price);
+                insert(() -> cartItemRepository.save(cartItem));
+            }
+            cartRepository.addToTotal(cartId, price.multiply(BigDecimal.valueOf(quantity)));
+            return cartRepository.findWithItemsByUserId(user.getId());
+        });
+    }
+
+    /**
+     * Удаление блюда из корзины пользователя. Возвращает корзину после изменения
+     */
+    @Override
+    public Cart remove(User user, Long cartItemId, int quantity) {
+        return conflictRetry.inTransaction(() -> {
+            Long cartId = cartRepository.findIdByUserId(user.getId());
+
+            // Позиция ищется только в корзине этого пользователя
+            CartItem cartItem = cartId == null ? null : cartItemRepository.findInCart(cartItemId, cartId);
+            if (cartItem == null) {
+                throw new IllegalArgumentException("CartItem не найден");
+            }
+
+            int removed;
+            boolean changed;
+            if (cartItem.getQuantity() > quantity) {
+                removed = quantity;
+                changed = cartItemRepository.decrementQuantity(cartItemId, quantity) == 1;
+            } else {
+                // Удаляем позицию целиком - только ту версию, которую прочитали
+                removed = cartItem.getQuantity();
+                changed = cartItemRepository.deleteVersion(cartItemId, cartItem.getVersion()) == 1;
+            }
+            if (!changed) {
+                throw new OptimisticLockingFailureException("Позиция корзины изменена параллельно");
+            }
+            cartRepository.addToTotal(cartId, cartItem.getPrice().multiply(BigDecimal.valueOf(-removed)));
+            return cartRepository.findWithItemsByUserId(user.getId());
+        });
+    }
+
+    /**
+     * Все операции в одной транзакции: ошибка в любой из них откатывает все.
+     * Позиции проверяются по версии, итог корзины меняется одним атомарным UPDATE на сумму изменений -
+     * пакет конфликтует только с изменениями тех же позиций, а не с любым изменением корзины.
+     * Позиции, дошедшие до нуля, удаляются в конце пакета - повторное добавление того же блюда
+     * в пакете возвращает прежнюю позицию, а не вставляет вторую (uk_cart_items_cart_dish)
+     */
+    @Override
+    public Cart apply(User user, List<CartOperationDTO> operations, Map<Long, Dish> dishes) {
+        return conflictRetry.inTransaction(() -> {
+            Cart cart = findOrCreate(user);
+            BigDecimal delta = BigDecimal.ZERO;
+            for (CartOperationDTO operation : operations) {
+                CartItem cartItem = findItem(cart, operation.getCartItemId(), operation.getDishId());
+                switch (operation.getOp()) {
+                    case CartOperationDTO.ADD -> delta = delta.add(
+                            addItem(cart, dishes.get(operation.getDishId()), operation.getQuantity()));
+                    case CartOperationDTO.REMOVE -> {
+                        if (cartItem == null) {
+                            throw new IllegalArgumentException("CartItem не найден");
+                        }
+                        delta = delta.add(setQuantity(cartItem,
+                                Math.max(0, cartItem.getQuantity() - operation.getQuantity())));
+                    }
+                    case CartOperationDTO.SET -> {
+                        if (cartItem != null) {
+                            delta = delta.add(setQuantity(cartItem, operation.getQuantity()));
+                        } else if (operation.getCartItemId() != null) {
+                            throw new IllegalArgumentException("CartItem не найден");
+                        } else if (operation.getQuantity() > 0) {
+                            delta = delta.add(addItem(cart, dishes.get(operation.getDishId()), operation.getQuantity()));
+                        }
+                    }
+                    default -> throw new IllegalArgumentException("Неизвестная операция: " + operation.getOp());
+                }
+            }
+            // orphanRemoval удалит строки при flush (перед UPDATE итога)
+            cart.getCartItems().removeIf(item -> item.getQuantity() == 0);
+            cartRepository.addToTotal(cart.getId(), delta);
+            return cartRepository.findWithItemsByUserId(user.getId());
+        });
+    }
+
+    // Корзина с позициями и блюдами - один запрос на чтение, без записи
+    @Transactional(readOnly = true)
+    @Override
+    public Cart find(User user) {
+        return cartRepository.findWithItemsByUserId(user.getId());
+    }
+
+    // Позиции с блюдом удалит каскад в БД - итоги корзин правим заранее
+    @Transactional
+    @Override
+    public void excludeDish(Long dishId) {
+        cartRepository.excludeDishFromTotals(dishId);
+    }
+
+    @Transactional
+    @Override
+    public void excludeRestaurant(Long restaurantId) {
+        cartRepository.excludeRestaurantFromTotals(restaurantId);
+    }
+
+    // Корзины живут только в БД - удалять нечего
+    @Override
+    public void excludeUser(Long userId) {
+    }
+
+    // Очистка корзины
+    @Override
+    public void clear(User user) {
+        conflictRetry.inTransaction(() -> {
+            Long cartId = cartRepository.findIdByUserId(user.getId());
+
+            if (cartId != null) {
+                cartItemRepository.deleteAllByCartId(cartId);
+                // После удаления, обновляем total
+                cartRepository.updateTotal(cartId, BigDecimal.ZERO);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public <T> T checkout(User user, Supplier<T> checkout) {
+        return checkout.get();
+    }
+
+    // ============ ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ============
+
+    // Корзина пользователя с позициями (создаётся, если её нет)
+    private Cart findOrCreate(User user) {
+        Cart cart = cartRepository.findWithItemsByUserId(user.getId());
+
+        if (cart == null) {
+            cart = new Cart();
+            cart.setUser(user);
+            cart.setTotal(BigDecimal.ZERO);
+            cart.setCartItems(new ArrayList<>());
+            Cart created = cart;
+            insert(() -> cartRepository.save(created));
+        }
+        return cart;
+    }
+
+    // id корзины пользователя (создаётся, если её нет) - без загрузки позиций
+    private Long findOrCreateId(User user) {
+        Long cartId = cartRepository.findIdByUserId(user.getId());
+        return cartId != null ? cartId : findOrCreate(user).getId();
+    }
+
+    /**
+     * Вставка, которую может опередить параллельный запрос (вторая корзина пользователя, второе то же блюдо):
+     * нарушение уникальности - конфликт, при повторе строка уже будет найдена
+     */
+    private static void insert(Runnable insert) {
+        try {
+            insert.run();
+        } catch (DataIntegrityViolationException e) {
+            throw new ConcurrencyFailureException("Строка уже добавлена параллельным запросом", e);
+        }
+    }
+
+    // Позиция по id или по блюду (позиции уже загружены), null - если её нет или она удалена в этом пакете
+    private static CartItem findItem(Cart cart, Long cartItemId, Long dishId) {
+        CartItem cartItem = findAny(cart, cartItemId, dishId);
+        return cartItem == null || cartItem.getQuantity() == 0 ? null : cartItem;
+    }
+
+    private static CartItem findAny(Cart cart, Long cartItemId, Long dishId) {
+        return cart.getCartItems().stream()
+                .filter(item -> cartItemId != null
+                        ? item.getId().equals(cartItemId)
+                        : item.getDish().getId().equals(dishId))
+                .findFirst()
+                .orElse(null);
+    }
+
+    // Добавление в позицию (или новая позиция); возвращает изменение итога
+    private BigDecimal addItem(Cart cart, Dish dish, int quantity) {
+        CartItem cartItem = findAny(cart, null, dish.getId());
+
+        if (cartItem != null) {
+            // Увеличиваем количество если блюдо уже есть
+            cartItem.setQuantity(cartItem.getQuantity() + quantity);
+        } else {
+            // Добавляем новый элемент если блюда нет
+            CartItem newItem = new CartItem();
+            newItem.setCart(cart);
+            newItem.setDish(dish);
+            newItem.setQuantity(quantity);
+            newItem.setPrice(dish.getPrice());
+            insert(() -> cartItemRepository.save(newItem));
+            cart.getCartItems().add(newItem);
+            cartItem = newItem;
+        }
+        return cartItem.getPrice().multiply(BigDecimal.valueOf(quantity));
+    }
+
+    // Новое количество позиции (0 - удалить в конце пакета); возвращает изменение итога
+    private static BigDecimal setQuantity(CartItem cartItem, int quantity) {
+        int delta = quantity - cartItem.getQuantity();
+        cartItem.setQuantity(quantity);
+        return cartItem.getPrice().multiply(BigDecimal.valueOf(delta));
+    }
+}
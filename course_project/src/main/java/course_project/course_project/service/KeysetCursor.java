@@ -0,0 +1,45 @@
+package course_project.course_project.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Непрозрачный курсор для keyset-пагинации.
+ * Внутри - название сортировки и значения ключей последней отданной записи, закодированные в base64url.
+ */
+public final class KeysetCursor {
+
+    private static final String SEPARATOR = "\u001F";
+
+    private KeysetCursor() {
+    }
+
+    public static String encode(String sort, Object... keys) {
+        StringBuilder raw = new StringBuilder(sort);
+        for (Object key : keys) {
+            raw.append(SEPARATOR).append(key);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Разбирает курсор и проверяет, что он выдан для той же сортировки
+     *
+     * @return значения ключей (без названия сортировки)
+     * @throws IllegalArgumentException если курсор повреждён или от другой сортировки
+     */
+    public static String[] decode(String cursor, String sort, int keyCount) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(SEPARATOR, -1);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Некорректный курсор");
+        }
+        if (parts.length != keyCount + 1 || !parts[0].equals(sort)) {
+            throw new IllegalArgumentException("Курсор не подходит для сортировки " + sort);
+        }
+        String[] keys = new String[keyCount];
+        System.arraycopy(parts, 1, keys, 0, keyCount);
+        return keys;
+    }
+}
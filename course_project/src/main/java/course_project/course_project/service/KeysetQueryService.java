@@ -0,0 +1,143 @@
+package course_project.course_project.service;
+
+import course_project.course_project.dto.OrderDTO;
+import course_project.course_project.model.Order;
+import course_project.course_project.model.OrderStatus;
+import course_project.course_project.model.User;
+import course_project.course_project.repository.OrderRepository;
+import course_project.course_project.repository.UserRepository;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Keyset-пагинация списков из БД (заказы, пользователи).
+ * Вместо OFFSET страница продолжается с ключа последней записи, поэтому запрос идёт по индексу
+ * и не зависит от того, насколько далеко пролистан список.
+ * Старые заказы лежат в архиве (OrderArchiveService) - история дочитывает его, только когда до него дошла.
+ */
+@Service
+public class KeysetQueryService {
+
+    public static final String NEWEST = "newest";
+    public static final String OLDEST = "oldest";
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private OrderArchiveService orderArchiveService;
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    /**
+     * Страница заказов, фильтры необязательные
+     *
+     * @param sort newest (по умолчанию, новые сверху) или oldest
+     */
+    public KeysetPage<OrderDTO> findOrders(Long userId, OrderStatus status, String sort, String cursor, Integer limit) {
+        String order = sort == null ? NEWEST : sort;
+        boolean newest = switch (order) {
+            case NEWEST -> true;
+            case OLDEST -> false;
+            default -> throw new IllegalArgumentException("Неизвестная сортировка: " + sort);
+        };
+        int size = KeysetPage.limit(limit);
+        String[] after = cursor == null ? null : KeysetCursor.decode(cursor, order, 2);
+        LocalDateTime afterTime = after == null ? null : LocalDateTime.parse(after[0]);
+        Long afterId = after == null ? null : Long.valueOf(after[1]);
+
+        Specification<Order> specification = (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (userId != null) {
+                predicates.add(cb.equal(root.get("user").get("id"), userId));
+            }
+            if (status != null) {
+                predicates.add(cb.equal(root.get("status"), status));
+            }
+            if (after != null) {
+                // (order_time, id) строго после курсора в выбранном направлении
+                predicates.add(newest
+                        ? cb.or(cb.lessThan(root.get("orderTime"), afterTime),
+                                cb.and(cb.equal(root.get("orderTime"), afterTime), cb.lessThan(root.get("id"), afterId)))
+                        : cb.or(cb.greaterThan(root.get("orderTime"), afterTime),
+                                cb.and(cb.equal(root.get("orderTime"), afterTime), cb.greaterThan(root.get("id"), afterId))));
+            }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+        Sort.Direction direction = newest ? Sort.Direction.DESC : Sort.Direction.ASC;
+        Sort orderBy = Sort.by(direction, "orderTime").and(Sort.by(direction, "id"));
+
+        List<Order> hot = orderRepository.findBy(specification, q -> q.sortBy(orderBy).limit(size + 1).all());
+        List<OrderDTO> rows = orderMapper.toDTOs(hot);
+
+        if (reachesArchive(status, newest, afterTime, rows, size)) {
+            // Страница заходит в диапазон архива: дочитываем архив и сливаем по (order_time, id)
+            Comparator<OrderDTO> byKey = Comparator.comparing(OrderDTO::getOrderTime).thenComparing(OrderDTO::getOrderId);
+            List<OrderDTO> merged = new ArrayList<>(rows);
+            Set<Long> hotIds = rows.stream().map(OrderDTO::getOrderId).collect(Collectors.toSet());
+            // Заказ, перенесённый между двумя запросами, может попасть в оба
+            orderArchiveService.findOrders(userId, status, newest, afterTime, afterId, size + 1).stream()
+                    .filter(archived -> !hotIds.contains(archived.getOrderId()))
+                    .forEach(merged::add);
+            merged.sort(newest ? byKey.reversed() : byKey);
+            rows = merged.subList(0, Math.min(merged.size(), size + 1));
+        }
+        return KeysetPage.of(rows, size, last -> KeysetCursor.encode(order, last.getOrderTime(), last.getOrderId()));
+    }
+
+    /**
+     * Страница пользователей
+     *
+     * @param sort id (по умолчанию) или name
+     */
+    public KeysetPage<User> findUsers(String sort, String cursor, Integer limit) {
+        String order = sort == null ? "id" : sort;
+        if (!order.equals("id") && !order.equals("name")) {
+            throw new IllegalArgumentException("Неизвестная сортировка: " + sort);
+        }
+        int size = KeysetPage.limit(limit);
+        // имя пользователя уникально, поэтому одного ключа достаточно
+        String[] after = cursor == null ? null : KeysetCursor.decode(cursor, order, 1);
+
+        Specification<User> specification = (root, query, cb) -> {
+            if (after == null) {
+                return cb.conjunction();
+            }
+            return order.equals("id")
+                    ? cb.greaterThan(root.get("id"), Long.valueOf(after[0]))
+                    : cb.greaterThan(root.get("name"), after[0]);
+        };
+
+        List<User> rows = userRepository.findBy(specification, q -> q.sortBy(Sort.by(order)).limit(size + 1).all());
+        return KeysetPage.of(rows, size, last -> KeysetCursor.encode(order,
+                order.equals("id") ? last.getId() : last.getName()));
+    }
+
+    // Архив нужен, только если в нём есть заказы, которые могут попасть на эту страницу
+    private boolean reachesArchive(OrderStatus status, boolean newest, LocalDateTime afterTime,
+                                   List<OrderDTO> rows, int size) {
+        LocalDateTime newestArchived = orderArchiveService.getNewestArchived();
+        if (newestArchived == null || status == OrderStatus.PENDING) {
+            return false;
+        }
+        if (newest) {
+            // Полная страница, целиком новее архива, - архив не нужен
+            return rows.size() <= size || !rows.get(size - 1).getOrderTime().isAfter(newestArchived);
+        }
+        return afterTime == null || !afterTime.isAfter(newestArchived);
+    }
+}
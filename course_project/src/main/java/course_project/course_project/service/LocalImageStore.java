@@ -0,0 +1,130 @@
+package course_project.course_project.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.regex.Pattern;
+
+/**
+ * Хранение на локальном диске с раскладкой по подпапкам из начала имени:
+ * 9f86d08...e3.jpg -> uploads/9f/86/9f86d08...e3.jpg. В одной папке остаётся немного файлов,
+ * а все копии одной картинки лежат рядом.
+ * Файлы, загруженные до раскладки (прямо в uploads/), по-прежнему находятся и удаляются.
+ */
+@Service
+@ConditionalOnProperty(name = "images.storage.type", havingValue = "local", matchIfMissing = true)
+public class LocalImageStore implements ImageStore {
+
+    private static final Pattern SHARDED_NAME = Pattern.compile("[0-9a-z]{4}.*");
+
+    private final Path root;
+
+    public LocalImageStore(@Value("${file.upload-dir:uploads}") String uploadDir) {
+        this.root = Paths.get(uploadDir);
+    }
+
+    @Override
+    public StoredImage find(String name) throws IOException {
+        Path file = locate(name);
+        if (file == null) {
+            return null;
+        }
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return new StoredImage(attributes.size(), attributes.lastModifiedTime().toMillis(), file);
+    }
+
+    @Override
+    public void put(String name, Path source, String contentType) throws IOException {
+        Path target = shardedPath(name);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // Такой файл уже есть - содержимое то же самое
+        }
+    }
+
+    @Override
+    public void delete(String name) throws IOException {
+        Files.deleteIfExists(shardedPath(name));
+        Files.deleteIfExists(root.resolve(name));
+    }
+
+    @Override
+    public InputStream open(String name, long start, long end) throws IOException {
+        Path file = locate(name);
+        if (file == null) {
+            throw new NoSuchFileException(name);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        channel.position(start);
+        return new RangeInputStream(Channels.newInputStream(channel), end - start);
+    }
+
+    // ============ ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ============
+
+    // Сначала по новой раскладке, потом в общей папке (старые файлы)
+    private Path locate(String name) {
+        Path sharded = shardedPath(name);
+        if (Files.isRegularFile(sharded)) {
+            return sharded;
+        }
+        Path flat = root.resolve(name);
+        return Files.isRegularFile(flat) ? flat : null;
+    }
+
+    private Path shardedPath(String name) {
+        if (!SHARDED_NAME.matcher(name).matches()) {
+            return root.resolve(name);
+        }
+        return root.resolve(name.substring(0, 2)).resolve(name.substring(2, 4)).resolve(name);
+    }
+
+    // Поток, который отдаёт не больше remaining байт
+    private static final class RangeInputStream extends FilterInputStream {
+        private long remaining;
+
+        RangeInputStream(InputStream in, long remaining) {
+            super(in);
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(buffer, offset, (int) Math.min(length, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+}
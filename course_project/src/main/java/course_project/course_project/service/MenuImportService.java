@@ -0,0 +1,285 @@
+package course_project.course_project.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import course_project.course_project.dto.response.ImportErrorDTO;
+import course_project.course_project.dto.response.ImportResultDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Массовый импорт ресторанов и блюд из CSV или NDJSON.
+ *
+ * Файл читается потоково, строки проверяются и пишутся пачками через JDBC batch,
+ * поэтому память не зависит от размера файла (кроме словаря "название ресторана -> id").
+ * Колонки: type (restaurant | dish), restaurant (для блюд - название ресторана),
+ * name, address, phone, description, price, weight, url.
+ */
+@Service
+public class MenuImportService {
+
+    // Размер пачки для JDBC batch
+    private static final int BATCH_SIZE = 500;
+    // Сколько ошибок возвращаем в ответе (остальные только считаем)
+    private static final int MAX_ERRORS = 1000;
+
+    private static final String INSERT_RESTAURANT =
+            "INSERT INTO restaurants (name, url, address, phone, description) VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_DISH =
+            "INSERT INTO dishes (restaurant_id, name, description, price, weight, url) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final BigDecimal MAX_PRICE = new BigDecimal("99999999.99");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private CatalogService catalogService;
+
+    public ImportResultDTO importMenu(InputStream body, MediaType contentType) throws IOException {
+        Charset charset = contentType.getCharset() != null ? contentType.getCharset() : StandardCharsets.UTF_8;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, charset), 64 * 1024);
+        ImportRecordReader records = MediaType.APPLICATION_NDJSON.isCompatibleWith(contentType)
+                ? ImportRecordReader.ndjson(reader, objectMapper)
+                : ImportRecordReader.csv(reader);
+
+        Run run = new Run();
+        try {
+            ImportRecordReader.Record record;
+            while ((record = records.next()) != null) {
+                if (record.error() != null) {
+                    run.fail(record.line(), record.error());
+                    continue;
+                }
+                String type = record.fields().get("type");
+                if ("restaurant".equalsIgnoreCase(type)) {
+                    run.restaurant(record);
+                } else if ("dish".equalsIgnoreCase(type)) {
+                    run.dish(record);
+                } else {
+                    run.fail(record.line(), "Неизвестный тип записи: " + type + " (ожидается restaurant или dish)");
+                }
+            }
+            run.flushRestaurants();
+            run.flushDishes();
+        } finally {
+            // Каталог пересобираем один раз на весь импорт, а не на каждую строку.
+            // Пачки коммитятся по отдельности: при обрыве чтения записанное уже в БД и должно попасть в каталог
+            if (run.restaurantsImported + run.dishesImported > 0) {
+                catalogService.reload();
+            }
+        }
+        // Ошибки пачек, повторённых построчно, приходят позже ошибок проверки
+        run.errors.sort(Comparator.comparingLong(ImportErrorDTO::getLine));
+        return new ImportResultDTO(run.restaurantsImported, run.dishesImported, run.failedRows,
+                run.errors, run.failedRows > run.errors.size());
+    }
+
+    // ============ ОДИН ПРОГОН ИМПОРТА ============
+
+    private record Row(long line, Object[] args) {
+    }
+
+    private final class Run {
+        final Map<String, Long> restaurantIds = new HashMap<>();
+        // Рестораны текущей пачки, ещё не записанные в БД
+        final Map<String, Row> pendingRestaurants = new HashMap<>();
+        final List<Row> pendingDishes = new ArrayList<>(BATCH_SIZE);
+        final List<ImportErrorDTO> errors = new ArrayList<>();
+        long restaurantsImported;
+        long dishesImported;
+        long failedRows;
+
+        Run() {
+            catalogService.getRestaurants().forEach(r -> restaurantIds.put(r.getName(), r.getId()));
+        }
+
+        void restaurant(ImportRecordReader.Record record) {
+            Map<String, String> fields = record.fields();
+            try {
+                String name = required(fields, "name", 255);
+                String url = required(fields, "url", 255);
+                String address = required(fields, "address", 255);
+                String phone = optional(fields, "phone", 20);
+                String description = optional(fields, "description", 255);
+                if (restaurantIds.containsKey(name) || pendingRestaurants.containsKey(name)) {
+                    throw new IllegalArgumentException("Ресторан \"" + name + "\" уже существует");
+                }
+                pendingRestaurants.put(name, new Row(record.line(), new Object[]{name, url, address, phone, description}));
+            } catch (IllegalArgumentException e) {
+                fail(record.line(), e.getMessage());
+                return;
+            }
+            if (pendingRestaurants.size() >= BATCH_SIZE) {
+                flushRestaurants();
+            }
+        }
+
+        void dish(ImportRecordReader.Record record) {
+            Map<String, String> fields = record.fields();
+            try {
+                String restaurant = required(fields, "restaurant", 255);
+                String name = required(fields, "name", 255);
+                String description = required(fields, "description", 500);
+                BigDecimal price = price(fields.get("price"));
+                int weight = weight(fields.get("weight"));
+                String url = required(fields, "url", 255);
+
+                // Ресторан из этого же файла должен попасть в БД раньше своих блюд
+                if (pendingRestaurants.containsKey(restaurant)) {
+                    flushRestaurants();
+                }
+                Long restaurantId = restaurantIds.get(restaurant);
+                if (restaurantId == null) {
+                    throw new IllegalArgumentException("Ресторан \"" + restaurant + "\" не найден");
+                }
+                pendingDishes.add(new Row(record.line(), new Object[]{restaurantId, name, description, price, weight, url}));
+            } catch (IllegalArgumentException e) {
+                fail(record.line(), e.getMessage());
+                return;
+            }
+            if (pendingDishes.size() >= BATCH_SIZE) {
+                flushDishes();
+            }
+        }
+
+        void flushRestaurants() {
+            if (pendingRestaurants.isEmpty()) {
+                return;
+            }
+            List<Row> rows = new ArrayList<>(pendingRestaurants.values());
+            rows.sort((a, b) -> Long.compare(a.line(), b.line()));
+            restaurantsImported += write(INSERT_RESTAURANT, rows);
+
+            // id новых ресторанов - одним запросом по уникальному названию
+            List<String> names = new ArrayList<>(pendingRestaurants.keySet());
+            String placeholders = String.join(", ", Collections.nCopies(names.size(), "?"));
+            jdbcTemplate.query("SELECT id, name FROM restaurants WHERE name IN (" + placeholders + ")",
+                    (RowCallbackHandler) rs -> restaurantIds.put(rs.getString("name"), rs.getLong("id")),
+                    names.toArray());
+            pendingRestaurants.clear();
+        }
+
+        void flushDishes() {
+            if (pendingDishes.isEmpty()) {
+                return;
+            }
+            dishesImported += write(INSERT_DISH, pendingDishes);
+            pendingDishes.clear();
+        }
+
+        /**
+         * Пишет пачку одним JDBC batch в отдельной транзакции.
+         * Если пачка не прошла (например, дубль url), повторяет её построчно, чтобы найти плохие строки.
+         *
+         * @return сколько строк записано
+         */
+        int write(String sql, List<Row> rows) {
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            try {
+                transaction.executeWithoutResult(status ->
+                        jdbcTemplate.batchUpdate(sql, rows.stream().map(Row::args).toList()));
+                return rows.size();
+            } catch (DataAccessException batchFailed) {
+                int written = 0;
+                for (Row row : rows) {
+                    try {
+                        transaction.executeWithoutResult(status -> jdbcTemplate.update(sql, row.args()));
+                        written++;
+                    } catch (DuplicateKeyException e) {
+                        fail(row.line(), "Запись с таким названием уже существует");
+                    } catch (DataAccessException e) {
+                        fail(row.line(), "Ошибка записи в БД: " + e.getMostSpecificCause().getMessage());
+                    }
+                }
+                return written;
+            }
+        }
+
+        void fail(long line, String message) {
+            failedRows++;
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(new ImportErrorDTO(line, message));
+            }
+        }
+    }
+
+    // ============ ПРОВЕРКА ПОЛЕЙ ============
+
+    private static String required(Map<String, String> fields, String name, int maxLength) {
+        String value = fields.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Не заполнено поле " + name);
+        }
+        return checkLength(name, value, maxLength);
+    }
+
+    private static String optional(Map<String, String> fields, String name, int maxLength) {
+        String value = fields.get(name);
+        return value == null ? null : checkLength(name, value, maxLength);
+    }
+
+    private static String checkLength(String name, String value, int maxLength) {
+        if (value.length() > maxLength) {
+            throw new IllegalArgumentException("Поле " + name + " длиннее " + maxLength + " символов");
+        }
+        return value;
+    }
+
+    private static BigDecimal price(String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Не заполнено поле price");
+        }
+        BigDecimal price;
+        try {
+            price = new BigDecimal(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Некорректная цена: " + value);
+        }
+        if (price.signum() < 0 || price.compareTo(MAX_PRICE) > 0 || price.stripTrailingZeros().scale() > 2) {
+            throw new IllegalArgumentException("Некорректная цена: " + value);
+        }
+        return price;
+    }
+
+    private static int weight(String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Не заполнено поле weight");
+        }
+        try {
+            int weight = Integer.parseInt(value);
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Вес должен быть больше нуля: " + value);
+            }
+            return weight;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Некорректный вес: " + value);
+        }
+    }
+}
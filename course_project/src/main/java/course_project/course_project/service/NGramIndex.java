@@ -0,0 +1,315 @@
+package course_project.course_project.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Инвертированный триграммный индекс по названию и описанию.
+ * Заменяет запросы вида ILIKE '%term%', которые не может обслужить ни один B-tree индекс.
+ *
+ * Основная часть индекса (сегмент) неизменяема и хранит posting-списки как отсортированные int[].
+ * Правки из админки складываются в небольшой оверлей (изменённые и удалённые документы),
+ * который при переполнении сливается в новый сегмент. Читатели работают без блокировок.
+ */
+public final class NGramIndex {
+
+    private static final int GRAM = 3;
+    // После стольких правок оверлей сливается с основным сегментом
+    private static final int MAX_PENDING = 512;
+
+    /** Индексируемый документ: блюдо или ресторан. group - id ресторана (для блюд) */
+    public record Doc(long id, Long group, String name, String description) {
+    }
+
+    private volatile State state = new State(Segment.build(Collections.emptyList()), Map.of(), Set.of());
+
+    // Полная перестройка индекса
+    public synchronized void rebuild(Collection<Doc> docs) {
+        state = new State(Segment.build(docs), Map.of(), Set.of());
+    }
+
+    // Добавление или обновление документа
+    public synchronized void put(Doc doc) {
+        State current = state;
+        Map<Long, Prepared> pending = new HashMap<>(current.pending);
+        pending.put(doc.id(), new Prepared(doc));
+        Set<Long> deleted = new HashSet<>(current.deleted);
+        deleted.remove(doc.id());
+        publish(current.segment, pending, deleted);
+    }
+
+    public synchronized void remove(long id) {
+        State current = state;
+        Map<Long, Prepared> pending = new HashMap<>(current.pending);
+        pending.remove(id);
+        Set<Long> deleted = new HashSet<>(current.deleted);
+        deleted.add(id);
+        publish(current.segment, pending, deleted);
+    }
+
+    // Удаление всех документов группы (например, блюд удалённого ресторана)
+    public synchronized void removeGroup(long group) {
+        State current = state;
+        Map<Long, Prepared> pending = new HashMap<>(current.pending);
+        Set<Long> deleted = new HashSet<>(current.deleted);
+        pending.values().removeIf(doc -> doc.doc.group() != null && doc.doc.group() == group);
+        for (Prepared doc : current.segment.docs) {
+            if (doc.doc.group() != null && doc.doc.group() == group) {
+                deleted.add(doc.doc.id());
+            }
+        }
+        publish(current.segment, pending, deleted);
+    }
+
+    /**
+     * Поиск с ранжированием по релевантности.
+     * Каждое слово запроса должно встречаться (как подстрока) в названии или описании.
+     *
+     * @param query строка поиска
+     * @param group если не null - искать только в этой группе (в меню ресторана)
+     * @return id документов, от более релевантных к менее
+     */
+    public List<Long> search(String query, Long group) {
+        String[] tokens = tokenize(query);
+        if (tokens.length == 0) {
+            return Collections.emptyList();
+        }
+        String exact = normalize(query);
+        State current = state;
+        List<Hit> hits = new ArrayList<>();
+
+        // Основной сегмент: кандидаты по триграммам, затем точная проверка
+        int[] candidates = current.segment.candidates(tokens);
+        if (candidates == null) {
+            // все слова короче триграммы - проверяем документы напрямую
+            for (Prepared doc : current.segment.docs) {
+                collect(current, doc, tokens, group, exact, hits);
+            }
+        } else {
+            for (int ordinal : candidates) {
+                collect(current, current.segment.docs[ordinal], tokens, group, exact, hits);
+            }
+        }
+
+        // Оверлей небольшой, его просто просматриваем
+        for (Prepared doc : current.pending.values()) {
+            if (matchesGroup(doc, group)) {
+                score(doc, tokens, exact, hits);
+            }
+        }
+
+        hits.sort(Comparator.comparingDouble(Hit::score).reversed()
+                .thenComparingInt(hit -> hit.doc.name.length())
+                .thenComparingLong(hit -> hit.doc.doc.id()));
+        List<Long> ids = new ArrayList<>(hits.size());
+        hits.forEach(hit -> ids.add(hit.doc.doc.id()));
+        return ids;
+    }
+
+    // ============ ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ============
+
+    private void publish(Segment segment, Map<Long, Prepared> pending, Set<Long> deleted) {
+        if (pending.size() + deleted.size() > MAX_PENDING) {
+            List<Doc> merged = new ArrayList<>();
+            for (Prepared doc : segment.docs) {
+                if (!pending.containsKey(doc.doc.id()) && !deleted.contains(doc.doc.id())) {
+                    merged.add(doc.doc);
+                }
+            }
+            pending.values().forEach(doc -> merged.add(doc.doc));
+            state = new State(Segment.build(merged), Map.of(), Set.of());
+        } else {
+            state = new State(segment, Collections.unmodifiableMap(pending), Collections.unmodifiableSet(deleted));
+        }
+    }
+
+    private static void collect(State state, Prepared doc, String[] tokens, Long group, String exact, List<Hit> hits) {
+        long id = doc.doc.id();
+        if (state.pending.containsKey(id) || state.deleted.contains(id) || !matchesGroup(doc, group)) {
+            return;
+        }
+        score(doc, tokens, exact, hits);
+    }
+
+    private static boolean matchesGroup(Prepared doc, Long group) {
+        return group == null || group.equals(doc.doc.group());
+    }
+
+    // Оценка: совпадение в начале названия > в начале слова > внутри названия > в описании
+    private static void score(Prepared doc, String[] tokens, String exact, List<Hit> hits) {
+        double score = 0;
+        for (String token : tokens) {
+            if (doc.name.startsWith(token)) {
+                score += 4;
+            } else if (doc.name.contains(" " + token)) {
+                score += 3;
+            } else if (doc.name.contains(token)) {
+                score += 2;
+            } else if (doc.description.contains(token)) {
+                score += 0.5;
+            } else {
+                return;
+            }
+        }
+        if (doc.name.equals(exact)) {
+            score += 10;
+        }
+        hits.add(new Hit(doc, score));
+    }
+
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean space = true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if (c == 'ё') {
+                c = 'е';
+            }
+            if (Character.isLetterOrDigit(c)) {
+                normalized.append(c);
+                space = false;
+            } else if (!space) {
+                normalized.append(' ');
+                space = true;
+            }
+        }
+        int length = normalized.length();
+        if (length > 0 && normalized.charAt(length - 1) == ' ') {
+            normalized.setLength(length - 1);
+        }
+        return normalized.toString();
+    }
+
+    static String[] tokenize(String query) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            return new String[0];
+        }
+        return new LinkedHashSet<>(Arrays.asList(normalized.split(" "))).toArray(new String[0]);
+    }
+
+    private static void addGrams(String text, Set<String> grams) {
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM));
+        }
+    }
+
+    // ============ ВНУТРЕННИЕ СТРУКТУРЫ ============
+
+    private record Hit(Prepared doc, double score) {
+    }
+
+    // Документ с заранее нормализованным текстом
+    private static final class Prepared {
+        final Doc doc;
+        final String name;
+        final String description;
+
+        Prepared(Doc doc) {
+            this.doc = doc;
+            this.name = normalize(doc.name());
+            this.description = normalize(doc.description());
+        }
+    }
+
+    private record State(Segment segment, Map<Long, Prepared> pending, Set<Long> deleted) {
+    }
+
+    private static final class Segment {
+        final Prepared[] docs;
+        final Map<String, int[]> postings;
+
+        private Segment(Prepared[] docs, Map<String, int[]> postings) {
+            this.docs = docs;
+            this.postings = postings;
+        }
+
+        static Segment build(Collection<Doc> source) {
+            Prepared[] docs = source.stream().map(Prepared::new).toArray(Prepared[]::new);
+            Map<String, IntList> lists = new HashMap<>();
+            Set<String> grams = new HashSet<>();
+            for (int ordinal = 0; ordinal < docs.length; ordinal++) {
+                grams.clear();
+                addGrams(docs[ordinal].name, grams);
+                addGrams(docs[ordinal].description, grams);
+                // ordinal растёт, поэтому posting-списки получаются отсортированными
+                for (String gram : grams) {
+                    lists.computeIfAbsent(gram, g -> new IntList()).add(ordinal);
+                }
+            }
+            Map<String, int[]> postings = new HashMap<>(lists.size() * 2);
+            lists.forEach((gram, list) -> postings.put(gram, list.toArray()));
+            return new Segment(docs, postings);
+        }
+
+        // Пересечение posting-списков всех триграмм запроса; null - триграмм нет
+        int[] candidates(String[] tokens) {
+            List<int[]> lists = new ArrayList<>();
+            Set<String> grams = new HashSet<>();
+            for (String token : tokens) {
+                addGrams(token, grams);
+            }
+            if (grams.isEmpty()) {
+                return null;
+            }
+            for (String gram : grams) {
+                int[] list = postings.get(gram);
+                if (list == null) {
+                    return new int[0];
+                }
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(list -> list.length));
+            int[] result = lists.get(0);
+            for (int i = 1; i < lists.size() && result.length > 0; i++) {
+                result = intersect(result, lists.get(i));
+            }
+            return result;
+        }
+
+        private static int[] intersect(int[] a, int[] b) {
+            int[] out = new int[Math.min(a.length, b.length)];
+            int i = 0, j = 0, n = 0;
+            while (i < a.length && j < b.length) {
+                if (a[i] < b[j]) {
+                    i++;
+                } else if (a[i] > b[j]) {
+                    j++;
+                } else {
+                    out[n++] = a[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(out, n);
+        }
+    }
+
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package course_project.course_project.service;
+
+import course_project.course_project.dto.OrderDTO;
+import course_project.course_project.dto.OrderItemDTO;
+import course_project.course_project.model.OrderStatus;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Архив заказов: выполненные и отменённые заказы старше orders.archive.after-days переносятся
+ * из orders/order_items в orders_archive/order_items_archive.
+ *
+ * Перенос идёт пакетами по batch-size заказов, каждый пакет - своя короткая транзакция: блокируются
+ * только строки пакета. За один запуск переносится не больше max-batches пакетов, остальное - в следующий.
+ * Архив только для чтения: история заказов дочитывает его, когда пролистана дальше оперативных заказов
+ * (KeysetQueryService), заказ по id ищется в архиве, если его уже нет в orders.
+ *
+ * В Postgres (orders.archive.partitioned) архив секционирован по order_time: секции по месяцам
+ * создаются перед переносом, схема - db/postgres/orders-archive.sql.
+ */
+@Service
+public class OrderArchiveService {
+
+    private static final String ARCHIVED_STATUSES = "status IN ('COMPLETED', 'CANCELLED')";
+
+    private static final String SELECT_BATCH =
+            "SELECT id, order_time FROM orders WHERE " + ARCHIVED_STATUSES + " AND order_time < ? " +
+            "ORDER BY order_time, id LIMIT ? FOR UPDATE";
+
+    private static final String COPY_ORDERS =
+            "INSERT INTO orders_archive (id, user_id, order_time, update_time, status, total) " +
+            "SELECT id, user_id, order_time, update_time, status, total FROM orders WHERE id IN ";
+
+    private static final String COPY_ITEMS =
+            "INSERT INTO order_items_archive " +
+            "(id, order_id, order_time, dish_id, dish_name, dish_url, quantity, price_at_order) " +
+            "SELECT i.id, i.order_id, o.order_time, i.dish_id, i.dish_name, i.dish_url, i.quantity, i.price_at_order " +
+            "FROM order_items i JOIN orders o ON o.id = i.order_id WHERE i.order_id IN ";
+
+    private static final String ORDER_COLUMNS = "SELECT id, user_id, order_time, status, total FROM orders_archive ";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${orders.archive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${orders.archive.after-days:90}")
+    private long afterDays;
+
+    @Value("${orders.archive.batch-size:500}")
+    private int batchSize;
+
+    @Value("${orders.archive.max-batches:20}")
+    private int maxBatches;
+
+    @Value("${orders.archive.partitioned:false}")
+    private boolean partitioned;
+
+    // Время самого нового архивного заказа (null - архив пуст): более новые заказы в архиве искать не нужно
+    private volatile LocalDateTime newestArchived;
+
+    // Месяцы, секции которых уже созданы (только для секционированного архива)
+    private final Set<YearMonth> partitions = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        refreshNewestArchived();
+    }
+
+    public LocalDateTime getNewestArchived() {
+        return newestArchived;
+    }
+
+    /**
+     * Перенос старых заказов в архив. Возвращает число перенесённых заказов
+     */
+    @Scheduled(fixedDelayString = "${orders.archive.interval-ms:600000}",
+            initialDelayString = "${orders.archive.interval-ms:600000}")
+    public int archive() {
+        // Архив могли пополнить другие экземпляры приложения
+        refreshNewestArchived();
+        if (!enabled) {
+            return 0;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(afterDays);
+        int total = 0;
+        try {
+            if (partitioned) {
+                createPartitions(cutoff);
+            }
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            for (int batch = 0; batch < maxBatches; batch++) {
+                Integer moved = transaction.execute(status -> archiveBatch(cutoff));
+                total += moved == null ? 0 : moved;
+                if (moved == null || moved < batchSize) {
+                    break;
+                }
+            }
+        } catch (DataAccessException e) {
+            // Незавершённый пакет откатился целиком, перенос продолжится при следующем запуске
+            System.err.println("Ошибка архивации заказов: " + e.getMessage());
+        }
+        return total;
+    }
+
+    /**
+     * Страница архивных заказов в порядке истории (курсор - время и id последнего заказа прошлой страницы)
+     */
+    public List<OrderDTO> findOrders(Long userId, OrderStatus status, boolean newest,
+                                     LocalDateTime afterTime, Long afterId, int limit) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        if (userId != null) {
+            conditions.add("user_id = ?");
+            args.add(userId);
+        }
+        if (status != null) {
+            conditions.add("status = ?");
+            args.add(status.name());
+        }
+        if (afterTime != null) {
+            String sign = newest ? "<" : ">";
+            conditions.add("(order_time " + sign + " ? OR (order_time = ? AND id " + sign + " ?))");
+            args.add(Timestamp.valueOf(afterTime));
+            args.add(Timestamp.valueOf(afterTime));
+            args.add(afterId);
+        }
+        String direction = newest ? "DESC" : "ASC";
+        String sql = ORDER_COLUMNS + (conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions)) +
+                " ORDER BY order_time " + direction + ", id " + direction + " LIMIT ?";
+        args.add(limit);
+        return withItems(jdbcTemplate.query(sql, (rs, rowNum) -> toDTO(rs), args.toArray()));
+    }
+
+    // Архивный заказ по id или null
+    public OrderDTO findOrder(Long orderId) {
+        List<OrderDTO> orders = withItems(jdbcTemplate.query(ORDER_COLUMNS + "WHERE id = ?",
+                (rs, rowNum) -> toDTO(rs), orderId));
+        return orders.isEmpty() ? null : orders.get(0);
+    }
+
+    // Картинка нужна архивному заказу - файл удалять нельзя
+    public boolean usesImage(String imageUrl) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) > 0 FROM order_items_archive WHERE dish_url = ?", Boolean.class, imageUrl));
+    }
+
+    // ============ ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ============
+
+    // Пакет: строки заказов блокируются до конца транзакции, статус не поменяется во время переноса
+    private int archiveBatch(LocalDateTime cutoff) {
+        List<Long> ids = new ArrayList<>();
+        List<LocalDateTime> times = new ArrayList<>();
+        jdbcTemplate.query(SELECT_BATCH, rs -> {
+            ids.add(rs.getLong("id"));
+            times.add(rs.getTimestamp("order_time").toLocalDateTime());
+        }, Timestamp.valueOf(cutoff), batchSize);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        String in = "(" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+        Object[] args = ids.toArray();
+        jdbcTemplate.update(COPY_ORDERS + in, args);
+        jdbcTemplate.update(COPY_ITEMS + in, args);
+        jdbcTemplate.update("DELETE FROM order_items WHERE order_id IN " + in, args);
+        // Ключи идемпотентности архивных заказов удаляются каскадом
+        jdbcTemplate.update("DELETE FROM orders WHERE id IN " + in, args);
+
+        // Пакет выбран по возрастанию времени - последний заказ самый новый
+        LocalDateTime newest = times.get(times.size() - 1);
+        LocalDateTime current = newestArchived;
+        if (current == null || newest.isAfter(current)) {
+            newestArchived = newest;
+        }
+        return ids.size();
+    }
+
+    private void refreshNewestArchived() {
+        try {
+            Timestamp newest = jdbcTemplate.queryForObject("SELECT MAX(order_time) FROM orders_archive", Timestamp.class);
+            newestArchived = newest == null ? null : newest.toLocalDateTime();
+        } catch (DataAccessException e) {
+            System.err.println("Не удалось прочитать архив заказов: " + e.getMessage());
+        }
+    }
+
+    // Месячные секции архива от самого старого заказа-кандидата до месяца cutoff
+    private void createPartitions(LocalDateTime cutoff) {
+        Timestamp oldest = jdbcTemplate.queryForObject(
+                "SELECT MIN(order_time) FROM orders WHERE " + ARCHIVED_STATUSES + " AND order_time < ?",
+                Timestamp.class, Timestamp.valueOf(cutoff));
+        if (oldest == null) {
+            return;
+        }
+        YearMonth last = YearMonth.from(cutoff);
+        for (YearMonth month = YearMonth.from(oldest.toLocalDateTime()); !month.isAfter(last); month = month.plusMonths(1)) {
+            if (partitions.contains(month)) {
+                continue;
+            }
+            String suffix = String.format("_y%04dm%02d", month.getYear(), month.getMonthValue());
+            String range = " FOR VALUES FROM ('" + month.atDay(1) + "') TO ('" + month.plusMonths(1).atDay(1) + "')";
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS orders_archive" + suffix +
+                    " PARTITION OF orders_archive" + range);
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS order_items_archive" + suffix +
+                    " PARTITION OF order_items_archive" + range);
+            partitions.add(month);
+        }
+    }
+
+    private List<OrderDTO> withItems(List<OrderDTO> orders) {
+        if (orders.isEmpty()) {
+            return orders;
+        }
+        Map<Long, OrderDTO> byId = new HashMap<>();
+        orders.forEach(order -> byId.put(order.getOrderId(), order));
+        String in = "(" + String.join(", ", Collections.nCopies(orders.size(), "?")) + ")";
+        jdbcTemplate.query("SELECT id, order_id, dish_id, dish_name, dish_url, quantity, price_at_order " +
+                "FROM order_items_archive WHERE order_id IN " + in + " ORDER BY id", rs -> {
+            BigDecimal price = rs.getBigDecimal("price_at_order");
+            int quantity = rs.getInt("quantity");
+            byId.get(rs.getLong("order_id")).getOrderItems().add(new OrderItemDTO(
+                    rs.getLong("id"),
+                    rs.getObject("dish_id", Long.class),
+                    rs.getString("dish_name"),
+                    rs.getString("dish_url"),
+                    quantity,
+                    price,
+                    price.multiply(new BigDecimal(quantity))));
+        }, byId.keySet().toArray());
+        return orders;
+    }
+
+    private static OrderDTO toDTO(ResultSet rs) throws SQLException {
+        return new OrderDTO(
+                rs.getLong("id"),
+                rs.getLong("user_id"),
+                new ArrayList<>(),
+                rs.getTimestamp("order_time").toLocalDateTime(),
+                OrderStatus.valueOf(rs.getString("status")),
+                rs.getBigDecimal("total"));
+    }
+}
@@ -0,0 +1,193 @@
+package course_project.course_project.service;
+
+import course_project.course_project.dto.OrderDTO;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Поток изменений заказов (Server-Sent Events) для клиентов и админского дашборда.
+ *
+ * Подключение - асинхронный SseEmitter: поток сервлета освобождается сразу, соединение держит контейнер.
+ * Подписчики хранятся по пользователю, админские - отдельно. Вся отправка (события, повтор пропущенного,
+ * heartbeat) идёт из одного потока: порядок событий в соединении сохраняется, запрос, изменивший заказ,
+ * не ждёт медленных клиентов.
+ *
+ * Последние события держатся в памяти: при переподключении с Last-Event-ID клиент получает пропущенное.
+ * Если пропущенного уже нет в памяти (или сервер перезапускался), приходит событие reset -
+ * клиент перечитывает заказы целиком.
+ */
+@Service
+public class OrderEventService {
+
+    public static final String ORDER_EVENT = "order";
+    public static final String RESET_EVENT = "reset";
+
+    // Соединение закрывается через timeout-ms, EventSource переподключается сам (с Last-Event-ID)
+    @Value("${orders.stream.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Value("${orders.stream.replay-size:1000}")
+    private int replaySize;
+
+    private record OrderEvent(long id, Long userId, OrderDTO order) {
+    }
+
+    // Номера событий начинаются с текущего времени: после перезапуска старый Last-Event-ID меньше любого нового
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis());
+
+    // Последние события (доступ только из потока отправки)
+    private final Deque<OrderEvent> recent = new ArrayDeque<>();
+
+    private final Map<Long, Set<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+
+    private final Set<SseEmitter> adminSubscribers = new CopyOnWriteArraySet<>();
+
+    private final ExecutorService sender = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "order-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        sender.shutdown();
+        sender.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Подписка пользователя на изменения его заказов. lastEventId - заголовок Last-Event-ID (может быть null)
+     */
+    public SseEmitter subscribe(Long userId, String lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        emitter.onCompletion(() -> unsubscribe(userId, emitter));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(error -> unsubscribe(userId, emitter));
+
+        // Повтор и регистрация в потоке отправки: ни одно событие не пропадёт и не придёт дважды.
+        // Набор подписчиков берётся там же - heartbeat (тот же поток) не удалит его между созданием и добавлением
+        sender.execute(() -> {
+            if (replay(emitter, lastEventId, userId)) {
+                subscribers.computeIfAbsent(userId, id -> new CopyOnWriteArraySet<>()).add(emitter);
+            }
+        });
+        return emitter;
+    }
+
+    // Админский поток: изменения всех заказов
+    public SseEmitter subscribeAll(String lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        emitter.onCompletion(() -> adminSubscribers.remove(emitter));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(error -> adminSubscribers.remove(emitter));
+
+        sender.execute(() -> {
+            if (replay(emitter, lastEventId, null)) {
+                adminSubscribers.add(emitter);
+            }
+        });
+        return emitter;
+    }
+
+    /**
+     * Заказ изменился (статус, отмена): новое состояние уходит владельцу и в админский поток
+     */
+    public void publish(OrderDTO order) {
+        sender.execute(() -> {
+            OrderEvent event = new OrderEvent(sequence.incrementAndGet(), order.getUserId(), order);
+            recent.addLast(event);
+            if (recent.size() > replaySize) {
+                recent.removeFirst();
+            }
+
+            Set<SseEmitter> emitters = subscribers.get(order.getUserId());
+            if (emitters != null) {
+                emitters.forEach(emitter -> send(emitter, emitters, event));
+            }
+            adminSubscribers.forEach(emitter -> send(emitter, adminSubscribers, event));
+        });
+    }
+
+    // Комментарий раз в heartbeat-ms: прокси не закрывают простаивающее соединение, мёртвые соединения выпадают
+    @Scheduled(fixedDelayString = "${orders.stream.heartbeat-ms:15000}")
+    public void heartbeat() {
+        sender.execute(() -> {
+            subscribers.values().forEach(emitters -> emitters.forEach(emitter -> heartbeat(emitter, emitters)));
+            subscribers.values().removeIf(Set::isEmpty);
+            adminSubscribers.forEach(emitter -> heartbeat(emitter, adminSubscribers));
+        });
+    }
+
+    // ============ ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ============
+
+    private void unsubscribe(Long userId, SseEmitter emitter) {
+        Set<SseEmitter> emitters = subscribers.get(userId);
+        if (emitters != null) {
+            emitters.remove(emitter);
+        }
+    }
+
+    // Пропущенные события после lastEventId (userId == null - все). false - соединение уже закрыто
+    private boolean replay(SseEmitter emitter, String lastEventId, Long userId) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return true;
+        }
+        try {
+            long lastId = Long.parseLong(lastEventId.trim());
+            OrderEvent oldest = recent.peekFirst();
+            if (lastId < sequence.get() && (oldest == null || lastId < oldest.id() - 1)) {
+                // Часть пропущенного уже не в памяти - пусть клиент перечитает заказы
+                emitter.send(SseEmitter.event().name(RESET_EVENT).id(String.valueOf(sequence.get())).data(""));
+                return true;
+            }
+            for (OrderEvent event : recent) {
+                if (event.id() > lastId && (userId == null || userId.equals(event.userId()))) {
+                    emitter.send(toSse(event));
+                }
+            }
+            return true;
+        } catch (NumberFormatException e) {
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            return false;
+        }
+    }
+
+    private static void send(SseEmitter emitter, Set<SseEmitter> emitters, OrderEvent event) {
+        try {
+            emitter.send(toSse(event));
+        } catch (IOException | IllegalStateException e) {
+            // Клиент ушёл
+            emitters.remove(emitter);
+        }
+    }
+
+    private static void heartbeat(SseEmitter emitter, Set<SseEmitter> emitters) {
+        try {
+            emitter.send(SseEmitter.event().comment("heartbeat"));
+        } catch (IOException | IllegalStateException e) {
+            emitters.remove(emitter);
+        }
+    }
+
+    private static SseEmitter.SseEventBuilder toSse(OrderEvent event) {
+        return SseEmitter.event()
+                .id(String.valueOf(event.id()))
+                .name(ORDER_EVENT)
+                .data(event.order());
+    }
+}
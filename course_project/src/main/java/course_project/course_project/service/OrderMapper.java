@@ -0,0 +1,67 @@
+package course_project.course_project.service;
+
+import course_project.course_project.dto.OrderDTO;
+import course_project.course_project.dto.OrderItemDTO;
+import course_project.course_project.model.Order;
+import course_project.course_project.repository.OrderRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Конвертация Order в OrderDTO (история заказов, админка, оформление, поток изменений).
+ *
+ * Название и картинка блюда берутся из снимка в позиции заказа - таблица dishes не читается.
+ * Позиции заказа ленивые: список из N заказов, конвертируемый по одному, дал бы N запросов.
+ * Поэтому список конвертируется через toDTOs - позиции всех заказов дочитываются одним запросом.
+ */
+@Component
+public class OrderMapper {
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    // Один заказ: позиции уже загружены (findWithItemsById, только что оформленный заказ)
+    public OrderDTO toDTO(Order order) {
+        List<OrderItemDTO> orderItemDTOs = order.getOrderItems() == null ? List.of() : order.getOrderItems().stream()
+                .map(orderItem -> new OrderItemDTO(
+                        orderItem.getId(),
+                        // id блюда - из внешнего ключа, без загрузки блюда; null, если блюдо удалено
+                        orderItem.getDish() == null ? null : orderItem.getDish().getId(),
+                        orderItem.getDishName(),
+                        orderItem.getDishUrl(),
+                        orderItem.getQuantity(),
+                        orderItem.getPriceAtOrder(),
+                        orderItem.getPriceAtOrder().multiply(new BigDecimal(orderItem.getQuantity()))
+                ))
+                .toList();
+
+        return new OrderDTO(
+                order.getId(),
+                // id владельца берётся из ленивой ссылки без запроса к users
+                order.getUser().getId(),
+                orderItemDTOs,
+                order.getOrderTime(),
+                order.getStatus(),
+                order.getTotal()
+        );
+    }
+
+    // Список заказов: страница заказов + один запрос на позиции, порядок списка сохраняется
+    public List<OrderDTO> toDTOs(List<Order> orders) {
+        if (orders.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Order> withItems = orderRepository.findWithItemsByIdIn(orders.stream().map(Order::getId).toList())
+                .stream()
+                .collect(Collectors.toMap(Order::getId, Function.identity(), (first, second) -> first));
+        return orders.stream()
+                .map(order -> toDTO(withItems.getOrDefault(order.getId(), order)))
+                .toList();
+    }
+}
@@ -0,0 +1,224 @@
+package course_project.course_project.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Неизменяемое префиксное дерево (radix trie) для автодополнения.
+ * В каждом узле заранее посчитаны лучшие подсказки поддерева, поэтому ответ на точный префикс -
+ * это проход по дереву длиной в запрос. Опечатки обрабатываются обходом дерева
+ * с построчным расчётом расстояния Левенштейна (поддеревья, где расстояние уже больше допустимого, отсекаются).
+ *
+ * Дерево не изменяется после сборки: при правке каталога собирается новое.
+ */
+public final class PrefixSuggester {
+
+    // Сколько лучших подсказок хранится в каждом узле
+    public static final int MAX_SUGGESTIONS = 10;
+
+    /** Подсказка. weight - чем больше, тем выше в выдаче (при равном расстоянии) */
+    public record Entry(String type, long id, String name, Long restaurantId, long weight) {
+    }
+
+    private final Entry[] entries;
+    private final Node root;
+
+    private PrefixSuggester(Entry[] entries, Node root) {
+        this.entries = entries;
+        this.root = root;
+    }
+
+    public static PrefixSuggester build(Collection<Entry> source) {
+        // Порядковый номер подсказки = её ранг: меньше номер - выше в выдаче
+        Entry[] entries = source.toArray(new Entry[0]);
+        Arrays.sort(entries, Comparator.comparingLong(Entry::weight).reversed()
+                .thenComparingInt(entry -> entry.name().length())
+                .thenComparing(Entry::name));
+
+        // Ключи: полное название и каждое слово с его позиции ("четыре сыра" -> "четыре сыра", "сыра")
+        Map<String, List<Integer>> keys = new HashMap<>();
+        for (int ordinal = 0; ordinal < entries.length; ordinal++) {
+            String normalized = NGramIndex.normalize(entries[ordinal].name());
+            for (int start = 0; start < normalized.length(); start++) {
+                if (start == 0 || normalized.charAt(start - 1) == ' ') {
+                    keys.computeIfAbsent(normalized.substring(start), key -> new ArrayList<>()).add(ordinal);
+                }
+            }
+        }
+        String[] sortedKeys = keys.keySet().toArray(new String[0]);
+        Arrays.sort(sortedKeys);
+        int[][] postings = new int[sortedKeys.length][];
+        for (int i = 0; i < sortedKeys.length; i++) {
+            postings[i] = keys.get(sortedKeys[i]).stream().mapToInt(Integer::intValue).toArray();
+        }
+        Node root = sortedKeys.length == 0 ? Node.EMPTY : Node.build(sortedKeys, postings, 0, sortedKeys.length, 0);
+        return new PrefixSuggester(entries, root);
+    }
+
+    /**
+     * Лучшие подсказки для введённого префикса.
+     * Допускается 1 опечатка для запроса от 3 символов и 2 - от 6 символов.
+     */
+    public List<Entry> suggest(String query, int limit) {
+        String prefix = NGramIndex.normalize(query);
+        if (prefix.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        int maxEdits = prefix.length() >= 6 ? 2 : prefix.length() >= 3 ? 1 : 0;
+
+        // Лучшее (минимальное) расстояние для каждой найденной подсказки
+        Map<Integer, Integer> distances = new HashMap<>();
+        int[] row = new int[prefix.length() + 1];
+        for (int j = 0; j < row.length; j++) {
+            row[j] = j;
+        }
+        search(root, prefix, row, maxEdits, distances);
+
+        List<Map.Entry<Integer, Integer>> found = new ArrayList<>(distances.entrySet());
+        found.sort(Map.Entry.<Integer, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+        List<Entry> result = new ArrayList<>(Math.min(limit, found.size()));
+        for (int i = 0; i < found.size() && result.size() < limit; i++) {
+            result.add(entries[found.get(i).getKey()]);
+        }
+        return result;
+    }
+
+    // Обход дерева: row - строка матрицы Левенштейна для пути до текущего узла
+    private void search(Node node, String prefix, int[] row, int maxEdits, Map<Integer, Integer> distances) {
+        int m = prefix.length();
+        if (row[m] <= maxEdits) {
+            // Весь путь до узла уже совпал с запросом - берём лучшие подсказки поддерева
+            for (int ordinal : node.top) {
+                distances.merge(ordinal, row[m], Math::min);
+            }
+            if (row[m] == 0) {
+                return;
+            }
+        }
+        for (int c = 0; c < node.labels.length; c++) {
+            String label = node.labels[c];
+            int[] current = row;
+            boolean alive = true;
+            for (int i = 0; i < label.length() && alive; i++) {
+                current = nextRow(current, prefix, label.charAt(i));
+                alive = min(current) <= maxEdits;
+                if (alive && current[m] <= maxEdits && i < label.length() - 1) {
+                    // Совпадение посреди ребра: всё поддерево ниже подходит
+                    for (int ordinal : node.children[c].top) {
+                        distances.merge(ordinal, current[m], Math::min);
+                    }
+                }
+            }
+            if (alive) {
+                search(node.children[c], prefix, current, maxEdits, distances);
+            }
+        }
+    }
+
+    private static int[] nextRow(int[] row, String prefix, char c) {
+        int[] next = new int[row.length];
+        next[0] = row[0] + 1;
+        for (int j = 1; j < row.length; j++) {
+            int substitution = row[j - 1] + (prefix.charAt(j - 1) == c ? 0 : 1);
+            next[j] = Math.min(substitution, Math.min(row[j] + 1, next[j - 1] + 1));
+        }
+        return next;
+    }
+
+    private static int min(int[] row) {
+        int min = Integer.MAX_VALUE;
+        for (int value : row) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    // Узел radix trie: рёбра подписаны строками, top - лучшие подсказки поддерева
+    private static final class Node {
+        static final Node EMPTY = new Node(new String[0], new Node[0], new int[0]);
+
+        final String[] labels;
+        final Node[] children;
+        final int[] top;
+
+        private Node(String[] labels, Node[] children, int[] top) {
+            this.labels = labels;
+            this.children = children;
+            this.top = top;
+        }
+
+        // Сборка из отсортированного диапазона ключей с общим префиксом длины depth
+        static Node build(String[] keys, int[][] postings, int lo, int hi, int depth) {
+            List<String> labels = new ArrayList<>();
+            List<Node> children = new ArrayList<>();
+            int[] top = new int[0];
+
+            int i = lo;
+            // Ключ, который заканчивается в этом узле, в отсортированном диапазоне идёт первым
+            if (i < hi && keys[i].length() == depth) {
+                top = mergeTop(top, postings[i]);
+                i++;
+            }
+            while (i < hi) {
+                char c = keys[i].charAt(depth);
+                int j = i + 1;
+                while (j < hi && keys[j].charAt(depth) == c) {
+                    j++;
+                }
+                int common = commonPrefix(keys[i], keys[j - 1]);
+                Node child = build(keys, postings, i, j, common);
+                labels.add(keys[i].substring(depth, common));
+                children.add(child);
+                top = mergeTop(top, child.top);
+                i = j;
+            }
+            return new Node(labels.toArray(new String[0]), children.toArray(new Node[0]), top);
+        }
+
+        private static int commonPrefix(String a, String b) {
+            int n = Math.min(a.length(), b.length());
+            int i = 0;
+            while (i < n && a.charAt(i) == b.charAt(i)) {
+                i++;
+            }
+            return i;
+        }
+
+        // Слияние двух списков лучших подсказок (номера отсортированы, дубли убираются)
+        private static int[] mergeTop(int[] a, int[] b) {
+            int[] sortedB = b;
+            if (!isSorted(b)) {
+                sortedB = b.clone();
+                Arrays.sort(sortedB);
+            }
+            int[] out = new int[Math.min(MAX_SUGGESTIONS, a.length + sortedB.length)];
+            int i = 0, j = 0, n = 0;
+            while (n < out.length && (i < a.length || j < sortedB.length)) {
+                int next;
+                if (j >= sortedB.length || (i < a.length && a[i] <= sortedB[j])) {
+                    next = a[i++];
+                } else {
+                    next = sortedB[j++];
+                }
+                if (n == 0 || out[n - 1] != next) {
+                    out[n++] = next;
+                }
+            }
+            return Arrays.copyOf(out, n);
+        }
+
+        private static boolean isSorted(int[] values) {
+            for (int i = 1; i < values.length; i++) {
+                if (values[i - 1] > values[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package course_project.course_project.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+
+/**
+ * Хранение в S3-совместимом объектном хранилище (AWS S3, MinIO).
+ * Подходит для нескольких экземпляров бэкенда: файлы не привязаны к диску одного сервера.
+ * Локально можно проверить с MinIO из docker-compose (профиль s3).
+ */
+@Service
+@ConditionalOnProperty(name = "images.storage.type", havingValue = "s3")
+public class S3ImageStore implements ImageStore {
+
+    // Имена файлов содержат хэш содержимого - объект под таким ключом не меняется
+    private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    private final S3Client s3;
+    private final String bucket;
+    private final String prefix;
+
+    public S3ImageStore(@Value("${images.storage.s3.bucket}") String bucket,
+                        @Value("${images.storage.s3.prefix:}") String prefix,
+                        @Value("${images.storage.s3.region:us-east-1}") String region,
+                        @Value("${images.storage.s3.endpoint:}") String endpoint,
+                        @Value("${images.storage.s3.access-key:}") String accessKey,
+                        @Value("${images.storage.s3.secret-key:}") String secretKey,
+                        @Value("${images.storage.s3.path-style:false}") boolean pathStyle,
+                        @Value("${images.storage.s3.create-bucket:false}") boolean createBucket) {
+        AwsCredentialsProvider credentials = accessKey.isEmpty()
+                ? DefaultCredentialsProvider.builder().build()
+                : StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials)
+                // MinIO и большинство S3-совместимых хранилищ работают только с адресом вида host/bucket/key
+                .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(pathStyle).build());
+        if (!endpoint.isEmpty()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        this.s3 = builder.build();
+        this.bucket = bucket;
+        this.prefix = prefix;
+
+        if (createBucket && !bucketExists()) {
+            s3.createBucket(request -> request.bucket(bucket));
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        s3.close();
+    }
+
+    @Override
+    public StoredImage find(String name) throws IOException {
+        try {
+            HeadObjectResponse head = s3.headObject(request -> request.bucket(bucket).key(prefix + name));
+            return new StoredImage(head.contentLength(), head.lastModified().toEpochMilli(), null);
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return null;
+            }
+            throw new IOException("Ошибка обращения к хранилищу: " + e.getMessage(), e);
+        } catch (SdkException e) {
+            throw new IOException("Ошибка обращения к хранилищу: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void put(String name, Path source, String contentType) throws IOException {
+        try {
+            s3.putObject(request -> request.bucket(bucket).key(prefix + name)
+                            .contentType(contentType)
+                            .cacheControl(CACHE_CONTROL),
+                    RequestBody.fromFile(source));
+        } catch (SdkException e) {
+            throw new IOException("Ошибка записи в хранилище: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void delete(String name) throws IOException {
+        try {
+            s3.deleteObject(request -> request.bucket(bucket).key(prefix + name));
+        } catch (SdkException e) {
+            throw new IOException("Ошибка удаления из хранилища: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public InputStream open(String name, long start, long end) throws IOException {
+        try {
+            return s3.getObject(request -> request.bucket(bucket).key(prefix + name)
+                    .range("bytes=" + start + "-" + (end - 1)));
+        } catch (SdkException e) {
+            throw new IOException("Ошибка чтения из хранилища: " + e.getMessage(), e);
+        }
+    }
+
+    private boolean bucketExists() {
+        try {
+            s3.headBucket(request -> request.bucket(bucket));
+            return true;
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return false;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package course_project.course_project.service;
+
+import course_project.course_project.dto.DishDTO;
+import course_project.course_project.dto.response.SalesPeriodDTO;
+import course_project.course_project.dto.response.SalesTotalsDTO;
+import course_project.course_project.model.Order;
+import course_project.course_project.model.OrderItem;
+import course_project.course_project.model.OrderStatus;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Аналитика продаж: заказы, штуки и выручка по часам - всего, по ресторанам и по блюдам.
+ *
+ * Оформление и смена статуса не пишут статистику в БД сами: приросты счётчиков копятся в памяти
+ * и раз в analytics.flush-ms прибавляются к таблицам sales_*_hourly. Поэтому /admin/stats читает
+ * часовые агрегаты за период, а не все заказы с позициями.
+ *
+ * Заказ учитывается в часе оформления. Отмена вычитает его из продаж и прибавляет к cancelled,
+ * возврат из CANCELLED - наоборот. Ресторан блюда берётся из каталога в памяти: позиции блюд,
+ * уже удалённых из каталога, попадают только в общие итоги.
+ * Пустые таблицы при старте заполняются по существующим заказам; при аварийной остановке
+ * теряются только несброшенные приросты.
+ */
+@Service
+public class SalesAnalyticsService {
+
+    public static final String HOUR = "hour";
+    public static final String DAY = "day";
+
+    // Сумма по заказам, где отменённые не входят в продажи, а считаются отдельно
+    private static final String BACKFILL_COUNTS =
+            "SUM(CASE WHEN o.status = 'CANCELLED' THEN 0 ELSE 1 END), " +
+            "SUM(CASE WHEN o.status = 'CANCELLED' THEN 0 ELSE i.quantity END), " +
+            "SUM(CASE WHEN o.status = 'CANCELLED' THEN 0 ELSE i.revenue END), " +
+            "SUM(CASE WHEN o.status = 'CANCELLED' THEN 1 ELSE 0 END) ";
+
+    private static final String BACKFILL_TOTAL =
+            "INSERT INTO sales_hourly (bucket_start, order_count, quantity, revenue, cancelled_count) " +
+            "SELECT DATE_TRUNC('HOUR', o.order_time), " + BACKFILL_COUNTS +
+            "FROM orders o JOIN (SELECT order_id, SUM(quantity) AS quantity, " +
+            "SUM(quantity * price_at_order) AS revenue FROM order_items GROUP BY order_id) i ON i.order_id = o.id " +
+            "GROUP BY DATE_TRUNC('HOUR', o.order_time)";
+
+    private static final String BACKFILL_RESTAURANT =
+            "INSERT INTO sales_restaurant_hourly " +
+            "(bucket_start, restaurant_id, order_count, quantity, revenue, cancelled_count) " +
+            "SELECT DATE_TRUNC('HOUR', o.order_time), i.restaurant_id, " + BACKFILL_COUNTS +
+            "FROM orders o JOIN (SELECT item.order_id, d.restaurant_id, SUM(item.quantity) AS quantity, " +
+            "SUM(item.quantity * item.price_at_order) AS revenue FROM order_items item " +
+            "JOIN dishes d ON d.id = item.dish_id GROUP BY item.order_id, d.restaurant_id) i ON i.order_id = o.id " +
+            "GROUP BY DATE_TRUNC('HOUR', o.order_time), i.restaurant_id";
+
+    private static final String BACKFILL_DISH =
+            "INSERT INTO sales_dish_hourly " +
+            "(bucket_start, dish_id, restaurant_id, order_count, quantity, revenue, cancelled_count) " +
+            "SELECT DATE_TRUNC('HOUR', o.order_time), i.dish_id, i.restaurant_id, " + BACKFILL_COUNTS +
+            "FROM orders o JOIN (SELECT item.order_id, item.dish_id, d.restaurant_id, SUM(item.quantity) AS quantity, " +
+            "SUM(item.quantity * item.price_at_order) AS revenue FROM order_items item " +
+            "JOIN dishes d ON d.id = item.dish_id GROUP BY item.order_id, item.dish_id, d.restaurant_id) i " +
+            "ON i.order_id = o.id " +
+            "GROUP BY DATE_TRUNC('HOUR', o.order_time), i.dish_id, i.restaurant_id";
+
+    private static final String SUMS =
+            "SUM(s.order_count), SUM(s.quantity), SUM(s.revenue), SUM(s.cancelled_count) ";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private CatalogService catalogService;
+
+    // Уровень агрегации - своя таблица; UPDATE прибавляет прирост, новый час - INSERT
+    private enum Level {
+        TOTAL("sales_hourly", "bucket_start = ?", "bucket_start"),
+        RESTAURANT("sales_restaurant_hourly", "bucket_start = ? AND restaurant_id = ?", "bucket_start, restaurant_id"),
+        DISH("sales_dish_hourly", "bucket_start = ? AND dish_id = ?", "bucket_start, dish_id, restaurant_id");
+
+        final String update;
+        final String insert;
+
+        Level(String table, String where, String keyColumns) {
+            this.update = "UPDATE " + table + " SET order_count = order_count + ?, quantity = quantity + ?, " +
+                    "revenue = revenue + ?, cancelled_count = cancelled_count + ? WHERE " + where;
+            this.insert = "INSERT INTO " + table + " (order_count, quantity, revenue, cancelled_count, " +
+                    keyColumns + ") VALUES (?, ?, ?, ?" + ", ?".repeat(keyColumns.split(",").length) + ")";
+        }
+    }
+
+    private record Key(Level level, LocalDateTime bucket, Long restaurantId, Long dishId) {
+    }
+
+    // Прирост счётчиков; выручка в копейках
+    private record Counts(long orders, long quantity, long revenueCents, long cancelled) {
+
+        Counts plus(Counts other) {
+            return new Counts(orders + other.orders, quantity + other.quantity,
+                    revenueCents + other.revenueCents, cancelled + other.cancelled);
+        }
+    }
+
+    // Ещё не записанные в БД приросты
+    private final Map<Key, Counts> pending = new ConcurrentHashMap<>();
+
+    // Статистика не нужна для работы магазина: без неё приложение стартует, ошибка только в лог
+    @PostConstruct
+    public void backfill() {
+        try {
+            Integer buckets = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM sales_hourly", Integer.class);
+            if (buckets != null && buckets == 0) {
+                new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                    jdbcTemplate.update(BACKFILL_TOTAL);
+                    jdbcTemplate.update(BACKFILL_RESTAURANT);
+                    jdbcTemplate.update(BACKFILL_DISH);
+                });
+            }
+        } catch (DataAccessException e) {
+            System.err.println("Не удалось заполнить статистику продаж по заказам: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * Заказ оформлен. В транзакции оформления прирост учитывается только после коммита
+     */
+    public void orderPlaced(Order order) {
+        record(order, 1, 0);
+    }
+
+    /**
+     * Статус заказа изменён (отмена пользователем, смена в админке). Вызывать после сохранения заказа
+     */
+    public void statusChanged(Order order, OrderStatus previous) {
+        boolean wasCancelled = previous == OrderStatus.CANCELLED;
+        boolean cancelled = order.getStatus() == OrderStatus.CANCELLED;
+        if (wasCancelled != cancelled) {
+            record(order, cancelled ? -1 : 1, cancelled ? 1 : -1);
+        }
+    }
+
+    // Приросты прибавляются к таблицам одной транзакцией; при ошибке возвращаются в память до следующего раза
+    @Scheduled(fixedDelayString = "${analytics.flush-ms:60000}")
+    public synchronized void flush() {
+        Map<Key, Counts> batch = new HashMap<>();
+        for (Key key : pending.keySet()) {
+            Counts counts = pending.remove(key);
+            if (counts != null) {
+                batch.put(key, counts);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                for (Level level : Level.values()) {
+                    write(level, batch);
+                }
+            });
+        } catch (RuntimeException e) {
+            System.err.println("Ошибка записи статистики продаж: " + e.getMessage());
+            batch.forEach((key, counts) -> pending.merge(key, counts, Counts::plus));
+        }
+    }
+
+    /**
+     * Продажи по часам или дням (granularity hour/day) за период [from, to], всего или по ресторану
+     */
+    public List<SalesPeriodDTO> getTimeline(String granularity, LocalDate from, LocalDate to, Long restaurantId) {
+        String period = switch (granularity == null ? DAY : granularity) {
+            case HOUR -> "s.bucket_start";
+            case DAY -> "CAST(s.bucket_start AS DATE)";
+            default -> throw new IllegalArgumentException("Неизвестная детализация: " + granularity);
+        };
+        List<Object> args = range(from, to);
+        String table = "sales_hourly s";
+        if (restaurantId != null) {
+            table = "sales_restaurant_hourly s";
+            args.add(restaurantId);
+        }
+        flush();
+
+        return jdbcTemplate.query("SELECT " + period + ", " + SUMS + "FROM " + table +
+                        " WHERE s.bucket_start >= ? AND s.bucket_start < ?" +
+                        (restaurantId != null ? " AND s.restaurant_id = ?" : "") +
+                        " GROUP BY " + period + " ORDER BY " + period,
+                (rs, rowNum) -> new SalesPeriodDTO(rs.getTimestamp(1).toLocalDateTime(),
+                        rs.getLong(2), rs.getLong(3), rs.getBigDecimal(4), rs.getLong(5)),
+                args.toArray());
+    }
+
+    // Продажи ресторанов за период, по убыванию выручки
+    public List<SalesTotalsDTO> getRestaurantTotals(LocalDate from, LocalDate to) {
+        List<Object> args = range(from, to);
+        flush();
+
+        return jdbcTemplate.query("SELECT s.restaurant_id, r.name, " + SUMS +
+                        "FROM sales_restaurant_hourly s LEFT JOIN restaurants r ON r.id = s.restaurant_id " +
+                        "WHERE s.bucket_start >= ? AND s.bucket_start < ? " +
+                        "GROUP BY s.restaurant_id, r.name ORDER BY SUM(s.revenue) DESC, s.restaurant_id",
+                (rs, rowNum) -> new SalesTotalsDTO(rs.getLong(1), rs.getString(2), rs.getLong(1),
+                        rs.getLong(3), rs.getLong(4), rs.getBigDecimal(5), rs.getLong(6)),
+                args.toArray());
+    }
+
+    // Продажи блюд за период (всех или одного ресторана), по убыванию выручки
+    public List<SalesTotalsDTO> getDishTotals(LocalDate from, LocalDate to, Long restaurantId) {
+        List<Object> args = range(from, to);
+        if (restaurantId != null) {
+            args.add(restaurantId);
+        }
+        flush();
+
+        return jdbcTemplate.query("SELECT s.dish_id, d.name, s.restaurant_id, " + SUMS +
+                        "FROM sales_dish_hourly s LEFT JOIN dishes d ON d.id = s.dish_id " +
+                        "WHERE s.bucket_start >= ? AND s.bucket_start < ?" +
+                        (restaurantId != null ? " AND s.restaurant_id = ?" : "") +
+                        " GROUP BY s.dish_id, d.name, s.restaurant_id ORDER BY SUM(s.revenue) DESC, s.dish_id",
+                (rs, rowNum) -> new SalesTotalsDTO(rs.getLong(1), rs.getString(2), rs.getLong(3),
+                        rs.getLong(4), rs.getLong(5), rs.getBigDecimal(6), rs.getLong(7)),
+                args.toArray());
+    }
+
+    // ============ ВСПОМОГАТЕЛЬНЫЕ МЕТОДЫ ============
+
+    // Границы периода для WHERE: по умолчанию последние 7 дней, to включительно
+    private static List<Object> range(LocalDate from, LocalDate to) {
+        LocalDate end = to == null ? LocalDate.now() : to;
+        LocalDate start = from == null ? end.minusDays(6) : from;
+        if (start.isAfter(end)) {
+            throw new IllegalArgumentException("Начало периода позже конца");
+        }
+        List<Object> args = new ArrayList<>();
+        args.add(Timestamp.valueOf(start.atStartOfDay()));
+        args.add(Timestamp.valueOf(end.plusDays(1).atStartOfDay()));
+        return args;
+    }
+
+    private void record(Order order, int sign, int cancelled) {
+        Map<Key, Counts> deltas = deltas(order, sign, cancelled);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Откаченное оформление (конфликт, повтор пакета) не должно попасть в статистику
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    merge(deltas);
+                }
+            });
+        } else {
+            merge(deltas);
+        }
+    }
+
+    private void merge(Map<Key, Counts> deltas) {
+        deltas.forEach((key, counts) -> pending.merge(key, counts, Counts::plus));
+    }
+
+    // Приросты заказа на всех уровнях: позиции суммируются, сам заказ считается один раз на каждом ключе
+    private Map<Key, Counts> deltas(Order order, int sign, int cancelled) {
+        LocalDateTime bucket = order.getOrderTime().truncatedTo(ChronoUnit.HOURS);
+        CatalogSnapshot catalog = catalogService.current();
+
+        Map<Key, Counts> deltas = new HashMap<>();
+        for (OrderItem item : order.getOrderItems()) {
+            BigDecimal revenue = item.getPriceAtOrder().multiply(BigDecimal.valueOf(item.getQuantity()));
+            Counts line = new Counts(0, (long) sign * item.getQuantity(),
+                    sign * revenue.movePointRight(2).longValueExact(), 0);
+            deltas.merge(new Key(Level.TOTAL, bucket, null, null), line, Counts::plus);
+
+            // id блюда - из внешнего ключа, без загрузки блюда
+            DishDTO dish = item.getDish() == null ? null : catalog.getDish(item.getDish().getId());
+            if (dish != null) {
+                deltas.merge(new Key(Level.RESTAURANT, bucket, dish.getRestaurantId(), null), line, Counts::plus);
+                deltas.merge(new Key(Level.DISH, bucket, dish.getRestaurantId(), dish.getId()), line, Counts::plus);
+            }
+        }
+        Counts orderCount = new Counts(sign, 0, 0, cancelled);
+        deltas.replaceAll((key, counts) -> counts.plus(orderCount));
+        return deltas;
+    }
+
+    // UPDATE с прибавлением для всех ключей уровня одним batch, не найденные часы - вторым batch INSERT
+    private void write(Level level, Map<Key, Counts> batch) {
+        List<Map.Entry<Key, Counts>> entries = batch.entrySet().stream()
+                .filter(entry -> entry.getKey().level() == level)
+                .toList();
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> updates = new ArrayList<>(entries.size());
+        for (Map.Entry<Key, Counts> entry : entries) {
+            updates.add(args(entry.getValue(), entry.getKey(), false));
+        }
+        int[] updated = jdbcTemplate.batchUpdate(level.update, updates);
+
+        List<Object[]> inserts = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            if (updated[i] == 0) {
+                inserts.add(args(entries.get(i).getValue(), entries.get(i).getKey(), true));
+            }
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(level.insert, inserts);
+        }
+    }
+
+    private static Object[] args(Counts counts, Key key, boolean insert) {
+        Timestamp bucket = Timestamp.valueOf(key.bucket());
+        Object[] keyArgs = switch (key.level()) {
+            case TOTAL -> new Object[]{bucket};
+            case RESTAURANT -> new Object[]{bucket, key.restaurantId()};
+            // Ресторан хранится вместе с блюдом, но ключ строки - только час и блюдо
+            case DISH -> insert ? new Object[]{bucket, key.dishId(), key.restaurantId()} : new Object[]{bucket, key.dishId()};
+        };
+        Object[] args = new Object[4 + keyArgs.length];
+        args[0] = counts.orders();
+        args[1] = counts.quantity();
+        args[2] = BigDecimal.valueOf(counts.revenueCents(), 2);
+        args[3] = counts.cancelled();
+        System.arraycopy(keyArgs, 0, args, 4, keyArgs.length);
+        return args;
+    }
+}
@@ -46,15 +46,15 @@ INSERT INTO orders (user_id, order_time, update_time, status, total) VALUES
     (2, NOW(), NOW(), 'COMPLETED', 1000.00);
 
 -- Вставка товаров в первый заказ
-INSERT INTO order_items (order_id, dish_id, quantity, price_at_order)
-VALUES (1, 1, 2, 450.00),
-       (1, 2, 1, 550.00);
+INSERT INTO order_items (order_id, dish_id, dish_name, dish_url, quantity, price_at_order)
+VALUES (1, 1, 'Маргарита', '/pizza-margarita', 2, 450.00),
+       (1, 2, 'Пепперони', '/pizza-pepperoni', 1, 550.00);
 
 -- Вставка второго заказа для user 2 (john_user)
 INSERT INTO orders (user_id, order_time, update_time, status, total) VALUES
     (2, DATEADD('DAY', -2, NOW()), DATEADD('DAY', -2, NOW()), 'PENDING', 1130.00);
 
 -- Вставка товаров во второй заказ
-INSERT INTO order_items (order_id, dish_id, quantity, price_at_order)
-VALUES (2, 4, 2, 380.00),
-       (2, 5, 1, 350.00);
+INSERT INTO order_items (order_id, dish_id, dish_name, dish_url, quantity, price_at_order)
+VALUES (2, 4, 'Филадельфия', '/sushi-philadelphia', 2, 380.00),
+       (2, 5, 'Калифорния', '/sushi-california', 1, 350.00);
@@ -0,0 +1,48 @@
+-- Архив заказов для Postgres (prod): декларативное секционирование по order_time.
+-- Выполняется вместо CREATE TABLE orders_archive / order_items_archive из db/schema.sql.
+-- Секции по месяцам (orders_archive_y2026m01 ...) создаёт задача архивации перед переносом
+-- (orders.archive.partitioned=true). Секции DEFAULT нет: строку без секции Postgres не примет,
+-- пакет откатится и будет перенесён при следующем запуске.
+-- Архив старше нужного срока удаляется целиком по месяцам:
+--   DROP TABLE order_items_archive_y2024m01; DROP TABLE orders_archive_y2024m01;
+--
+-- Оперативные orders/order_items не секционируются: на orders ссылаются order_items и checkout_keys,
+-- а внешний ключ на секционированную таблицу требует order_time в её первичном ключе.
+-- Их размер ограничивает сама архивация.
+
+CREATE TABLE IF NOT EXISTS orders_archive (
+                                              id BIGINT NOT NULL,
+                                              user_id BIGINT NOT NULL,
+                                              order_time TIMESTAMP NOT NULL,
+                                              update_time TIMESTAMP NOT NULL,
+                                              status VARCHAR(20) NOT NULL,
+                                              total DECIMAL(10, 2),
+                                              -- Ключ секционирования обязан входить в первичный ключ
+                                              PRIMARY KEY (id, order_time),
+                                              FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+) PARTITION BY RANGE (order_time);
+
+CREATE TABLE IF NOT EXISTS order_items_archive (
+                                                   id BIGINT NOT NULL,
+                                                   order_id BIGINT NOT NULL,
+                                                   order_time TIMESTAMP NOT NULL,
+                                                   dish_id BIGINT,
+                                                   dish_name VARCHAR(255) NOT NULL,
+                                                   dish_url VARCHAR(255),
+                                                   quantity INT NOT NULL,
+                                                   price_at_order DECIMAL(10, 2) NOT NULL,
+                                                   PRIMARY KEY (id, order_time),
+                                                   -- Позиции лежат в секции того же месяца, что и заказ
+                                                   FOREIGN KEY (order_id, order_time)
+                                                       REFERENCES orders_archive(id, order_time) ON DELETE CASCADE,
+                                                   FOREIGN KEY (dish_id) REFERENCES dishes(id) ON DELETE SET NULL
+) PARTITION BY RANGE (order_time);
+
+-- Индексы создаются на каждой секции автоматически.
+-- Поиск заказа по id без order_time проверяет все секции - это только GET /orders/{id} архивного заказа
+CREATE INDEX IF NOT EXISTS idx_orders_archive_id ON orders_archive(id);
+CREATE INDEX IF NOT EXISTS idx_orders_archive_user_time ON orders_archive(user_id, order_time DESC, id DESC);
+CREATE INDEX IF NOT EXISTS idx_orders_archive_status_time ON orders_archive(status, order_time DESC, id DESC);
+CREATE INDEX IF NOT EXISTS idx_orders_archive_time ON orders_archive(order_time DESC, id DESC);
+CREATE INDEX IF NOT EXISTS idx_order_items_archive_order ON order_items_archive(order_id);
+CREATE INDEX IF NOT EXISTS idx_order_items_archive_dish_url ON order_items_archive(dish_url);
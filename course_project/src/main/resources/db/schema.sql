@@ -1,3 +1,12 @@
+DROP TABLE IF EXISTS order_items_archive;
+DROP TABLE IF EXISTS orders_archive;
+DROP TABLE IF EXISTS dish_popularity;
+DROP TABLE IF EXISTS sales_dish_hourly;
+DROP TABLE IF EXISTS sales_restaurant_hourly;
+DROP TABLE IF EXISTS sales_hourly;
+DROP TABLE IF EXISTS image_uploads;
+DROP TABLE IF EXISTS image_variants;
+DROP TABLE IF EXISTS checkout_keys;
 DROP TABLE IF EXISTS order_items;
 DROP TABLE IF EXISTS cart_items;
 DROP TABLE IF EXISTS orders;
@@ -22,7 +31,7 @@ CREATE TABLE users (
 CREATE TABLE restaurants (
                              id BIGINT AUTO_INCREMENT PRIMARY KEY,
                              name VARCHAR(255) NOT NULL UNIQUE,
-                             url VARCHAR(255) NOT NULL UNIQUE,
+                             url VARCHAR(255) NOT NULL,
                              address VARCHAR(255) NOT NULL,
                              phone VARCHAR(20),
                              description TEXT
@@ -36,7 +45,7 @@ CREATE TABLE dishes (
                         description VARCHAR(500) NOT NULL,
                         price DECIMAL(10, 2) NOT NULL,
                         weight INT NOT NULL,
-                        url VARCHAR(255) NOT NULL UNIQUE,
+                        url VARCHAR(255) NOT NULL,
                         FOREIGN KEY (restaurant_id) REFERENCES restaurants(id) ON DELETE CASCADE
 );
 
@@ -54,6 +63,7 @@ CREATE TABLE carts (
                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
                        user_id BIGINT NOT NULL UNIQUE,
                        total DECIMAL(10, 2),
+                       version BIGINT NOT NULL DEFAULT 0,
                        FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
 );
 
@@ -64,6 +74,9 @@ CREATE TABLE cart_items (
                             dish_id BIGINT NOT NULL,
                             quantity INT NOT NULL,
                             price DECIMAL(10, 2) NOT NULL,
+                            version BIGINT NOT NULL DEFAULT 0,
+                            -- Одно блюдо - одна позиция: параллельные добавления не создадут дубль
+                            CONSTRAINT uk_cart_items_cart_dish UNIQUE (cart_id, dish_id),
                             FOREIGN KEY (cart_id) REFERENCES carts(id) ON DELETE CASCADE,
                             FOREIGN KEY (dish_id) REFERENCES dishes(id) ON DELETE CASCADE
 );
@@ -83,18 +96,138 @@ CREATE TABLE orders (
 CREATE TABLE order_items (
                              id BIGINT AUTO_INCREMENT PRIMARY KEY,
                              order_id BIGINT NOT NULL,
-                             dish_id BIGINT NOT NULL,
+                             -- Ссылка на блюдо в каталоге; при удалении блюда обнуляется, позиция заказа остаётся
+                             dish_id BIGINT,
+                             -- Снимок блюда на момент оформления: заказ показывается без обращения к dishes
+                             dish_name VARCHAR(255) NOT NULL,
+                             dish_url VARCHAR(255),
                              quantity INT NOT NULL,
                              price_at_order DECIMAL(10, 2) NOT NULL,
                              FOREIGN KEY (order_id) REFERENCES orders(id) ON DELETE CASCADE,
-                             FOREIGN KEY (dish_id) REFERENCES dishes(id) ON DELETE CASCADE
+                             FOREIGN KEY (dish_id) REFERENCES dishes(id) ON DELETE SET NULL
+);
+
+-- Архив выполненных и отменённых заказов старше orders.archive.after-days (только чтение).
+-- id сохраняются: ссылки на заказ и курсоры истории продолжают работать.
+-- В Postgres (prod) архив секционирован по order_time - см. db/postgres/orders-archive.sql
+CREATE TABLE orders_archive (
+                                id BIGINT PRIMARY KEY,
+                                user_id BIGINT NOT NULL,
+                                order_time TIMESTAMP NOT NULL,
+                                update_time TIMESTAMP NOT NULL,
+                                status VARCHAR(20) NOT NULL,
+                                total DECIMAL(10, 2),
+                                FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+);
+
+-- Позиции архивных заказов; order_time заказа повторяется здесь - ключ секционирования в Postgres
+CREATE TABLE order_items_archive (
+                                     id BIGINT PRIMARY KEY,
+                                     order_id BIGINT NOT NULL,
+                                     order_time TIMESTAMP NOT NULL,
+                                     dish_id BIGINT,
+                                     dish_name VARCHAR(255) NOT NULL,
+                                     dish_url VARCHAR(255),
+                                     quantity INT NOT NULL,
+                                     price_at_order DECIMAL(10, 2) NOT NULL,
+                                     FOREIGN KEY (order_id) REFERENCES orders_archive(id) ON DELETE CASCADE,
+                                     FOREIGN KEY (dish_id) REFERENCES dishes(id) ON DELETE SET NULL
+);
+
+-- Ключи идемпотентности оформления заказа (заголовок Idempotency-Key): повтор с тем же ключом возвращает тот же заказ
+CREATE TABLE checkout_keys (
+                               id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                               user_id BIGINT NOT NULL,
+                               idempotency_key VARCHAR(100) NOT NULL,
+                               order_id BIGINT NOT NULL,
+                               created_at TIMESTAMP NOT NULL,
+                               CONSTRAINT uk_checkout_keys_user_key UNIQUE (user_id, idempotency_key),
+                               FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
+                               FOREIGN KEY (order_id) REFERENCES orders(id) ON DELETE CASCADE
+);
+
+-- Агрегаты продаж по часам (аналитика /admin/stats): счётчики копятся в памяти и добавляются сюда пачками.
+-- Заказы считаются в часе оформления; отменённые вычитаются и попадают в cancelled_count.
+-- Внешних ключей нет: статистика переживает удаление блюд и ресторанов из каталога
+CREATE TABLE sales_hourly (
+                              bucket_start TIMESTAMP PRIMARY KEY,
+                              order_count BIGINT NOT NULL,
+                              quantity BIGINT NOT NULL,
+                              revenue DECIMAL(14, 2) NOT NULL,
+                              cancelled_count BIGINT NOT NULL
+);
+
+CREATE TABLE sales_restaurant_hourly (
+                                         bucket_start TIMESTAMP NOT NULL,
+                                         restaurant_id BIGINT NOT NULL,
+                                         order_count BIGINT NOT NULL,
+                                         quantity BIGINT NOT NULL,
+                                         revenue DECIMAL(14, 2) NOT NULL,
+                                         cancelled_count BIGINT NOT NULL,
+                                         PRIMARY KEY (bucket_start, restaurant_id)
+);
+
+CREATE TABLE sales_dish_hourly (
+                                   bucket_start TIMESTAMP NOT NULL,
+                                   dish_id BIGINT NOT NULL,
+                                   restaurant_id BIGINT NOT NULL,
+                                   order_count BIGINT NOT NULL,
+                                   quantity BIGINT NOT NULL,
+                                   revenue DECIMAL(14, 2) NOT NULL,
+                                   cancelled_count BIGINT NOT NULL,
+                                   PRIMARY KEY (bucket_start, dish_id)
+);
+
+-- Популярность блюд (/restaurants/popular): заказы с блюдом по интервалам скользящего окна.
+-- Счётчики живут в памяти, сюда пишутся закрытые интервалы - чтобы пережить перезапуск; старые удаляются.
+-- Строк на один интервал может быть несколько (дозапись при остановке), при загрузке они складываются
+CREATE TABLE dish_popularity (
+                                 id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                                 slot_start TIMESTAMP NOT NULL,
+                                 dish_id BIGINT NOT NULL,
+                                 order_count BIGINT NOT NULL
+);
+
+-- Уменьшенные копии загруженных картинок (одна строка на файл)
+CREATE TABLE image_variants (
+                                url VARCHAR(255) PRIMARY KEY,
+                                thumbnail_url VARCHAR(255) NOT NULL,
+                                preview_url VARCHAR(255) NOT NULL,
+                                placeholder VARCHAR(2048) NOT NULL
+);
+
+-- Загруженные картинки, на которые ещё не ссылается сохранённая запись. Общая для всех экземпляров бэкенда:
+-- пока pins > 0 и срок не истёк, файл не удаляется. На время удаления файла строка блокируется
+CREATE TABLE image_uploads (
+                               url VARCHAR(255) PRIMARY KEY,
+                               pins INT NOT NULL,
+                               expires_at TIMESTAMP NOT NULL
 );
 
 -- Индексы для оптимизации запросов
 CREATE INDEX idx_restaurants_name ON restaurants(name);
 CREATE INDEX idx_dishes_restaurant ON dishes(restaurant_id);
 CREATE INDEX idx_dishes_name ON dishes(name);
-CREATE INDEX idx_orders_user ON orders(user_id);
-CREATE INDEX idx_orders_status ON orders(status);
-CREATE INDEX idx_cart_items_cart ON cart_items(cart_id);
+-- Одна картинка может использоваться несколькими записями, индексы - для подсчёта ссылок на файл
+CREATE INDEX idx_restaurants_url ON restaurants(url);
+CREATE INDEX idx_dishes_url ON dishes(url);
+CREATE INDEX idx_order_items_dish_url ON order_items(dish_url);
+-- Составные индексы под keyset-пагинацию заказов (новые сверху)
+CREATE INDEX idx_orders_user_time ON orders(user_id, order_time DESC, id DESC);
+CREATE INDEX idx_orders_user_status_time ON orders(user_id, status, order_time DESC, id DESC);
+CREATE INDEX idx_orders_status_time ON orders(status, order_time DESC, id DESC);
+CREATE INDEX idx_orders_time ON orders(order_time DESC, id DESC);
 CREATE INDEX idx_order_items_order ON order_items(order_id);
+-- Те же индексы для архива: история, пролистанная дальше оперативных заказов
+CREATE INDEX idx_orders_archive_user_time ON orders_archive(user_id, order_time DESC, id DESC);
+CREATE INDEX idx_orders_archive_status_time ON orders_archive(status, order_time DESC, id DESC);
+CREATE INDEX idx_orders_archive_time ON orders_archive(order_time DESC, id DESC);
+CREATE INDEX idx_order_items_archive_order ON order_items_archive(order_id);
+CREATE INDEX idx_order_items_archive_dish_url ON order_items_archive(dish_url);
+-- Удаление просроченных ключей идемпотентности
+CREATE INDEX idx_checkout_keys_created ON checkout_keys(created_at);
+-- Статистика ресторана за период (без фильтра период читается по первичному ключу)
+CREATE INDEX idx_sales_restaurant_hourly_restaurant ON sales_restaurant_hourly(restaurant_id, bucket_start);
+CREATE INDEX idx_sales_dish_hourly_restaurant ON sales_dish_hourly(restaurant_id, bucket_start);
+-- Загрузка окна популярности и удаление устаревших интервалов
+CREATE INDEX idx_dish_popularity_slot ON dish_popularity(slot_start);
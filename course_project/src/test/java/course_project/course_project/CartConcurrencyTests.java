@@ -0,0 +1,169 @@
+package course_project.course_project;
+
+import course_project.course_project.dto.request.CartOperationDTO;
+import course_project.course_project.model.Cart;
+import course_project.course_project.model.CartItem;
+import course_project.course_project.model.Dish;
+import course_project.course_project.model.User;
+import course_project.course_project.repository.DishRepository;
+import course_project.course_project.repository.UserRepository;
+import course_project.course_project.service.CartService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Параллельные изменения одной корзины: ни одно изменение не теряется, итог совпадает с позициями
+@SpringBootTest
+@ActiveProfiles("test")
+class CartConcurrencyTests {
+
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 40;
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DishRepository dishRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User user;
+
+    private List<Dish> dishes;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.findByName("jane_user").orElseThrow();
+        dishes = dishRepository.findAllById(List.of(1L, 2L, 3L, 4L, 5L, 6L));
+        cartService.removeAllCartItemsByUser(user);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cartService.removeAllCartItemsByUser(user);
+    }
+
+    @Test
+    void parallelAddsAreNotLost() throws Exception {
+        // Сколько штук каждого блюда добавлено успешно
+        AtomicIntegerArray added = new AtomicIntegerArray(dishes.size());
+
+        runInParallel(random -> {
+            int index = random.nextInt(dishes.size());
+            int quantity = 1 + random.nextInt(3);
+            cartService.addDishToCart(dishes.get(index), quantity, user);
+            added.addAndGet(index, quantity);
+        });
+
+        BigDecimal expectedTotal = BigDecimal.ZERO;
+        for (int i = 0; i < dishes.size(); i++) {
+            Dish dish = dishes.get(i);
+            assertEquals(added.get(i), quantityOf(dish.getId()), "блюдо " + dish.getId());
+            expectedTotal = expectedTotal.add(dish.getPrice().multiply(BigDecimal.valueOf(added.get(i))));
+        }
+        assertEquals(0, expectedTotal.compareTo(storedTotal()));
+    }
+
+    @Test
+    void totalStaysConsistentUnderParallelAddsAndRemoves() throws Exception {
+        // Пакет, которому не хватило повторов, отклонён целиком (409) - это допустимо, рассогласование - нет
+        AtomicInteger rejected = new AtomicInteger();
+
+        runInParallel(random -> {
+            int choice = random.nextInt(3);
+            if (choice == 0) {
+                cartService.addDishToCart(dishes.get(random.nextInt(dishes.size())), 1 + random.nextInt(3), user);
+            } else if (choice == 1) {
+                CartOperationDTO add = new CartOperationDTO(CartOperationDTO.ADD,
+                        dishes.get(random.nextInt(dishes.size())).getId(), null, 2);
+                CartOperationDTO set = new CartOperationDTO(CartOperationDTO.SET,
+                        dishes.get(random.nextInt(dishes.size())).getId(), null, random.nextInt(3));
+                try {
+                    cartService.applyOperations(user, List.of(add, set));
+                } catch (ConcurrencyFailureException e) {
+                    rejected.incrementAndGet();
+                }
+            } else {
+                Cart cart = cartService.findCart(user);
+                if (cart == null || cart.getCartItems().isEmpty()) {
+                    return;
+                }
+                CartItem item = cart.getCartItems().get(random.nextInt(cart.getCartItems().size()));
+                try {
+                    cartService.removeCartItem(user, item.getId(), 1 + random.nextInt(2));
+                } catch (IllegalArgumentException e) {
+                    // позицию уже удалил другой поток
+                }
+            }
+        });
+
+        BigDecimal itemsTotal = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(item.price * item.quantity), 0) FROM cart_items item " +
+                        "JOIN carts c ON c.id = item.cart_id WHERE c.user_id = ?", BigDecimal.class, user.getId());
+        assertEquals(0, itemsTotal.compareTo(storedTotal()));
+        assertTrue(rejected.get() < THREADS * OPERATIONS / 10, "отклонено пакетов: " + rejected.get());
+    }
+
+    private interface Operation {
+        void run(Random random) throws Exception;
+    }
+
+    // Все потоки стартуют одновременно; любая ошибка (в том числе исчерпанные повторы) валит тест
+    private void runInParallel(Operation operation) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                Random random = new Random(thread);
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < OPERATIONS; i++) {
+                        operation.run(random);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            // Потоки упавшего теста не должны менять корзину следующего
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private int quantityOf(Long dishId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(item.quantity), 0) FROM cart_items item " +
+                        "JOIN carts c ON c.id = item.cart_id WHERE c.user_id = ? AND item.dish_id = ?",
+                Integer.class, user.getId(), dishId);
+    }
+
+    private BigDecimal storedTotal() {
+        return jdbcTemplate.queryForObject("SELECT total FROM carts WHERE user_id = ?", BigDecimal.class, user.getId());
+    }
+}
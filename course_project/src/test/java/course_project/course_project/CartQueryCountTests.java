@@ -0,0 +1,194 @@
+package course_project.course_project;
+
+import com.jayway.jsonpath.JsonPath;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Проверяем, что чтение корзины - один запрос без записи, а итог поддерживается при изменениях
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@WithMockUser(username = "jane_user")
+@Import(JdbcStatementCounter.class)
+class CartQueryCountTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private JdbcStatementCounter jdbcStatements;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        mockMvc.perform(delete("/cart/clear")).andExpect(status().isNoContent());
+    }
+
+    @Test
+    void totalFollowsAddAndRemove() throws Exception {
+        mockMvc.perform(post("/cart/add/1").param("quantity", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total").value(900.00));
+        String body = mockMvc.perform(post("/cart/add/4"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cartItems.length()").value(2))
+                .andExpect(jsonPath("$.total").value(1280.00))
+                .andReturn().getResponse().getContentAsString();
+
+        List<Integer> ids = JsonPath.read(body, "$.cartItems[?(@.dishId == 1)].id");
+        long margheritaItemId = ids.get(0);
+        mockMvc.perform(delete("/cart/remove/" + margheritaItemId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total").value(830.00));
+        mockMvc.perform(delete("/cart/remove/" + margheritaItemId).param("quantity", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cartItems.length()").value(1))
+                .andExpect(jsonPath("$.total").value(380.00));
+    }
+
+    @Test
+    void cartIsReadWithTwoQueriesAndNoWrites() throws Exception {
+        mockMvc.perform(post("/cart/add/2").param("quantity", "3")).andExpect(status().isOk());
+        mockMvc.perform(post("/cart/add/5")).andExpect(status().isOk());
+        statistics.clear();
+
+        mockMvc.perform(get("/cart"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cartItems.length()").value(2))
+                .andExpect(jsonPath("$.cartItems[0].dish.name").exists())
+                .andExpect(jsonPath("$.total").value(2000.00));
+
+        // id пользователя по имени из токена и корзина с позициями и блюдами
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityUpdateCount());
+    }
+
+    @Test
+    void batchIsAppliedWithOneDishQuery() throws Exception {
+        statistics.clear();
+
+        mockMvc.perform(patch("/cart").contentType(MediaType.APPLICATION_JSON).content("""
+                        [{"op": "add", "dishId": 1, "quantity": 2},
+                         {"op": "add", "dishId": 2, "quantity": 1},
+                         {"op": "add", "dishId": 4, "quantity": 3},
+                         {"op": "remove", "dishId": 1, "quantity": 1},
+                         {"op": "set", "dishId": 4, "quantity": 1},
+                         {"op": "set", "dishId": 5, "quantity": 2}]"""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cartItems.length()").value(4))
+                .andExpect(jsonPath("$.total").value(2080.00));
+
+        // пользователь, корзина с позициями, все блюда одним IN и корзина после атомарного UPDATE итога
+        assertEquals(4, statistics.getQueryExecutionCount());
+    }
+
+    @Test
+    void failedBatchChangesNothing() throws Exception {
+        mockMvc.perform(post("/cart/add/3")).andExpect(status().isOk());
+
+        mockMvc.perform(patch("/cart").contentType(MediaType.APPLICATION_JSON).content("""
+                        [{"op": "add", "dishId": 1, "quantity": 2},
+                         {"op": "remove", "dishId": 6, "quantity": 1}]"""))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/cart").contentType(MediaType.APPLICATION_JSON).content("""
+                        [{"op": "add", "dishId": 999, "quantity": 1}]"""))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(get("/cart"))
+                .andExpect(jsonPath("$.cartItems.length()").value(1))
+                .andExpect(jsonPath("$.total").value(650.00));
+    }
+
+    @Test
+    void checkoutStatementCountDoesNotDependOnCartSize() throws Exception {
+        mockMvc.perform(post("/cart/add/1")).andExpect(status().isOk());
+        jdbcStatements.start();
+        mockMvc.perform(post("/cart/checkout"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.orderItems.length()").value(1));
+        long smallCartStatements = jdbcStatements.statements();
+        long smallCartBatches = jdbcStatements.batches();
+
+        mockMvc.perform(patch("/cart").contentType(MediaType.APPLICATION_JSON).content("""
+                        [{"op": "add", "dishId": 1, "quantity": 1}, {"op": "add", "dishId": 2, "quantity": 2},
+                         {"op": "add", "dishId": 3, "quantity": 3}, {"op": "add", "dishId": 4, "quantity": 1},
+                         {"op": "add", "dishId": 5, "quantity": 2}, {"op": "add", "dishId": 6, "quantity": 3}]"""))
+                .andExpect(status().isOk());
+        jdbcStatements.start();
+        String order = mockMvc.perform(post("/cart/checkout"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.orderItems.length()").value(6))
+                .andExpect(jsonPath("$.total").value(5840.00))
+                .andReturn().getResponse().getContentAsString();
+
+        // Считается на уровне JDBC: видны и запросы JdbcTemplate (позиции заказа пишутся batch-ем)
+        assertEquals(smallCartStatements, jdbcStatements.statements());
+        assertEquals(smallCartBatches, jdbcStatements.batches());
+        assertEquals(1, jdbcStatements.batches());
+        Integer orderId = JsonPath.read(order, "$.orderId");
+        assertEquals(6, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM order_items WHERE order_id = ?", Integer.class, orderId));
+        mockMvc.perform(get("/cart"))
+                .andExpect(jsonPath("$.cartItems.length()").value(0))
+                .andExpect(jsonPath("$.total").value(0));
+    }
+
+    @Test
+    void checkoutRetryWithSameKeyReturnsOriginalOrder() throws Exception {
+        mockMvc.perform(post("/cart/add/2")).andExpect(status().isOk());
+        String first = mockMvc.perform(post("/cart/checkout").header("Idempotency-Key", "retry-test"))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Idempotent-Replayed", "false"))
+                .andReturn().getResponse().getContentAsString();
+        Integer orderId = JsonPath.read(first, "$.orderId");
+
+        // Новая корзина не должна оформиться повтором старого запроса
+        mockMvc.perform(post("/cart/add/3")).andExpect(status().isOk());
+        mockMvc.perform(post("/cart/checkout").header("Idempotency-Key", "retry-test"))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(jsonPath("$.orderId").value(orderId))
+                .andExpect(jsonPath("$.orderItems[0].dishId").value(2))
+                .andExpect(jsonPath("$.total").value(550.00));
+
+        mockMvc.perform(get("/cart"))
+                .andExpect(jsonPath("$.cartItems.length()").value(1))
+                .andExpect(jsonPath("$.cartItems[0].dishId").value(3));
+    }
+}
@@ -0,0 +1,125 @@
+package course_project.course_project;
+
+import course_project.course_project.service.CatalogService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Проверяем количество SQL-запросов на каталожные эндпоинты
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class CatalogQueryCountTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private CatalogService catalogService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        catalogService.current();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void restaurantsAreServedWithoutQueries() throws Exception {
+        mockMvc.perform(get("/restaurants"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2));
+
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void dishesAreServedWithoutQueries() throws Exception {
+        mockMvc.perform(get("/restaurants/1/dishes"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3));
+        mockMvc.perform(get("/restaurants/1/dishes/2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.restaurantId").value(1));
+
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void searchIsServedWithoutQueries() throws Exception {
+        mockMvc.perform(get("/restaurants/searchDish").param("dishName", "ролл"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].restaurantName").value("Суши-бар Токио"));
+        mockMvc.perform(get("/restaurants/2/dishes/searchDish").param("dishName", "ролл"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/restaurants/searchRestaurant").param("name", "пицц"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1));
+        mockMvc.perform(get("/restaurants/suggest").param("query", "марг"))
+                .andExpect(status().isOk());
+
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void matchingETagReturnsNotModified() throws Exception {
+        String etag = mockMvc.perform(get("/restaurants"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/restaurants/1/dishes").header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void gzipETagOnlyForPrecompressedBodies() throws Exception {
+        String identity = mockMvc.perform(get("/restaurants"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+        String gzip = identity.substring(0, identity.length() - 1) + "-gzip\"";
+
+        mockMvc.perform(get("/restaurants/1/dishes").header("Accept-Encoding", "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(header().string("ETag", gzip));
+
+        // Страницы, поиск и отдельное блюдо сериализуются на запрос и не сжимаются - ETag прежний
+        mockMvc.perform(get("/restaurants").param("limit", "1").header("Accept-Encoding", "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(header().string("ETag", identity));
+        mockMvc.perform(get("/restaurants/1/dishes/2").header("Accept-Encoding", "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(header().string("ETag", identity));
+    }
+
+    @Test
+    void reloadUsesOneProjectionQueryPerRepository() {
+        catalogService.reload();
+
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+}
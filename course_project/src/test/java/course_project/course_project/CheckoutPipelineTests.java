@@ -0,0 +1,85 @@
+package course_project.course_project;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Асинхронное оформление: 202 с адресом состояния, заказ появляется после записи пакета в фоне
+@SpringBootTest(properties = "checkout.async.enabled=true")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@WithMockUser(username = "jane_user")
+class CheckoutPipelineTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        mockMvc.perform(delete("/cart/clear")).andExpect(status().isNoContent());
+    }
+
+    @Test
+    void checkoutIsAcceptedAndWrittenInBackground() throws Exception {
+        mockMvc.perform(post("/cart/add/4").param("quantity", "2")).andExpect(status().isOk());
+
+        String accepted = mockMvc.perform(post("/cart/checkout").header("Idempotency-Key", "async-test"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().exists("Location"))
+                .andExpect(jsonPath("$.ticketId").exists())
+                .andReturn().getResponse().getContentAsString();
+        String location = "/cart/checkout/" + JsonPath.read(accepted, "$.ticketId");
+
+        String ticket = waitUntilFinished(location);
+        assertEquals("COMPLETED", JsonPath.read(ticket, "$.state"));
+        Integer orderId = JsonPath.read(ticket, "$.orderId");
+        assertEquals(0, new BigDecimal("760.00").compareTo(jdbcTemplate.queryForObject(
+                "SELECT total FROM orders WHERE id = ?", BigDecimal.class, orderId)));
+        mockMvc.perform(get("/cart")).andExpect(jsonPath("$.cartItems.length()").value(0));
+
+        // Повтор с тем же ключом - уже созданный заказ
+        mockMvc.perform(post("/cart/checkout").header("Idempotency-Key", "async-test"))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(jsonPath("$.orderId").value(orderId));
+    }
+
+    @Test
+    void emptyCartIsRejectedBeforeQueueing() throws Exception {
+        mockMvc.perform(post("/cart/checkout")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/cart/checkout/unknown")).andExpect(status().isNotFound());
+    }
+
+    private String waitUntilFinished(String location) throws Exception {
+        for (int attempt = 0; attempt < 50; attempt++) {
+            String ticket = mockMvc.perform(get(location))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            if (!"QUEUED".equals(JsonPath.read(ticket, "$.state"))) {
+                return ticket;
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError("Заказ не записан за 5 секунд");
+    }
+}
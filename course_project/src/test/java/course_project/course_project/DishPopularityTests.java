@@ -0,0 +1,130 @@
+package course_project.course_project;
+
+import com.jayway.jsonpath.JsonPath;
+import course_project.course_project.service.DishPopularityService;
+import course_project.course_project.service.KeysetPage;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Популярность блюд: заказы за окно из памяти, рейтинг меняется после оформления, ETag - вместе с ним
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class DishPopularityTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private DishPopularityService dishPopularityService;
+
+    @Test
+    void recentOrdersAreLoadedAtStartup() throws Exception {
+        // Первый заказ john_user оформлен только что (блюда 1 и 2), второй - два дня назад, вне окна
+        DishPopularityService.Ranking ranking = dishPopularityService.ranking();
+        assertTrue(ranking.score(1L) >= 1);
+        assertTrue(ranking.score(2L) >= 1);
+
+        List<Integer> ids = JsonPath.read(mockMvc.perform(get("/restaurants/popular"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString(), "$[*].id");
+        assertTrue(ids.contains(1) && ids.contains(2), "популярные: " + ids);
+    }
+
+    @Test
+    void checkoutRaisesPopularityAndChangesEtag() throws Exception {
+        // Оформления других тестов ещё могут быть не сведены в рейтинг
+        dishPopularityService.refresh();
+        String etag = mockMvc.perform(get("/restaurants/popular"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        long before = dishPopularityService.ranking().score(6L);
+
+        // Количество не важно: заказ поднимает популярность блюда на единицу
+        mockMvc.perform(post("/cart/add/6").param("quantity", "3").with(user("jane_user")))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/cart/checkout").with(user("jane_user")))
+                .andExpect(status().isCreated());
+        dishPopularityService.refresh();
+
+        assertEquals(before + 1, dishPopularityService.ranking().score(6L));
+        MockHttpServletResponse response = mockMvc.perform(get("/restaurants/popular")
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        assertNotEquals(etag, response.getHeader(HttpHeaders.ETAG));
+        List<Integer> ids = JsonPath.read(response.getContentAsString(), "$[*].id");
+        assertTrue(ids.contains(6), "популярные: " + ids);
+
+        mockMvc.perform(get("/restaurants/popular").header(HttpHeaders.IF_NONE_MATCH,
+                        response.getHeader(HttpHeaders.ETAG)))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void menuIsPagedByPopularity() throws Exception {
+        MockHttpServletResponse first = mockMvc.perform(get("/restaurants/2/dishes")
+                        .param("sort", "popular").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        String cursor = first.getHeader(KeysetPage.NEXT_CURSOR_HEADER);
+        List<Integer> ids = new ArrayList<>(JsonPath.read(first.getContentAsString(), "$[*].id"));
+        assertEquals(2, ids.size());
+
+        MockHttpServletResponse second = mockMvc.perform(get("/restaurants/2/dishes")
+                        .param("sort", "popular").param("limit", "2").param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        ids.addAll(JsonPath.read(second.getContentAsString(), "$[*].id"));
+
+        // Всё меню без повторов, по убыванию счёта
+        assertEquals(3, ids.stream().distinct().count());
+        DishPopularityService.Ranking ranking = dishPopularityService.ranking();
+        for (int i = 1; i < ids.size(); i++) {
+            assertTrue(ranking.score(ids.get(i - 1).longValue()) >= ranking.score(ids.get(i).longValue()),
+                    "порядок: " + ids);
+        }
+    }
+
+    @Test
+    void cursorOfRecalculatedRankingIsRejected() throws Exception {
+        dishPopularityService.refresh();
+        String cursor = mockMvc.perform(get("/restaurants/2/dishes").param("sort", "popular").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(KeysetPage.NEXT_CURSOR_HEADER);
+
+        mockMvc.perform(post("/cart/add/5").with(user("jane_user"))).andExpect(status().isOk());
+        mockMvc.perform(post("/cart/checkout").with(user("jane_user"))).andExpect(status().isCreated());
+        dishPopularityService.refresh();
+
+        // Порядок после пересчёта другой - продолжать выдачу по старому курсору нельзя
+        mockMvc.perform(get("/restaurants/2/dishes").param("sort", "popular").param("limit", "1")
+                        .param("cursor", cursor))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void badParametersAreRejected() throws Exception {
+        mockMvc.perform(get("/restaurants/popular").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/restaurants/2/dishes").param("sort", "popular").param("cursor", "broken"))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,125 @@
+package course_project.course_project;
+
+import course_project.course_project.service.ImageStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Раздача картинок: диапазоны, условные запросы и заранее сжатые копии со своим ETag
+@SpringBootTest(properties = "file.upload-dir=target/test-uploads")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class ImageControllerTests {
+
+    private static final String HASH = "0123456789abcdef".repeat(4);
+    private static final String SVG = "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"10\" height=\"10\"/>";
+    private static final String URL = "/uploads/" + HASH + ".svg";
+    private static final String ETAG = "\"" + HASH + "\"";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ImageStore imageStore;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        put(HASH + ".svg", SVG.getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(SVG.getBytes(StandardCharsets.UTF_8));
+        }
+        put(HASH + ".svg.gz", gzipped.toByteArray());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        imageStore.delete(HASH + ".svg");
+        imageStore.delete(HASH + ".svg.gz");
+    }
+
+    @Test
+    void singleRangeIsPartialContent() throws Exception {
+        mockMvc.perform(get(URL).header(HttpHeaders.RANGE, "bytes=1-3"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 1-3/" + SVG.length()))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 3))
+                .andExpect(content().string("svg"));
+
+        mockMvc.perform(get(URL).header(HttpHeaders.RANGE, "bytes=-3"))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().string(SVG.substring(SVG.length() - 3)));
+    }
+
+    @Test
+    void unsatisfiableRangeIs416() throws Exception {
+        mockMvc.perform(get(URL).header(HttpHeaders.RANGE, "bytes=1000-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */" + SVG.length()));
+    }
+
+    @Test
+    void matchingEtagIsNotModified() throws Exception {
+        mockMvc.perform(get(URL).header(HttpHeaders.IF_NONE_MATCH, ETAG))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG));
+    }
+
+    @Test
+    void ifRangeMismatchReturnsWholeFile() throws Exception {
+        mockMvc.perform(get(URL).header(HttpHeaders.RANGE, "bytes=1-3").header(HttpHeaders.IF_RANGE, "\"stale\""))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_RANGE))
+                .andExpect(content().string(SVG));
+
+        mockMvc.perform(get(URL).header(HttpHeaders.RANGE, "bytes=1-3").header(HttpHeaders.IF_RANGE, ETAG))
+                .andExpect(status().isPartialContent());
+    }
+
+    @Test
+    void compressedCopyHasItsOwnEtag() throws Exception {
+        String gzipEtag = "\"" + HASH + "-gzip\"";
+        mockMvc.perform(get(URL).header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.ETAG, gzipEtag));
+
+        // ETag несжатого файла не подходит к сжатой копии, и наоборот
+        mockMvc.perform(get(URL).header(HttpHeaders.ACCEPT_ENCODING, "gzip").header(HttpHeaders.IF_NONE_MATCH, ETAG))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"));
+        mockMvc.perform(get(URL).header(HttpHeaders.ACCEPT_ENCODING, "gzip").header(HttpHeaders.IF_NONE_MATCH, gzipEtag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get(URL).header(HttpHeaders.IF_NONE_MATCH, gzipEtag))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG))
+                .andExpect(content().string(SVG));
+    }
+
+    private void put(String name, byte[] bytes) throws IOException {
+        // Временный файл на том же диске, что и хранилище: файл переносится в него атомарно
+        Path temp = Files.createTempFile(Files.createDirectories(Path.of("target/test-uploads")), "image-", ".tmp");
+        Files.write(temp, bytes);
+        imageStore.put(name, temp, "image/svg+xml");
+        Files.deleteIfExists(temp);
+    }
+}
@@ -0,0 +1,218 @@
+package course_project.course_project;
+
+import course_project.course_project.model.ImageVariants;
+import course_project.course_project.repository.ImageVariantsRepository;
+import course_project.course_project.service.CatalogService;
+import course_project.course_project.service.ImageStorageService;
+import course_project.course_project.service.ImageVariantService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Хранилище картинок: одинаковое содержимое - один файл, файл живёт, пока на него ссылаются, копии - вместе с ним
+@SpringBootTest(properties = "file.upload-dir=target/test-uploads")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class ImageStorageTests {
+
+    private static final Path ROOT = Path.of("target/test-uploads");
+
+    @Autowired
+    private ImageStorageService imageStorageService;
+
+    @Autowired
+    private ImageVariantService imageVariantService;
+
+    @Autowired
+    private ImageVariantsRepository imageVariantsRepository;
+
+    @Autowired
+    private CatalogService catalogService;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM restaurants WHERE name = 'Картинка'");
+    }
+
+    @Test
+    void sameUploadIsStoredOnceInShardedFolder() throws IOException {
+        byte[] png = png(Color.RED, 40, 30);
+        String first = imageStorageService.store(new MockMultipartFile("image", "red.PNG", "image/png", png));
+        String second = imageStorageService.store(new MockMultipartFile("image", "copy.png", "image/png", png));
+        imageStorageService.attached(first);
+        imageStorageService.attached(second);
+
+        assertEquals(first, second);
+        String filename = first.substring(ImageStorageService.URL_PREFIX.length());
+        assertTrue(filename.matches("[0-9a-f]{64}\\.png"), filename);
+        // 9f86d08...e3.png -> 9f/86/9f86d08...e3.png
+        Path sharded = ROOT.resolve(filename.substring(0, 2)).resolve(filename.substring(2, 4)).resolve(filename);
+        assertTrue(Files.isRegularFile(sharded));
+        assertEquals(List.of(sharded), filesOf(filename));
+
+        imageStorageService.release(first);
+        assertFalse(Files.exists(sharded));
+    }
+
+    @Test
+    void referencedOrPinnedFileIsKept() throws IOException {
+        String url = imageStorageService.store(new MockMultipartFile("image", "green.png", "image/png",
+                png(Color.GREEN, 40, 30)));
+        String filename = url.substring(ImageStorageService.URL_PREFIX.length());
+
+        // Запись с этим url ещё не сохранена - файл закреплён
+        imageStorageService.release(url);
+        assertEquals(1, filesOf(filename).size());
+
+        jdbcTemplate.update("INSERT INTO restaurants (name, url, address) VALUES ('Картинка', ?, 'ул. Тестовая')", url);
+        imageStorageService.attached(url);
+        imageStorageService.release(url);
+        assertEquals(1, filesOf(filename).size());
+
+        // Последняя ссылка ушла - файл удаляется
+        jdbcTemplate.update("DELETE FROM restaurants WHERE name = 'Картинка'");
+        imageStorageService.release(url);
+        assertTrue(filesOf(filename).isEmpty());
+
+        // Сохранение записи не удалось - новый файл никому не нужен
+        String abandoned = imageStorageService.store(new MockMultipartFile("image", "gray.png", "image/png",
+                png(Color.GRAY, 40, 30)));
+        imageStorageService.abandoned(abandoned);
+        assertTrue(filesOf(abandoned.substring(ImageStorageService.URL_PREFIX.length())).isEmpty());
+    }
+
+    @Test
+    void pinIsKeptInDatabaseUntilItExpires() throws IOException {
+        String url = imageStorageService.store(new MockMultipartFile("image", "yellow.png", "image/png",
+                png(Color.YELLOW, 40, 30)));
+        String filename = url.substring(ImageStorageService.URL_PREFIX.length());
+
+        // Закрепление видно всем экземплярам через БД: release() любого из них файл не тронет
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT pins FROM image_uploads WHERE url = ?", Integer.class, url));
+        imageStorageService.release(url);
+        assertEquals(1, filesOf(filename).size());
+
+        // Экземпляр упал, не сохранив запись: после срока закрепления файл удаляется
+        jdbcTemplate.update("UPDATE image_uploads SET expires_at = ? WHERE url = ?",
+                Timestamp.valueOf(LocalDateTime.now().minusMinutes(1)), url);
+        imageStorageService.releaseExpiredPins();
+        assertTrue(filesOf(filename).isEmpty());
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM image_uploads WHERE url = ?", Integer.class, url));
+    }
+
+    @Test
+    void variantsAreCreatedAndRemovedWithOriginal() throws Exception {
+        String url = imageStorageService.store(new MockMultipartFile("image", "blue.png", "image/png",
+                png(Color.BLUE, 1600, 1200)));
+        imageStorageService.attached(url);
+        imageVariantService.submit(url);
+
+        ImageVariants variants = null;
+        for (int attempt = 0; attempt < 100 && variants == null; attempt++) {
+            variants = imageVariantsRepository.findById(url).orElse(null);
+            if (variants == null) {
+                Thread.sleep(100);
+            }
+        }
+        assertTrue(variants != null, "копии не готовы за 10 секунд");
+        String hash = url.substring(ImageStorageService.URL_PREFIX.length(), url.lastIndexOf('.'));
+        assertEquals(ImageStorageService.URL_PREFIX + hash + "-320.jpg", variants.getThumbnailUrl());
+        assertEquals(ImageStorageService.URL_PREFIX + hash + "-1024.jpg", variants.getPreviewUrl());
+        // Оригинал и обе копии - в одной папке
+        assertEquals(3, filesOf(hash).size());
+        assertEquals(1, filesOf(hash).stream().map(Path::getParent).distinct().count());
+        BufferedImage thumbnail = ImageIO.read(filesOf(hash + "-320").get(0).toFile());
+        assertEquals(320, thumbnail.getWidth());
+
+        imageStorageService.release(url);
+        assertTrue(filesOf(hash).isEmpty());
+        assertFalse(imageVariantsRepository.existsById(url));
+    }
+
+    @Test
+    void adminAndCartResponsesCarryReadyVariants() throws Exception {
+        ImageVariants variants = imageVariantsRepository.save(new ImageVariants("/pizza-pepperoni",
+                "/uploads/pepperoni-320.jpg", "/uploads/pepperoni-1024.jpg", "data:image/jpeg;base64,AA=="));
+        catalogService.imageVariantsReady(variants);
+        try {
+            String dish = "{\"name\": \"Пепперони\", \"description\": \"Пицца с колбасой пепперони и сыром\", " +
+                    "\"price\": 550.00, \"weight\": 450}";
+            mockMvc.perform(multipart(HttpMethod.PUT, "/admin/dishes/2")
+                            .file(new MockMultipartFile("dish", "", MediaType.APPLICATION_JSON_VALUE,
+                                    dish.getBytes(StandardCharsets.UTF_8)))
+                            .with(user("admin").roles("ADMIN")))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.thumbnailUrl").value("/uploads/pepperoni-320.jpg"))
+                    .andExpect(jsonPath("$.placeholder").value("data:image/jpeg;base64,AA=="));
+
+            mockMvc.perform(post("/cart/add/2").with(user("john_user").roles("USER")))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.cartItems[0].dish.previewUrl").value("/uploads/pepperoni-1024.jpg"));
+            mockMvc.perform(get("/cart").with(user("john_user").roles("USER")))
+                    .andExpect(jsonPath("$.cartItems[0].dish.thumbnailUrl").value("/uploads/pepperoni-320.jpg"));
+        } finally {
+            mockMvc.perform(delete("/cart/clear").with(user("john_user").roles("USER")));
+            imageVariantsRepository.delete(variants);
+            catalogService.reload();
+        }
+    }
+
+    // Файлы хранилища, имя которых начинается с prefix
+    private static List<Path> filesOf(String prefix) throws IOException {
+        try (Stream<Path> files = Files.walk(ROOT)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> file.getFileName().toString().startsWith(prefix))
+                    .toList();
+        }
+    }
+
+    private static byte[] png(Color color, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(color);
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
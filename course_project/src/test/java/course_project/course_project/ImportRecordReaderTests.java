@@ -0,0 +1,124 @@
+package course_project.course_project;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import course_project.course_project.service.ImportRecordReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Разбор файлов импорта: кавычки CSV, номера строк, плохие записи не останавливают чтение
+class ImportRecordReaderTests {
+
+    @Test
+    void csvQuotedValues() throws IOException {
+        ImportRecordReader reader = csv("type,name,description\n" +
+                "dish,\"Суп, острый\",\"Говорят \"\"огонь\"\"\"\n" +
+                "dish,Пирог,\"Две\nстроки\"\n" +
+                "dish,Чай,Чёрный\n");
+
+        ImportRecordReader.Record soup = reader.next();
+        assertEquals(2, soup.line());
+        assertEquals("Суп, острый", soup.fields().get("name"));
+        assertEquals("Говорят \"огонь\"", soup.fields().get("description"));
+
+        ImportRecordReader.Record pie = reader.next();
+        assertEquals(3, pie.line());
+        assertEquals("Две\nстроки", pie.fields().get("description"));
+
+        // Перевод строки внутри кавычек сдвигает номера следующих записей
+        assertEquals(5, reader.next().line());
+        assertNull(reader.next());
+    }
+
+    @Test
+    void csvBadLinesAreReportedAndSkipped() throws IOException {
+        ImportRecordReader reader = csv("\uFEFFType, Name ,Price\r\n" +
+                "dish,Борщ\r\n" +
+                "\r\n" +
+                "dish,Щи,  \r\n");
+
+        ImportRecordReader.Record broken = reader.next();
+        assertEquals(2, broken.line());
+        assertTrue(broken.fields().isEmpty());
+        assertEquals("Ожидалось колонок: 3, получено: 2", broken.error());
+
+        // BOM и пробелы в заголовке убраны, пустая строка пропущена, пустое значение - null
+        ImportRecordReader.Record shchi = reader.next();
+        assertEquals(4, shchi.line());
+        assertNull(shchi.error());
+        assertEquals("dish", shchi.fields().get("type"));
+        assertEquals("Щи", shchi.fields().get("name"));
+        assertTrue(shchi.fields().containsKey("price"));
+        assertNull(shchi.fields().get("price"));
+        assertNull(reader.next());
+    }
+
+    @Test
+    void ndjsonBadLinesAreReportedAndSkipped() throws IOException {
+        ImportRecordReader reader = ImportRecordReader.ndjson(new BufferedReader(new StringReader(
+                "{\"Type\": \"dish\", \"price\": 120.5, \"description\": \" \"}\n" +
+                "{\"type\": \"dish\",\n" +
+                "\n" +
+                "[1, 2]\n" +
+                "{\"type\": \"restaurant\"}\n")), new ObjectMapper());
+
+        ImportRecordReader.Record dish = reader.next();
+        assertEquals(1, dish.line());
+        assertEquals("dish", dish.fields().get("type"));
+        assertEquals("120.5", dish.fields().get("price"));
+        assertNull(dish.fields().get("description"));
+
+        ImportRecordReader.Record truncated = reader.next();
+        assertEquals(2, truncated.line());
+        assertNotNull(truncated.error());
+
+        ImportRecordReader.Record array = reader.next();
+        assertEquals(4, array.line());
+        assertEquals("Ожидался JSON-объект", array.error());
+
+        assertEquals(5, reader.next().line());
+        assertNull(reader.next());
+    }
+
+    @Test
+    void overlongAndUnterminatedRecordsAreReportedWithoutBufferingTheRest() throws IOException {
+        String huge = "x".repeat(ImportRecordReader.MAX_RECORD_LENGTH + 10);
+        ImportRecordReader reader = csv("type,name\n" +
+                "dish,\"" + huge + "\n" +
+                "dish,Суп\n" +
+                "dish,\"без конца\n");
+
+        ImportRecordReader.Record overlong = reader.next();
+        assertEquals(2, overlong.line());
+        assertEquals("Запись длиннее " + ImportRecordReader.MAX_RECORD_LENGTH + " символов", overlong.error());
+
+        ImportRecordReader.Record soup = reader.next();
+        assertEquals(3, soup.line());
+        assertEquals("Суп", soup.fields().get("name"));
+
+        ImportRecordReader.Record unterminated = reader.next();
+        assertEquals(4, unterminated.line());
+        assertEquals("Не закрыта кавычка", unterminated.error());
+        assertNull(reader.next());
+
+        ImportRecordReader json = ImportRecordReader.ndjson(new BufferedReader(new StringReader(
+                "{\"name\": \"" + huge + "\"}\r\n" +
+                "{\"name\": \"Суп\"}\r\n")), new ObjectMapper());
+        assertEquals("Запись длиннее " + ImportRecordReader.MAX_RECORD_LENGTH + " символов", json.next().error());
+        ImportRecordReader.Record jsonSoup = json.next();
+        assertEquals(2, jsonSoup.line());
+        assertEquals("Суп", jsonSoup.fields().get("name"));
+        assertNull(json.next());
+    }
+
+    private static ImportRecordReader csv(String text) {
+        return ImportRecordReader.csv(new BufferedReader(new StringReader(text)));
+    }
+}
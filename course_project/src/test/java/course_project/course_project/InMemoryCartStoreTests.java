@@ -0,0 +1,190 @@
+package course_project.course_project;
+
+import course_project.course_project.service.InMemoryCartStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Корзины в памяти: изменения попадают в БД только при записи пачкой или при оформлении заказа
+@SpringBootTest(properties = {"cart.store.type=memory", "cart.store.flush-interval-ms=3600000"})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@WithMockUser(username = "jane_user")
+@Import(JdbcStatementCounter.class)
+class InMemoryCartStoreTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private InMemoryCartStore cartStore;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcStatementCounter jdbcStatements;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        mockMvc.perform(delete("/cart/clear")).andExpect(status().isNoContent());
+        cartStore.flush();
+    }
+
+    @Test
+    void changesAreCoalescedUntilFlush() throws Exception {
+        mockMvc.perform(post("/cart/add/3").param("quantity", "2")).andExpect(status().isOk());
+        mockMvc.perform(post("/cart/add/3")).andExpect(status().isOk());
+        mockMvc.perform(post("/cart/add/6"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total").value(2370.00));
+        assertEquals(0, countItems());
+
+        cartStore.flush();
+
+        assertEquals(2, countItems());
+        assertEquals(0, new BigDecimal("2370.00").compareTo(jdbcTemplate.queryForObject(
+                "SELECT total FROM carts WHERE user_id = 3", BigDecimal.class)));
+        mockMvc.perform(get("/cart"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cartItems.length()").value(2));
+    }
+
+    @Test
+    void checkoutFlushesSynchronously() throws Exception {
+        mockMvc.perform(post("/cart/add/6").param("quantity", "2")).andExpect(status().isOk());
+
+        mockMvc.perform(post("/cart/checkout"))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.total").value(840.00));
+
+        assertEquals(0, countItems());
+        mockMvc.perform(get("/cart"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cartItems.length()").value(0))
+                .andExpect(jsonPath("$.total").value(0));
+    }
+
+    @Test
+    void savedItemsKeepTheirIds() throws Exception {
+        mockMvc.perform(post("/cart/add/3")).andExpect(status().isOk());
+        mockMvc.perform(post("/cart/add/6")).andExpect(status().isOk());
+        cartStore.flush();
+        Long itemId = itemId(3);
+
+        mockMvc.perform(post("/cart/add/3")).andExpect(status().isOk());
+        mockMvc.perform(post("/cart/add/5")).andExpect(status().isOk());
+        mockMvc.perform(patch("/cart").contentType("application/json")
+                        .content("[{\"op\": \"set\", \"dishId\": 6, \"quantity\": 0}]"))
+                .andExpect(status().isOk());
+        cartStore.flush();
+
+        // Позиция обновлена на месте, убранная удалена, новая вставлена
+        assertEquals(itemId, itemId(3));
+        assertEquals(2, jdbcTemplate.queryForObject(
+                "SELECT quantity FROM cart_items WHERE id = ?", Integer.class, itemId));
+        assertEquals(List.of(3L, 5L), jdbcTemplate.queryForList(
+                "SELECT item.dish_id FROM cart_items item JOIN carts c ON c.id = item.cart_id " +
+                        "WHERE c.user_id = 3 ORDER BY item.dish_id", Long.class));
+    }
+
+    @Test
+    void failedWriteIsRetriedOnNextFlush() throws Exception {
+        mockMvc.perform(post("/cart/add/6")).andExpect(status().isOk());
+        // Строка корзины заблокирована другой транзакцией - запись не проходит, корзина остаётся в памяти
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.executeQuery("SELECT * FROM carts WHERE user_id = 3 FOR UPDATE").close();
+            }
+            cartStore.flush();
+            connection.rollback();
+        }
+        assertEquals(0, countItems());
+
+        cartStore.flush();
+
+        assertEquals(1, countItems());
+        mockMvc.perform(get("/cart"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cartItems.length()").value(1));
+    }
+
+    @Test
+    void renamedUsersCartIsNotServedUnderOldName() throws Exception {
+        mockMvc.perform(post("/cart/add/3")).andExpect(status().isOk());
+        // jane_user сменила имя, освободившееся имя занял новый пользователь
+        jdbcTemplate.update("UPDATE users SET name = 'jane_renamed' WHERE id = 3");
+        jdbcTemplate.update("INSERT INTO users (name, email, password) VALUES ('jane_user', 'new@example.com', 'x')");
+        try {
+            mockMvc.perform(get("/cart"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.cartItems.length()").value(0));
+            mockMvc.perform(get("/cart").with(user("jane_renamed")))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.cartItems.length()").value(1));
+        } finally {
+            jdbcTemplate.update("DELETE FROM users WHERE name = 'jane_user'");
+            jdbcTemplate.update("UPDATE users SET name = 'jane_user' WHERE id = 3");
+        }
+    }
+
+    @Test
+    void deletedUsersCartIsDroppedInsteadOfRetried() throws Exception {
+        jdbcTemplate.update("INSERT INTO users (name, email, password) VALUES ('gone_one', 'one@example.com', 'x')");
+        jdbcTemplate.update("INSERT INTO users (name, email, password) VALUES ('gone_two', 'two@example.com', 'x')");
+        mockMvc.perform(post("/cart/add/1").with(user("gone_one"))).andExpect(status().isOk());
+        mockMvc.perform(post("/cart/add/2").with(user("gone_two"))).andExpect(status().isOk());
+        mockMvc.perform(post("/cart/add/3")).andExpect(status().isOk());
+
+        // Один удалён через админку, другой - в обход хранилища: его запись упадёт на внешнем ключе
+        Long adminDeleted = jdbcTemplate.queryForObject("SELECT id FROM users WHERE name = 'gone_one'", Long.class);
+        mockMvc.perform(delete("/admin/users/" + adminDeleted).with(user("admin").roles("ADMIN")))
+                .andExpect(status().isNoContent());
+        jdbcTemplate.update("DELETE FROM users WHERE name = 'gone_two'");
+        cartStore.flush();
+        assertEquals(1, countItems());
+
+        // Корзины удалённых выгружены: следующей записи нечего делать
+        jdbcStatements.start();
+        cartStore.flush();
+        assertEquals(0, jdbcStatements.statements() + jdbcStatements.batches());
+    }
+
+    private Long itemId(long dishId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT item.id FROM cart_items item JOIN carts c ON c.id = item.cart_id " +
+                        "WHERE c.user_id = 3 AND item.dish_id = ?", Long.class, dishId);
+    }
+
+    private int countItems() {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM cart_items item JOIN carts c ON c.id = item.cart_id WHERE c.user_id = 3",
+                Integer.class);
+    }
+}
@@ -0,0 +1,81 @@
+package course_project.course_project;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Счётчик запросов на уровне JDBC (@Import в тесте): DataSource оборачивается прокси, поэтому видны
+ * и запросы Hibernate, и JdbcTemplate. Отдельно считаются выполненные запросы и JDBC batch.
+ * Учитываются только запросы потока, вызвавшего start() - фоновые задачи не мешают подсчёту
+ */
+public class JdbcStatementCounter implements BeanPostProcessor {
+
+    private static final Set<String> EXECUTE = Set.of("execute", "executeQuery", "executeUpdate", "executeLargeUpdate");
+    private static final Set<String> EXECUTE_BATCH = Set.of("executeBatch", "executeLargeBatch");
+
+    private final AtomicLong statements = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private volatile Thread recording;
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        return bean instanceof DataSource dataSource ? wrap(dataSource, DataSource.class) : bean;
+    }
+
+    // Сбросить счётчики и считать запросы текущего потока
+    public void start() {
+        statements.set(0);
+        batches.set(0);
+        recording = Thread.currentThread();
+    }
+
+    public long statements() {
+        return statements.get();
+    }
+
+    public long batches() {
+        return batches.get();
+    }
+
+    // ============ ПРОКСИ ============
+
+    // DataSource -> Connection -> Statement: каждый уровень оборачивается, результаты выполнения считаются
+    private <T> T wrap(T target, Class<T> type) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (Thread.currentThread() == recording) {
+                if (EXECUTE.contains(method.getName())) {
+                    statements.incrementAndGet();
+                } else if (EXECUTE_BATCH.contains(method.getName())) {
+                    batches.incrementAndGet();
+                }
+            }
+            if (result instanceof Connection connection && method.getReturnType() == Connection.class) {
+                return wrap(connection, Connection.class);
+            }
+            if (result instanceof Statement statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                return wrapStatement(statement, method.getReturnType());
+            }
+            return result;
+        };
+        return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Object wrapStatement(Statement statement, Class<T> type) {
+        return wrap((T) statement, type);
+    }
+}
@@ -0,0 +1,193 @@
+package course_project.course_project;
+
+import course_project.course_project.dto.response.CheckoutTicketDTO;
+import course_project.course_project.model.User;
+import course_project.course_project.repository.UserRepository;
+import course_project.course_project.service.CheckoutPipeline;
+import course_project.course_project.service.InMemoryCartStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Корзины в памяти + асинхронное оформление: откат пакета заказов не теряет несохранённые изменения корзины
+@SpringBootTest(properties = {"cart.store.type=memory", "cart.store.flush-interval-ms=3600000",
+        "checkout.async.enabled=true"})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class MemoryCartCheckoutPipelineTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private CheckoutPipeline checkoutPipeline;
+
+    @Autowired
+    private InMemoryCartStore cartStore;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (String username : new String[]{"admin", "john_user", "jane_user"}) {
+            mockMvc.perform(delete("/cart/clear").with(user(username))).andExpect(status().isNoContent());
+        }
+        cartStore.flush();
+        jdbcTemplate.update("DELETE FROM checkout_keys WHERE idempotency_key = 'taken'");
+    }
+
+    @Test
+    void failedBatchKeepsUnsavedCartChanges() throws Exception {
+        User admin = userRepository.findByName("admin").orElseThrow();
+        User john = userRepository.findByName("john_user").orElseThrow();
+        User jane = userRepository.findByName("jane_user").orElseThrow();
+
+        mockMvc.perform(post("/cart/add/1").with(user("admin"))).andExpect(status().isOk());
+        mockMvc.perform(post("/cart/add/2").with(user("john_user"))).andExpect(status().isOk());
+        // Корзина jane_user в БД - одно блюдо, второе пока только в памяти
+        mockMvc.perform(post("/cart/add/3").with(user("jane_user"))).andExpect(status().isOk());
+        cartStore.flush();
+        mockMvc.perform(post("/cart/add/6").param("quantity", "2").with(user("jane_user")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total").value(1490.00));
+
+        // Ключ john_user уже занят заказом 1: его оформление в пакете упадёт на уникальном ключе
+        jdbcTemplate.update("INSERT INTO checkout_keys (user_id, idempotency_key, order_id, created_at) " +
+                "VALUES (?, 'taken', 1, NOW())", john.getId());
+
+        CheckoutTicketDTO janeTicket;
+        CheckoutTicketDTO johnTicket;
+        // Строка корзины admin заблокирована: фоновая запись висит на первом билете,
+        // пока следующие два не окажутся в очереди вместе - они уйдут одним пакетом
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(false);
+            statement.executeQuery("SELECT * FROM carts WHERE user_id = " + admin.getId() + " FOR UPDATE").close();
+            CheckoutTicketDTO adminTicket = checkoutPipeline.submit(admin, null);
+            waitUntilTaken();
+            janeTicket = checkoutPipeline.submit(jane, null);
+            johnTicket = checkoutPipeline.submit(john, "taken");
+            connection.rollback();
+            assertEquals(CheckoutPipeline.COMPLETED, waitUntilFinished(admin, adminTicket).getState());
+            assertEquals(CheckoutPipeline.COMPLETED, waitUntilFinished(john, johnTicket).getState());
+        }
+
+        CheckoutTicketDTO janeResult = waitUntilFinished(jane, janeTicket);
+        CheckoutTicketDTO johnResult = waitUntilFinished(john, johnTicket);
+        assertEquals(2, checkoutPipeline.getStats().getLastBatchSize());
+        assertEquals(CheckoutPipeline.COMPLETED, janeResult.getState());
+        assertEquals(CheckoutPipeline.COMPLETED, johnResult.getState());
+        assertEquals(1L, johnResult.getOrderId());
+
+        // Заказ jane_user оформлен по корзине из памяти, а не по устаревшей записи в БД
+        assertEquals(0, new BigDecimal("1490.00").compareTo(jdbcTemplate.queryForObject(
+                "SELECT total FROM orders WHERE id = ?", BigDecimal.class, janeResult.getOrderId())));
+        assertEquals(2, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM order_items WHERE order_id = ?", Integer.class, janeResult.getOrderId()));
+        mockMvc.perform(get("/cart").with(user("jane_user")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cartItems.length()").value(0));
+    }
+
+    @Test
+    void editsDuringOpenBatchAreKept() throws Exception {
+        User admin = userRepository.findByName("admin").orElseThrow();
+        User john = userRepository.findByName("john_user").orElseThrow();
+        User jane = userRepository.findByName("jane_user").orElseThrow();
+
+        mockMvc.perform(post("/cart/add/1").with(user("admin"))).andExpect(status().isOk());
+        mockMvc.perform(post("/cart/add/2").with(user("john_user"))).andExpect(status().isOk());
+        mockMvc.perform(post("/cart/add/3").with(user("jane_user"))).andExpect(status().isOk());
+        cartStore.flush();
+
+        CheckoutTicketDTO janeTicket;
+        // Корзины john_user и admin заблокированы. Первый пакет - john_user; во втором оформление jane_user
+        // уже выполнено, а транзакция висит на корзине admin
+        try (Connection johnLock = dataSource.getConnection(); Connection adminLock = dataSource.getConnection()) {
+            lock(johnLock, john);
+            lock(adminLock, admin);
+            CheckoutTicketDTO johnTicket = checkoutPipeline.submit(john, null);
+            waitUntilTaken();
+            janeTicket = checkoutPipeline.submit(jane, null);
+            CheckoutTicketDTO adminTicket = checkoutPipeline.submit(admin, null);
+            johnLock.rollback();
+            waitUntilTaken();
+
+            // Транзакция пакета ещё открыта: корзина меняется, фоновая запись её пропускает
+            mockMvc.perform(post("/cart/add/4").with(user("jane_user"))).andExpect(status().isOk());
+            cartStore.flush();
+
+            adminLock.rollback();
+            assertEquals(CheckoutPipeline.COMPLETED, waitUntilFinished(admin, adminTicket).getState());
+            assertEquals(CheckoutPipeline.COMPLETED, waitUntilFinished(john, johnTicket).getState());
+        }
+
+        CheckoutTicketDTO janeResult = waitUntilFinished(jane, janeTicket);
+        assertEquals(CheckoutPipeline.COMPLETED, janeResult.getState());
+        assertEquals(0, new BigDecimal("650.00").compareTo(jdbcTemplate.queryForObject(
+                "SELECT total FROM orders WHERE id = ?", BigDecimal.class, janeResult.getOrderId())));
+
+        // В корзине осталось только добавленное после оформления - и в памяти, и в БД после записи
+        mockMvc.perform(get("/cart").with(user("jane_user")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cartItems.length()").value(1))
+                .andExpect(jsonPath("$.cartItems[0].dishId").value(4))
+                .andExpect(jsonPath("$.total").value(380.00));
+        cartStore.flush();
+        assertEquals(0, new BigDecimal("380.00").compareTo(jdbcTemplate.queryForObject(
+                "SELECT total FROM carts WHERE user_id = ?", BigDecimal.class, jane.getId())));
+        assertEquals(List.of(4L), jdbcTemplate.queryForList("SELECT item.dish_id FROM cart_items item " +
+                "JOIN carts c ON c.id = item.cart_id WHERE c.user_id = ?", Long.class, jane.getId()));
+    }
+
+    private static void lock(Connection connection, User user) throws Exception {
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.executeQuery("SELECT * FROM carts WHERE user_id = " + user.getId() + " FOR UPDATE").close();
+        }
+    }
+
+    private void waitUntilTaken() throws InterruptedException {
+        for (int attempt = 0; attempt < 50 && checkoutPipeline.getStats().getQueueDepth() > 0; attempt++) {
+            Thread.sleep(20);
+        }
+        // Фоновая запись взяла билет и дошла до заблокированной строки
+        Thread.sleep(200);
+    }
+
+    private CheckoutTicketDTO waitUntilFinished(User user, CheckoutTicketDTO submitted) throws InterruptedException {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            CheckoutTicketDTO ticket = checkoutPipeline.find(user.getId(), submitted.getTicketId());
+            if (!CheckoutPipeline.QUEUED.equals(ticket.getState())) {
+                return ticket;
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError("Заказ не записан за 10 секунд");
+    }
+}
@@ -0,0 +1,121 @@
+package course_project.course_project;
+
+import course_project.course_project.dto.RestaurantDTO;
+import course_project.course_project.service.CatalogService;
+import course_project.course_project.service.MenuImportService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Массовый импорт: пачка с ошибкой повторяется построчно, кодировка из Content-Type, каталог видит записанное
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@WithMockUser(username = "admin", roles = "ADMIN")
+class MenuImportTests {
+
+    private static final String HEADER = "type,restaurant,name,address,phone,description,price,weight,url\n";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MenuImportService menuImportService;
+
+    @Autowired
+    private CatalogService catalogService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM restaurants WHERE name LIKE 'Импорт%'");
+        catalogService.reload();
+    }
+
+    @Test
+    void failedBatchIsRetriedRowByRow() throws Exception {
+        // Ресторан появился в БД в обход каталога: проверка названий его не видит, пачка упадёт на UNIQUE
+        jdbcTemplate.update("INSERT INTO restaurants (name, url, address) VALUES ('Импорт Два', '/two', 'ул. Вторая')");
+
+        String csv = HEADER +
+                "restaurant,,Импорт Один,ул. Первая,,,,,/one\n" +
+                "restaurant,,Импорт Два,ул. Вторая,,,,,/two\n" +
+                "restaurant,,Импорт Три,ул. Третья,,,,,/three\n";
+        mockMvc.perform(post("/admin/import").contentType("text/csv").content(csv))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.restaurantsImported").value(2))
+                .andExpect(jsonPath("$.failedRows").value(1))
+                .andExpect(jsonPath("$.errors[0].line").value(3))
+                .andExpect(jsonPath("$.errors[0].message").value("Запись с таким названием уже существует"));
+
+        assertEquals(3, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM restaurants WHERE name LIKE 'Импорт%'", Integer.class));
+        assertTrue(restaurantNames().contains("Импорт Три"));
+    }
+
+    @Test
+    void charsetIsTakenFromContentType() throws Exception {
+        Charset windows1251 = Charset.forName("windows-1251");
+        String csv = HEADER +
+                "restaurant,,Импорт Щи да каша,ул. Ленина,,,,,/shchi\n" +
+                "dish,Импорт Щи да каша,Щи,,,Кислые щи,250.00,300,/shchi-dish\n";
+
+        mockMvc.perform(post("/admin/import")
+                        .contentType(new MediaType("text", "csv", windows1251))
+                        .content(csv.getBytes(windows1251)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.restaurantsImported").value(1))
+                .andExpect(jsonPath("$.dishesImported").value(1))
+                .andExpect(jsonPath("$.failedRows").value(0));
+
+        assertEquals("Кислые щи", jdbcTemplate.queryForObject(
+                "SELECT description FROM dishes WHERE url = '/shchi-dish'", String.class));
+    }
+
+    @Test
+    void catalogIsReloadedWhenReadingBreaks() {
+        // Блюдо ссылается на ресторан из файла - ресторан записывается сразу, затем чтение обрывается
+        byte[] csv = (HEADER +
+                "restaurant,,Импорт Обрыв,ул. Последняя,,,,,/broken\n" +
+                "dish,Импорт Обрыв,Пельмени,,,Домашние,300.00,500,/broken-dish\n").getBytes(StandardCharsets.UTF_8);
+        InputStream broken = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Соединение разорвано");
+            }
+        };
+
+        assertThrows(IOException.class, () -> menuImportService.importMenu(
+                new SequenceInputStream(new ByteArrayInputStream(csv), broken), MediaType.parseMediaType("text/csv")));
+
+        assertTrue(restaurantNames().contains("Импорт Обрыв"));
+    }
+
+    private List<String> restaurantNames() {
+        return catalogService.getRestaurants().stream().map(RestaurantDTO::getName).toList();
+    }
+}
@@ -0,0 +1,122 @@
+package course_project.course_project;
+
+import com.jayway.jsonpath.JsonPath;
+import course_project.course_project.service.KeysetPage;
+import course_project.course_project.service.OrderArchiveService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Архив заказов: старые выполненные уходят из orders, история и заказ по id дочитывают архив
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@WithMockUser(username = "jane_user")
+class OrderArchiveTests {
+
+    private static final long ARCHIVED = 9001;
+    private static final long PENDING = 9002;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private OrderArchiveService orderArchiveService;
+
+    @BeforeEach
+    void setUp() {
+        // Выполненный заказ jane_user 200 дней назад и зависший в PENDING ещё старше
+        jdbcTemplate.update("INSERT INTO orders (id, user_id, order_time, update_time, status, total) VALUES " +
+                "(?, 3, DATEADD('DAY', -200, NOW()), DATEADD('DAY', -200, NOW()), 'COMPLETED', 1000.00), " +
+                "(?, 3, DATEADD('DAY', -300, NOW()), DATEADD('DAY', -300, NOW()), 'PENDING', 450.00)",
+                ARCHIVED, PENDING);
+        jdbcTemplate.update("INSERT INTO order_items (order_id, dish_id, dish_name, dish_url, quantity, price_at_order) " +
+                "VALUES (?, 1, 'Маргарита', '/pizza-margarita', 1, 450.00), (?, 2, 'Пепперони', '/pizza-pepperoni', 1, 550.00), " +
+                "(?, 1, 'Маргарита', '/pizza-margarita', 1, 450.00)", ARCHIVED, ARCHIVED, PENDING);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM orders_archive WHERE id = ?", ARCHIVED);
+        jdbcTemplate.update("DELETE FROM orders WHERE id IN (?, ?)", ARCHIVED, PENDING);
+        // Архив снова пуст - история других тестов его не читает
+        orderArchiveService.archive();
+    }
+
+    @Test
+    void oldFinishedOrdersAreMovedToArchive() {
+        assertEquals(1, orderArchiveService.archive());
+
+        assertEquals(0, count("SELECT COUNT(*) FROM orders WHERE id = ?", ARCHIVED));
+        assertEquals(0, count("SELECT COUNT(*) FROM order_items WHERE order_id = ?", ARCHIVED));
+        assertEquals(1, count("SELECT COUNT(*) FROM orders_archive WHERE id = ?", ARCHIVED));
+        assertEquals(2, count("SELECT COUNT(*) FROM order_items_archive WHERE order_id = ?", ARCHIVED));
+        // Незавершённый заказ остаётся в orders, каким бы старым он ни был
+        assertEquals(1, count("SELECT COUNT(*) FROM orders WHERE id = ?", PENDING));
+    }
+
+    @Test
+    void historyPagesIntoArchive() throws Exception {
+        orderArchiveService.archive();
+
+        List<Integer> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            MockHttpServletResponse page = mockMvc.perform(cursor == null
+                            ? get("/orders/history").param("limit", "2")
+                            : get("/orders/history").param("limit", "2").param("cursor", cursor))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse();
+            ids.addAll(JsonPath.read(page.getContentAsString(), "$[*].orderId"));
+            cursor = page.getHeader(KeysetPage.NEXT_CURSOR_HEADER);
+        } while (cursor != null);
+
+        // Архивный заказ на своём месте по времени - между оперативными, без повторов
+        assertEquals(ids.size(), ids.stream().distinct().count());
+        assertEquals(List.of((int) ARCHIVED, (int) PENDING), ids.subList(ids.size() - 2, ids.size()));
+
+        mockMvc.perform(get("/orders/status/COMPLETED").param("sort", "oldest").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].orderId").value(ARCHIVED));
+    }
+
+    @Test
+    void archivedOrderIsFoundById() throws Exception {
+        orderArchiveService.archive();
+
+        mockMvc.perform(get("/orders/" + ARCHIVED))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("COMPLETED"))
+                .andExpect(jsonPath("$.orderItems.length()").value(2))
+                .andExpect(jsonPath("$.orderItems[1].dishName").value("Пепперони"))
+                .andExpect(jsonPath("$.orderItems[1].itemTotal").value(550.00));
+        mockMvc.perform(get("/orders/" + ARCHIVED).with(user("john_user")))
+                .andExpect(status().isForbidden());
+        assertTrue(orderArchiveService.usesImage("/pizza-pepperoni"));
+    }
+
+    private int count(String sql, Object... args) {
+        return jdbcTemplate.queryForObject(sql, Integer.class, args);
+    }
+}
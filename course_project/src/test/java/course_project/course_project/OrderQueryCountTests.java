@@ -0,0 +1,105 @@
+package course_project.course_project;
+
+import com.jayway.jsonpath.JsonPath;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Список заказов читается постоянным числом запросов, сколько бы в нём ни было заказов и позиций,
+// и не зависит от каталога: блюдо в заказе - снимок на момент оформления
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class OrderQueryCountTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    @WithMockUser(username = "john_user")
+    void orderHistoryIsReadWithConstantQueries() throws Exception {
+        statistics.clear();
+        mockMvc.perform(get("/orders/history").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1));
+        long oneOrder = statistics.getPrepareStatementCount();
+
+        statistics.clear();
+        mockMvc.perform(get("/orders/history"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].orderItems[0].dishName").exists())
+                .andExpect(jsonPath("$[1].orderItems[0].dishName").exists());
+
+        // пользователь с данными покупателя (два запроса), страница заказов, позиции с блюдами
+        assertEquals(4, statistics.getPrepareStatementCount());
+        assertEquals(oneOrder, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    @WithMockUser(username = "admin", roles = "ADMIN")
+    void adminOrderListIsReadWithTwoQueries() throws Exception {
+        statistics.clear();
+        mockMvc.perform(get("/admin/orders"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].orderItems[0].dishName").exists());
+
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    @WithMockUser(username = "jane_user")
+    void orderKeepsItsLinesWhenDishIsDeleted() throws Exception {
+        jdbcTemplate.update("INSERT INTO dishes (restaurant_id, name, description, price, weight, url) " +
+                "VALUES (1, 'Сезонная пицца', 'Только этой осенью', 700.00, 450, '/pizza-seasonal')");
+        Long dishId = jdbcTemplate.queryForObject(
+                "SELECT id FROM dishes WHERE name = 'Сезонная пицца'", Long.class);
+
+        mockMvc.perform(post("/cart/add/" + dishId).param("quantity", "2")).andExpect(status().isOk());
+        String order = mockMvc.perform(post("/cart/checkout"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        Integer orderId = JsonPath.read(order, "$.orderId");
+
+        mockMvc.perform(delete("/admin/dishes/" + dishId).with(user("admin").roles("ADMIN")))
+                .andExpect(status().isNoContent());
+
+        mockMvc.perform(get("/orders/" + orderId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.orderItems.length()").value(1))
+                .andExpect(jsonPath("$.orderItems[0].dishId").doesNotExist())
+                .andExpect(jsonPath("$.orderItems[0].dishName").value("Сезонная пицца"))
+                .andExpect(jsonPath("$.orderItems[0].dishUrl").value("/pizza-seasonal"))
+                .andExpect(jsonPath("$.total").value(1400.00));
+    }
+}
@@ -0,0 +1,128 @@
+package course_project.course_project;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Изменение заказа приходит в поток владельца и в админский поток, но не другим пользователям;
+// после переподключения с Last-Event-ID - повтор пропущенного или reset
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class OrderStreamTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void statusChangeReachesOwnerAndAdmin() throws Exception {
+        MockHttpServletResponse owner = openStream("/orders/stream", "john_user", "USER", null);
+        MockHttpServletResponse other = openStream("/orders/stream", "jane_user", "USER", null);
+        MockHttpServletResponse admin = openStream("/admin/orders/stream", "admin", "ADMIN", null);
+
+        String status = jdbcTemplate.queryForObject("SELECT status FROM orders WHERE id = 1", String.class);
+        String changed = "PENDING".equals(status) ? "COMPLETED" : "PENDING";
+        try {
+            // Тот же статус - заказ не изменился, события нет
+            changeStatus(status);
+            // Другой статус - событие владельцу и администратору
+            changeStatus(changed);
+
+            assertTrue(waitForEvent(owner), "событие владельцу");
+            assertTrue(waitForEvent(admin), "событие администратору");
+            String ownerEvents = owner.getContentAsString();
+            assertTrue(ownerEvents.contains("\"orderId\":1"));
+            assertEquals(1, ownerEvents.split("event:order", -1).length - 1, "событие только о смене статуса");
+            assertTrue(ownerEvents.contains("\"status\":\"" + changed + "\""));
+            assertFalse(other.getContentAsString().contains("event:order"));
+        } finally {
+            changeStatus(status);
+        }
+    }
+
+    @Test
+    void reconnectReplaysMissedEventsOrAsksForReset() throws Exception {
+        MockHttpServletResponse first = openStream("/orders/stream", "john_user", "USER", null);
+        String status = jdbcTemplate.queryForObject("SELECT status FROM orders WHERE id = 1", String.class);
+        String changed = "PENDING".equals(status) ? "COMPLETED" : "PENDING";
+        try {
+            changeStatus(changed);
+            assertTrue(waitForEvent(first), "событие до переподключения");
+            Matcher id = Pattern.compile("id:(\\d+)").matcher(first.getContentAsString());
+            assertTrue(id.find());
+            long eventId = Long.parseLong(id.group(1));
+
+            // Событие пропущено (Last-Event-ID - предыдущее) - придёт повтором
+            MockHttpServletResponse resumed = openStream("/orders/stream", "john_user", "USER",
+                    String.valueOf(eventId - 1));
+            assertTrue(waitForEvent(resumed), "повтор пропущенного события");
+            assertTrue(resumed.getContentAsString().contains("id:" + eventId));
+
+            // Уже получено - повторять нечего
+            MockHttpServletResponse upToDate = openStream("/orders/stream", "john_user", "USER",
+                    String.valueOf(eventId));
+            Thread.sleep(300);
+            assertFalse(upToDate.getContentAsString().contains("event:"));
+
+            // Пропущенного нет в памяти - клиенту нужно перечитать заказы
+            MockHttpServletResponse stale = openStream("/orders/stream", "john_user", "USER", "1");
+            assertTrue(waitFor(stale, "event:reset"), "событие reset");
+            assertFalse(stale.getContentAsString().contains("event:order"));
+        } finally {
+            changeStatus(status);
+        }
+    }
+
+    private void changeStatus(String status) throws Exception {
+        mockMvc.perform(patch("/admin/orders/1/status").param("status", status)
+                        .with(user("admin").roles("ADMIN")))
+                .andExpect(status().isOk());
+    }
+
+    private MockHttpServletResponse openStream(String path, String username, String role, String lastEventId)
+            throws Exception {
+        MockHttpServletRequestBuilder builder = get(path).with(user(username).roles(role));
+        if (lastEventId != null) {
+            builder.header("Last-Event-ID", lastEventId);
+        }
+        return mockMvc.perform(builder)
+                .andExpect(request().asyncStarted())
+                .andReturn().getResponse();
+    }
+
+    private boolean waitForEvent(MockHttpServletResponse response) throws Exception {
+        return waitFor(response, "event:order");
+    }
+
+    // События отправляет отдельный поток
+    private boolean waitFor(MockHttpServletResponse response, String text) throws Exception {
+        for (int attempt = 0; attempt < 50; attempt++) {
+            if (response.getContentAsString().contains(text)) {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
+}
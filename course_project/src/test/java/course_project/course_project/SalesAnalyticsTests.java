@@ -0,0 +1,139 @@
+package course_project.course_project;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Статистика продаж: существующие заказы учтены при старте, оформление и отмена меняют агрегаты
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@WithMockUser(username = "admin", roles = "ADMIN")
+class SalesAnalyticsTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void existingOrdersAreBackfilled() throws Exception {
+        // Второй заказ john_user оформлен два дня назад: 2 x 380 + 1 x 350
+        String day = LocalDate.now().minusDays(2).toString();
+        mockMvc.perform(get("/admin/stats").param("from", day).param("to", day))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].orders").value(1))
+                .andExpect(jsonPath("$[0].quantity").value(3))
+                .andExpect(jsonPath("$[0].revenue").value(1110.00));
+    }
+
+    @Test
+    void checkoutAndCancellationUpdateStats() throws Exception {
+        long[] before = dishStats(3L);
+
+        mockMvc.perform(post("/cart/add/3").param("quantity", "2").with(user("jane_user")))
+                .andExpect(status().isOk());
+        String order = mockMvc.perform(post("/cart/checkout").with(user("jane_user")))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        Integer orderId = JsonPath.read(order, "$.orderId");
+
+        long[] placed = dishStats(3L);
+        assertEquals(before[0] + 1, placed[0]);
+        assertEquals(before[1] + 2, placed[1]);
+        assertEquals(before[2] + 1300, placed[2]);
+
+        mockMvc.perform(patch("/admin/orders/" + orderId + "/status").param("status", "CANCELLED"))
+                .andExpect(status().isOk());
+
+        long[] cancelled = dishStats(3L);
+        assertEquals(before[0], cancelled[0]);
+        assertEquals(before[1], cancelled[1]);
+        assertEquals(before[2], cancelled[2]);
+        assertEquals(before[3] + 1, cancelled[3]);
+    }
+
+    @Test
+    void concurrentCancellationsAreCountedOnce() throws Exception {
+        long[] before = dishStats(2L);
+        mockMvc.perform(post("/cart/add/2").with(user("jane_user"))).andExpect(status().isOk());
+        String order = mockMvc.perform(post("/cart/checkout").with(user("jane_user")))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        Integer orderId = JsonPath.read(order, "$.orderId");
+
+        // Администратор и владелец отменяют один заказ одновременно: вычитается он один раз
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> responses = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            boolean admin = i % 2 == 0;
+            responses.add(executor.submit(() -> {
+                start.await();
+                return mockMvc.perform(admin
+                                ? patch("/admin/orders/" + orderId + "/status").param("status", "CANCELLED")
+                                        .with(user("admin").roles("ADMIN"))
+                                : put("/orders/" + orderId + "/cancel").with(user("jane_user")))
+                        .andReturn().getResponse().getStatus();
+            }));
+        }
+        start.countDown();
+        for (Future<Integer> response : responses) {
+            assertTrue(List.of(200, 400, 409).contains(response.get(10, TimeUnit.SECONDS)));
+        }
+        executor.shutdown();
+
+        long[] cancelled = dishStats(2L);
+        assertEquals(before[0], cancelled[0]);
+        assertEquals(before[2], cancelled[2]);
+        assertEquals(before[3] + 1, cancelled[3]);
+    }
+
+    @Test
+    void invalidParametersAreRejected() throws Exception {
+        mockMvc.perform(get("/admin/stats").param("granularity", "week")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/admin/stats/restaurants").param("from", "2030-01-02").param("to", "2030-01-01"))
+                .andExpect(status().isBadRequest());
+    }
+
+    // Заказы, штуки, выручка и отмены блюда за сегодня
+    private long[] dishStats(Long dishId) throws Exception {
+        String today = LocalDate.now().toString();
+        String body = mockMvc.perform(get("/admin/stats/dishes").param("from", today).param("to", today))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        List<Object> rows = JsonPath.read(body, "$[?(@.id == " + dishId + ")]");
+        if (rows.isEmpty()) {
+            return new long[4];
+        }
+        String row = "$[?(@.id == " + dishId + ")]";
+        return new long[]{
+                ((Number) JsonPath.<List<Number>>read(body, row + ".orders").get(0)).longValue(),
+                ((Number) JsonPath.<List<Number>>read(body, row + ".quantity").get(0)).longValue(),
+                ((Number) JsonPath.<List<Number>>read(body, row + ".revenue").get(0)).longValue(),
+                ((Number) JsonPath.<List<Number>>read(body, row + ".cancelled").get(0)).longValue()};
+    }
+}